@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.api;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.Serial;
+
+/**
+ * Cache key made of a 128-bit hash of the key components, as computed in the binary key mode of the annotated methods.
+ * With a uniform hash, a collision is only expected after about 2<sup>64</sup> keys.
+ * <p>
+ * The key is written to the cluster as its two longs, and its string form is the 32 hexadecimal digits of the hash,
+ * most significant first.
+ *
+ * @author Jerome Blanchard
+ */
+public final class BinaryKey implements Externalizable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private long mostSigBits;
+    private long leastSigBits;
+
+    /**
+     * Only used for deserialization.
+     */
+    public BinaryKey() {
+    }
+
+    public BinaryKey(long mostSigBits, long leastSigBits) {
+        this.mostSigBits = mostSigBits;
+        this.leastSigBits = leastSigBits;
+    }
+
+    public long getMostSigBits() {
+        return mostSigBits;
+    }
+
+    public long getLeastSigBits() {
+        return leastSigBits;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeLong(mostSigBits);
+        out.writeLong(leastSigBits);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        mostSigBits = in.readLong();
+        leastSigBits = in.readLong();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof BinaryKey other && mostSigBits == other.mostSigBits && leastSigBits == other.leastSigBits;
+    }
+
+    @Override
+    public int hashCode() {
+        // The bits are already uniformly distributed
+        return (int) leastSigBits;
+    }
+
+    @Override
+    public String toString() {
+        char[] hex = new char[32];
+        for (int i = 0; i < 16; i++) {
+            hex[i] = HEX[(int) (mostSigBits >>> (60 - 4 * i)) & 0xf];
+            hex[16 + i] = HEX[(int) (leastSigBits >>> (60 - 4 * i)) & 0xf];
+        }
+        return new String(hex);
+    }
+}
@@ -36,4 +36,57 @@ public interface Cache<T> {
 
     void clear();
 
+    /**
+     * @return the statistics of the cache, empty when the provider does not record them
+     */
+    default CacheStats getStats() {
+        return CacheStats.EMPTY;
+    }
+
+    /**
+     * @return the cluster wide lock of the keys of the cache, null when the cache is local to the node
+     */
+    default CacheLoadLock getLoadLock() {
+        return null;
+    }
+
+    /**
+     * @return the entry of the key whose time to live elapsed less than the grace period ago (see
+     * {@link CacheConfig#getGracePeriod()}), without changing its recency, or null when there is no such entry or the
+     * cache does not keep expired entries
+     */
+    default CacheEntry<T> getStaleEntry(String key) {
+        return null;
+    }
+
+    /**
+     * Same as {@link #getEntry(String)} for a key of any type, compared with its <code>equals</code> method. Providers
+     * storing String keys only use the string form of the key, which must then identify it as well. The in-memory
+     * engines of the default provider store the key itself.
+     */
+    default CacheEntry<T> getEntry(Object key) {
+        return getEntry(key.toString());
+    }
+
+    /**
+     * Same as {@link #put(String, Object)} for a key of any type, see {@link #getEntry(Object)}.
+     */
+    default CacheEntry<T> put(Object key, T value) {
+        return put(key.toString(), value);
+    }
+
+    /**
+     * Same as {@link #delete(String)} for a key of any type, see {@link #getEntry(Object)}.
+     */
+    default CacheEntry<T> delete(Object key) {
+        return delete(key.toString());
+    }
+
+    /**
+     * Same as {@link #getStaleEntry(String)} for a key of any type, see {@link #getEntry(Object)}.
+     */
+    default CacheEntry<T> getStaleEntry(Object key) {
+        return getStaleEntry(key.toString());
+    }
+
 }
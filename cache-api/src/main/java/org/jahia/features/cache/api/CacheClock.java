@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.api;
+
+/**
+ * Coarse clock shared by the caches, reading a time updated every {@link #RESOLUTION} milliseconds by a single daemon
+ * thread instead of calling {@link System#currentTimeMillis()} on every cache access.
+ * <p>
+ * The clock ticks between calls to {@link #start()} and {@link #stop()}, which are counted so that several users can
+ * share it. When it is stopped, the system time is read.
+ *
+ * @author Jerome Blanchard
+ */
+public final class CacheClock {
+
+    public static final long RESOLUTION = 10L;
+
+    private static final Object LOCK = new Object();
+    private static volatile long now;
+    private static volatile Thread ticker;
+    private static int users;
+
+    private CacheClock() {
+    }
+
+    /**
+     * @return the current time in milliseconds, up to {@link #RESOLUTION} milliseconds late while the clock ticks
+     */
+    public static long currentTimeMillis() {
+        return (ticker != null) ? now : System.currentTimeMillis();
+    }
+
+    public static void start() {
+        synchronized (LOCK) {
+            if (users++ == 0) {
+                now = System.currentTimeMillis();
+                Thread thread = new Thread(CacheClock::tick, "cache-clock");
+                thread.setDaemon(true);
+                ticker = thread;
+                thread.start();
+            }
+        }
+    }
+
+    public static void stop() {
+        synchronized (LOCK) {
+            if (users > 0 && --users == 0) {
+                Thread thread = ticker;
+                ticker = null;
+                thread.interrupt();
+            }
+        }
+    }
+
+    private static void tick() {
+        while (ticker == Thread.currentThread()) {
+            now = System.currentTimeMillis();
+            try {
+                Thread.sleep(RESOLUTION);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
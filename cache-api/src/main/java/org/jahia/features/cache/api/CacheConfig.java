@@ -20,12 +20,69 @@ package org.jahia.features.cache.api;
  */
 public class CacheConfig {
 
+    /**
+     * Policy used to choose which entry leaves the cache when it is full.
+     */
+    public enum EvictionPolicy {
+        /**
+         * Always admit new entries and evict the least recently used one.
+         */
+        LRU,
+        /**
+         * Admit new entries in a small LRU window, then only let them replace the eviction victim of the main
+         * space when they are estimated more frequently used (W-TinyLFU). Resists scans of one-time keys.
+         * Only supported by the default provider, clustered providers fall back to their own eviction.
+         */
+        TINY_LFU
+    }
+
+    /**
+     * How the in-memory engines of the default provider reference the cached values. Clustered providers and
+     * off-heap storage always hold the values.
+     */
+    public enum ValueReference {
+        /**
+         * Values stay cached until evicted or expired.
+         */
+        STRONG,
+        /**
+         * Values may be reclaimed by the garbage collector when the heap runs short, in least recently used order.
+         */
+        SOFT,
+        /**
+         * Values are reclaimed by the garbage collector as soon as they are not used outside of the cache anymore.
+         */
+        WEAK
+    }
+
     private final int maxEntries;
     private final int timeToLive;
+    private final EvictionPolicy evictionPolicy;
+    private final long maxWeight;
+    private final Weigher weigher;
+    private final long maxEntryWeight;
+    private final CacheSerializer serializer;
+    private final ValueReference valueReference;
+    private final boolean missRatioCurve;
+    private final int refreshAfterWrite;
+    private final int gracePeriod;
+    private final int negativeTimeToLive;
+    private final ClassLoader classLoader;
 
-    private CacheConfig(int maxEntries, int timeToLive) {
-        this.maxEntries = maxEntries;
-        this.timeToLive = timeToLive;
+    private CacheConfig(CacheConfigBuilder builder) {
+        this.maxEntries = builder.maxEntries;
+        this.timeToLive = builder.timeToLive;
+        this.evictionPolicy = builder.evictionPolicy;
+        this.maxWeight = builder.maxWeight;
+        this.weigher = builder.weigher;
+        this.maxEntryWeight = builder.maxEntryWeight;
+        this.serializer = builder.serializer;
+        this.valueReference = builder.valueReference;
+        this.missRatioCurve = builder.missRatioCurve;
+        this.refreshAfterWrite = builder.refreshAfterWrite;
+        this.gracePeriod = builder.gracePeriod;
+        this.negativeTimeToLive = builder.negativeTimeToLive;
+        this.classLoader = builder.classLoader;
     }
 
     public int getMaxEntries() {
@@ -36,6 +93,90 @@ public class CacheConfig {
         return timeToLive;
     }
 
+    /**
+     * @return the time in seconds after which the values cached by <code>@CacheResult</code> methods are reloaded in
+     * the background on their next hit, zero to never refresh them
+     */
+    public int getRefreshAfterWrite() {
+        return refreshAfterWrite;
+    }
+
+    /**
+     * @return the time in seconds expired entries are kept after their time to live: the values cached by
+     * <code>@CacheResult</code> methods are then served while reloaded in the background, or when their method fails.
+     * Zero to remove the entries as soon as they expire. Only supported by the in-memory engines of the default
+     * provider and by the Infinispan provider.
+     */
+    public int getGracePeriod() {
+        return gracePeriod;
+    }
+
+    /**
+     * @return the time in seconds null and empty {@link java.util.Optional} results of <code>@CacheResult</code>
+     * methods are cached, as a {@link NegativeResult}, zero to never cache them. Meant to be shorter than the time to
+     * live, which still bounds it.
+     */
+    public int getNegativeTimeToLive() {
+        return negativeTimeToLive;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * @return the maximum total weight of the entries, when greater than zero the cache is bounded by weight and
+     * maxEntries is ignored
+     */
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * @return the weigher computing the weight of each entry, null when every entry weighs 1
+     */
+    public Weigher getWeigher() {
+        return weigher;
+    }
+
+    /**
+     * @return the maximum weight of a single entry, heavier entries are not cached, zero for no limit
+     */
+    public long getMaxEntryWeight() {
+        return maxEntryWeight;
+    }
+
+    /**
+     * @return the serializer used by engines storing values outside of the heap, null for the provider default
+     */
+    public CacheSerializer getSerializer() {
+        return serializer;
+    }
+
+    public ValueReference getValueReference() {
+        return valueReference;
+    }
+
+    /**
+     * @return true when the cache samples its references to estimate its hit ratio at other capacities, reported by
+     * {@link CacheStats#getEstimatedHitRatios()}. Only supported by the default provider.
+     */
+    public boolean isMissRatioCurve() {
+        return missRatioCurve;
+    }
+
+    /**
+     * @return the class loader resolving the classes of the values read back by the engines storing them serialized
+     * (off-heap storage, disk overflow and snapshots), null to resolve them from the type of the cache
+     */
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    public boolean isWeighted() {
+        return maxWeight > 0;
+    }
+
     public static CacheConfigBuilder create() {
         return new CacheConfigBuilder();
     }
@@ -43,6 +184,17 @@ public class CacheConfig {
     public static class CacheConfigBuilder {
         private int maxEntries = 1000;
         private int timeToLive = 3600;
+        private EvictionPolicy evictionPolicy = EvictionPolicy.LRU;
+        private long maxWeight = 0;
+        private Weigher weigher;
+        private long maxEntryWeight = 0;
+        private CacheSerializer serializer;
+        private ValueReference valueReference = ValueReference.STRONG;
+        private boolean missRatioCurve = false;
+        private int refreshAfterWrite = 0;
+        private int gracePeriod = 0;
+        private int negativeTimeToLive = 0;
+        private ClassLoader classLoader;
 
         public CacheConfigBuilder maxEntries(int maxEntries) {
             this.maxEntries = maxEntries;
@@ -54,8 +206,63 @@ public class CacheConfig {
             return this;
         }
 
+        public CacheConfigBuilder refreshAfterWrite(int refreshAfterWrite) {
+            this.refreshAfterWrite = refreshAfterWrite;
+            return this;
+        }
+
+        public CacheConfigBuilder gracePeriod(int gracePeriod) {
+            this.gracePeriod = gracePeriod;
+            return this;
+        }
+
+        public CacheConfigBuilder negativeTimeToLive(int negativeTimeToLive) {
+            this.negativeTimeToLive = negativeTimeToLive;
+            return this;
+        }
+
+        public CacheConfigBuilder evictionPolicy(EvictionPolicy evictionPolicy) {
+            this.evictionPolicy = evictionPolicy;
+            return this;
+        }
+
+        public CacheConfigBuilder maxWeight(long maxWeight) {
+            this.maxWeight = maxWeight;
+            return this;
+        }
+
+        public CacheConfigBuilder weigher(Weigher weigher) {
+            this.weigher = weigher;
+            return this;
+        }
+
+        public CacheConfigBuilder maxEntryWeight(long maxEntryWeight) {
+            this.maxEntryWeight = maxEntryWeight;
+            return this;
+        }
+
+        public CacheConfigBuilder serializer(CacheSerializer serializer) {
+            this.serializer = serializer;
+            return this;
+        }
+
+        public CacheConfigBuilder valueReference(ValueReference valueReference) {
+            this.valueReference = valueReference;
+            return this;
+        }
+
+        public CacheConfigBuilder missRatioCurve(boolean missRatioCurve) {
+            this.missRatioCurve = missRatioCurve;
+            return this;
+        }
+
+        public CacheConfigBuilder classLoader(ClassLoader classLoader) {
+            this.classLoader = classLoader;
+            return this;
+        }
+
         public CacheConfig build() {
-            return new CacheConfig(maxEntries, timeToLive);
+            return new CacheConfig(this);
         }
     }
 
@@ -16,31 +16,44 @@
 package org.jahia.features.cache.api;
 
 import java.beans.Transient;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.io.Serial;
-import java.io.Serializable;
 
 /**
+ * Value of a cache with its creation and last access times.
+ * <p>
+ * The key is not held by the entry, it is already stored by the cache. The access time is kept as an unsigned offset
+ * in milliseconds from the creation time, saturating after 49 days, and the entry is written to the cluster as these
+ * timestamps followed by the value.
+ *
  * @author Jerome Blanchard
  */
-public class CacheEntry<T> implements Serializable {
+public class CacheEntry<T> implements Externalizable {
 
     @Serial
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
+    private static final long MAX_OFFSET = 0xFFFFFFFFL;
 
-    private final String key;
-    private final T value;
-    private final long created;
-    private long accessed;
+    private T value;
+    private long created;
+    private int accessedOffset;
 
-    public CacheEntry(String key, T value) {
-        this.key = key;
-        this.value = value;
-        this.created = System.currentTimeMillis();
-        this.accessed = this.created;
+    /**
+     * Only used for deserialization.
+     */
+    public CacheEntry() {
+    }
+
+    public CacheEntry(T value) {
+        this(value, CacheClock.currentTimeMillis());
     }
 
-    public String key() {
-        return key;
+    public CacheEntry(T value, long created) {
+        this.value = value;
+        this.created = created;
     }
 
     public T value() {
@@ -52,22 +65,37 @@ public class CacheEntry<T> implements Serializable {
     }
 
     public long accessed() {
-        return accessed;
+        return created + Integer.toUnsignedLong(accessedOffset);
     }
 
     @Transient
     public void touch() {
-        accessed = System.currentTimeMillis();
+        accessedOffset = (int) Math.min(Math.max(CacheClock.currentTimeMillis() - created, 0L), MAX_OFFSET);
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeLong(created);
+        out.writeInt(accessedOffset);
+        out.writeObject(value());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        created = in.readLong();
+        accessedOffset = in.readInt();
+        value = (T) in.readObject();
     }
 
     @Override
     @Transient
     public String toString() {
+        T current = value();
         return "CacheEntry{" +
-               "key='" + key + '\'' +
-               ", class=" + (value != null ? value.getClass().getName() : "null") +
+               "class=" + (current != null ? current.getClass().getName() : "null") +
                ", created=" + created +
-               ", accessed=" + accessed +
+               ", accessed=" + accessed() +
                '}';
     }
 }
@@ -27,4 +27,10 @@ import java.lang.annotation.Target;
 @Target({ ElementType.METHOD})
 public @interface CacheInvalidate {
     String cacheName();
+
+    /**
+     * Expressions of the components of the key to invalidate, as for {@link CacheResult#key()}: they must select the
+     * same values as the expressions of the methods caching the results.
+     */
+    String[] key() default {};
 }
@@ -30,4 +30,12 @@ import java.lang.annotation.Target;
 @Target(ElementType.PARAMETER)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface CacheKey {
+
+    /**
+     * Path of the property of the parameter included in the key instead of the whole parameter, such as
+     * <code>id</code> or <code>address.city</code>. Each property is read with its public <code>getName()</code>,
+     * <code>isName()</code> or <code>name()</code> method, or else its public field, as declared by the type of the
+     * previous one. The key includes null when a property on the path is null. Empty for the whole parameter.
+     */
+    String value() default "";
 }
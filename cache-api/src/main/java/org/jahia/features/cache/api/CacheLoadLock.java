@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.api;
+
+/**
+ * Cluster wide lock of the keys of a clustered cache, used to compute a missing value on a single node of the cluster
+ * while the other nodes wait for it. Locks are leased: a lock held by a node that crashed is released once its lease
+ * elapsed.
+ *
+ * @author Jerome Blanchard
+ */
+public interface CacheLoadLock {
+
+    /**
+     * Acquires the lock of the key, waiting at most the given time for the node holding it to release it.
+     *
+     * @param waitMillis  maximum time to wait for the lock, in milliseconds
+     * @param leaseMillis time after which the lock is released if not unlocked, in milliseconds
+     * @return true if the lock was acquired, false if the waiting time elapsed
+     */
+    boolean tryLock(String key, long waitMillis, long leaseMillis) throws InterruptedException;
+
+    /**
+     * Releases the lock of the key acquired by the current thread, does nothing if the lease already elapsed.
+     */
+    void unlock(String key);
+
+}
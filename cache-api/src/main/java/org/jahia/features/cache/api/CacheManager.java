@@ -30,6 +30,10 @@ public interface CacheManager {
 
     <T> Cache<T> getCache(String name, Class<T> type) throws CacheNotFoundException;
 
+    <T> LongKeyCache<T> createLongKeyCache(String name, CacheConfig config, Class<T> type) throws CacheAlreadyExistsException;
+
+    <T> LongKeyCache<T> getLongKeyCache(String name, Class<T> type) throws CacheNotFoundException;
+
     void clearCache(String name) throws CacheNotFoundException;
 
     void clearAll();
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.api;
+
+import java.lang.reflect.Method;
+
+/**
+ * Caching logic called by the decorators generated by the <code>cache-processor</code> annotation processor, in place
+ * of the runtime proxy of the cache whiteboard. The whiteboard passes an implementation to the decorator of a service
+ * when it registers it.
+ *
+ * @author Jerome Blanchard
+ */
+public interface CacheOperations {
+
+    /**
+     * Resource listing the generated decorators of a bundle, as properties mapping the binary names of the service
+     * classes to the binary names of their decorators.
+     */
+    String DECORATORS_RESOURCE = "OSGI-INF/cache-decorators.properties";
+
+    /**
+     * Call of the decorated service method, only made on a cache miss. The arguments are only boxed when needed, for
+     * the warm-up journal.
+     */
+    interface Invocation<T> {
+
+        T proceed() throws Throwable;
+
+        Object[] arguments();
+    }
+
+    /**
+     * @param method the service interface method, annotated with {@link CacheResult} on the interface or on the
+     *               implementation
+     * @param key    the cache key of the arguments, see {@link CacheKeys}
+     * @return the cached value of the key, or the result of the invocation, cached
+     */
+    <T> T getResult(Method method, String key, Invocation<T> invocation) throws Throwable;
+
+    /**
+     * Deletes the entry of the key from the cache of the {@link CacheInvalidate} method.
+     */
+    void invalidate(Method method, String key);
+
+    /**
+     * Clears the cache of the {@link CacheInvalidateAll} method.
+     */
+    void invalidateAll(Method method);
+
+    /**
+     * Looks up a service interface method, used by the generated decorators when they are loaded.
+     *
+     * @throws IllegalStateException when the method does not exist, the decorator being out of date
+     */
+    static Method method(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Method " + name + " not found in " + type.getName(), e);
+        }
+    }
+}
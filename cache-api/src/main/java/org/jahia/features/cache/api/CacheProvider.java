@@ -24,6 +24,14 @@ public interface CacheProvider {
 
     <T> Cache<T> createCache(String name, CacheConfig config, Class<T> type);
 
+    /**
+     * Creates a cache keyed by primitive longs. Providers without native support of long keys get a view of a
+     * String keyed cache.
+     */
+    default <T> LongKeyCache<T> createLongKeyCache(String name, CacheConfig config, Class<T> type) {
+        return new LongKeyCacheAdapter<>(createCache(name, config, type));
+    }
+
     boolean isAvailable();
 
     String getProviderName();
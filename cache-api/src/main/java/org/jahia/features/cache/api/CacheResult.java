@@ -27,4 +27,39 @@ import java.lang.annotation.Target;
 @Target({ ElementType.METHOD})
 public @interface CacheResult {
     String cacheName();
+
+    /**
+     * Expressions of the key components, replacing the parameters annotated with {@link CacheKey}. An expression starts
+     * with a parameter, <code>#</code> followed by its index or its name when the interface is compiled with the
+     * <code>-parameters</code> option, optionally followed by a path of properties as for {@link CacheKey#value()},
+     * such as <code>#0.locale</code> or <code>user.id</code>. Empty to use the {@link CacheKey} parameters.
+     */
+    String[] key() default {};
+
+    /**
+     * Maximum time, in milliseconds, a caller missing in the cache waits for the result of a concurrent call computing
+     * the same key, before computing it itself. Concurrent misses of a key are coalesced into a single call of the
+     * method, whose result or exception is shared by the callers. Zero disables the coalescing.
+     */
+    long loadTimeout() default 10000;
+
+    /**
+     * With a clustered cache, also coalesce the misses of a key across the nodes of the cluster: a single node calls
+     * the method while the others wait for the value to be cached, at most {@link #loadTimeout()} milliseconds before
+     * calling the method themselves. Ignored with local caches.
+     */
+    boolean distributedLoad() default false;
+
+    /**
+     * Time, in seconds, after which a cached value is refreshed: the next hit still returns the cached value but also
+     * reloads it in the background by calling the method again. Zero uses the refreshAfterWrite of the cache
+     * configuration.
+     */
+    int refreshAfterWrite() default 0;
+
+    /**
+     * Time, in seconds, a null or empty {@link java.util.Optional} result is cached, so that repeated lookups of
+     * missing data do not reach the method. Zero uses the negativeTimeToLive of the cache configuration.
+     */
+    int negativeTimeToLive() default 0;
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.api;
+
+import java.io.IOException;
+
+/**
+ * Converts cache values to bytes and back, used by cache engines that keep values outside of the Java heap.
+ * Implementations must be thread safe. A serializer can be set per cache with
+ * {@link CacheConfig.CacheConfigBuilder#serializer(CacheSerializer)}, otherwise the provider uses standard Java
+ * serialization.
+ *
+ * @author Jerome Blanchard
+ */
+public interface CacheSerializer {
+
+    /**
+     * @return the serialized form of the value
+     * @throws IOException if the value cannot be serialized, it is then not cached
+     */
+    byte[] serialize(Object value) throws IOException;
+
+    /**
+     * @return the value read from its serialized form
+     * @throws IOException if the value cannot be read back, it is then removed from the cache
+     */
+    <T> T deserialize(byte[] data, Class<T> type) throws IOException;
+
+    /**
+     * @param classLoader class loader resolving the classes of the value, such as the one of the bundle that cached
+     *                    it, null for the default resolution
+     * @return the value read from its serialized form
+     * @throws IOException if the value cannot be read back, it is then removed from the cache
+     */
+    default <T> T deserialize(byte[] data, Class<T> type, ClassLoader classLoader) throws IOException {
+        return deserialize(data, type);
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.api;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Snapshot of the statistics of a cache since its creation.
+ *
+ * @author Jerome Blanchard
+ */
+public class CacheStats {
+
+    public static final CacheStats EMPTY = new CacheStats(0, 0, 0);
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final Map<Double, Double> estimatedHitRatios;
+
+    public CacheStats(long hitCount, long missCount, long evictionCount) {
+        this(hitCount, missCount, evictionCount, Collections.emptyMap());
+    }
+
+    public CacheStats(long hitCount, long missCount, long evictionCount, Map<Double, Double> estimatedHitRatios) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.estimatedHitRatios = Collections.unmodifiableMap(estimatedHitRatios);
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of entries evicted to respect the capacity of the cache, expirations excluded
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * @return the ratio of lookups that were hits, 1 when there was no lookup
+     */
+    public double getHitRatio() {
+        long requests = getRequestCount();
+        return (requests == 0) ? 1.0 : (double) hitCount / requests;
+    }
+
+    /**
+     * Estimated hit ratios of the cache if its capacity in entries was multiplied by 0.5, 1, 2 and 4. The ratio at 1 is the estimated hit ratio of an LRU cache of the current
+     * capacity, to compare with {@link #getHitRatio()} as a measure of the estimation error.
+     *
+     * @return the estimated hit ratio by capacity multiple, ordered by multiple, empty when the cache does not record its
+     * miss ratio curve (see {@link CacheConfig#isMissRatioCurve()}) or has not been used yet
+     */
+    public Map<Double, Double> getEstimatedHitRatios() {
+        return estimatedHitRatios;
+    }
+
+    /**
+     * @return the estimated hit ratio at the given multiple of the current capacity, NaN when not estimated
+     */
+    public double getEstimatedHitRatio(double scale) {
+        return estimatedHitRatios.getOrDefault(scale, Double.NaN);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+               "hitCount=" + hitCount +
+               ", missCount=" + missCount +
+               ", evictionCount=" + evictionCount +
+               ", estimatedHitRatios=" + estimatedHitRatios +
+               '}';
+    }
+}
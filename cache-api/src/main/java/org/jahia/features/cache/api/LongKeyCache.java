@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.api;
+
+/**
+ * Cache keyed by primitive longs, for instance numeric identifiers, avoiding the allocation of a String key per
+ * operation. Caches are created with {@link CacheManager#createLongKeyCache(String, CacheConfig, Class)}. Null
+ * values are not cached: putting null deletes the key.
+ *
+ * @author Jerome Blanchard
+ */
+public interface LongKeyCache<T> {
+
+    String getName();
+
+    CacheConfig getConfig();
+
+    T get(long key);
+
+    /**
+     * @return the previous value of the key, or null
+     */
+    T put(long key, T value);
+
+    /**
+     * @return the removed value of the key, or null
+     */
+    T delete(long key);
+
+    int size();
+
+    void clear();
+
+    /**
+     * @return the statistics of the cache, empty when the provider does not record them
+     */
+    default CacheStats getStats() {
+        return CacheStats.EMPTY;
+    }
+
+}
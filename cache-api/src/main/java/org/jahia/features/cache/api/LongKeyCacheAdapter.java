@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.api;
+
+/**
+ * Long keyed view of a String keyed cache, used for the providers without native support of long keys.
+ *
+ * @author Jerome Blanchard
+ */
+class LongKeyCacheAdapter<T> implements LongKeyCache<T> {
+
+    private final Cache<T> cache;
+
+    LongKeyCacheAdapter(Cache<T> cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public String getName() {
+        return cache.getName();
+    }
+
+    @Override
+    public CacheConfig getConfig() {
+        return cache.getConfig();
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    @Override
+    public T get(long key) {
+        return cache.get(Long.toString(key));
+    }
+
+    @Override
+    public T put(long key, T value) {
+        CacheEntry<T> old = (value != null) ? cache.put(Long.toString(key), value) : cache.delete(Long.toString(key));
+        return (old != null) ? old.value() : null;
+    }
+
+    @Override
+    public T delete(long key) {
+        CacheEntry<T> old = cache.delete(Long.toString(key));
+        return (old != null) ? old.value() : null;
+    }
+
+    @Override
+    public int size() {
+        return cache.size();
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+}
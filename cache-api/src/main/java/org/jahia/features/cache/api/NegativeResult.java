@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.api;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Marker cached by <code>@CacheResult</code> methods in place of a null or empty {@link java.util.Optional} result,
+ * when negative caching is enabled (see {@link CacheConfig#getNegativeTimeToLive()}). The marker is a singleton,
+ * also after a round trip through the cluster or off-heap storage.
+ *
+ * @author Jerome Blanchard
+ */
+public final class NegativeResult implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public static final NegativeResult INSTANCE = new NegativeResult();
+
+    private NegativeResult() {
+    }
+
+    @Serial
+    private Object readResolve() {
+        return INSTANCE;
+    }
+
+    @Override
+    public String toString() {
+        return "NegativeResult";
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.api;
+
+/**
+ * Computes the weight of a cache entry, for instance its estimated size in bytes, used to bound a cache by its total
+ * weight instead of its number of entries. The weight is computed once when the entry is put in the cache.
+ *
+ * @author Jerome Blanchard
+ */
+@FunctionalInterface
+public interface Weigher {
+
+    /**
+     * @return the weight of the entry, must be zero or positive
+     */
+    int weigh(String key, Object value);
+
+}
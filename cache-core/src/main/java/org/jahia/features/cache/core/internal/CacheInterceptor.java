@@ -16,109 +16,405 @@
 package org.jahia.features.cache.core.internal;
 
 import org.jahia.features.cache.api.Cache;
+import org.jahia.features.cache.api.CacheAlreadyExistsException;
+import org.jahia.features.cache.api.CacheClock;
 import org.jahia.features.cache.api.CacheConfig;
+import org.jahia.features.cache.api.CacheEntry;
+import org.jahia.features.cache.api.CacheLoadLock;
 import org.jahia.features.cache.api.CacheResult;
-import org.jahia.features.cache.api.CacheInvalidate;
-import org.jahia.features.cache.api.CacheInvalidateAll;
 import org.jahia.features.cache.api.CacheManager;
+import org.jahia.features.cache.api.CacheOperations;
+import org.jahia.features.cache.api.NegativeResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
-import java.lang.annotation.Annotation;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * @author Jerome Blanchard
  */
-public class CacheInterceptor implements InvocationHandler {
+public class CacheInterceptor implements InvocationHandler, CacheOperations {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CacheInterceptor.class);
 
     private final Object target;
     private final CacheManager cacheManager;
+    private final WarmUpJournal journal;
+    private final Executor refreshExecutor;
+    private final InvocationPlan.KeyMode keyMode;
+    private final SingleFlight singleFlight = new SingleFlight();
+    private final Set<FlightKey> refreshing = ConcurrentHashMap.newKeySet();
+    private final Map<Method, InvocationPlan> plans = new ConcurrentHashMap<>();
 
     public CacheInterceptor(Object target, CacheManager cacheManager) {
+        this(target, cacheManager, null, null);
+    }
+
+    /**
+     * @param journal         journal recording the invocations of the cached methods for the warm-up, or null
+     * @param refreshExecutor bounded executor running the refreshes of the values, or null to never refresh them
+     */
+    CacheInterceptor(Object target, CacheManager cacheManager, WarmUpJournal journal, Executor refreshExecutor) {
+        this(target, cacheManager, journal, refreshExecutor, InvocationPlan.KeyMode.HASH);
+    }
+
+    /**
+     * @param keyMode type of the keys of the proxied invocations, the generated decorators always pass digests
+     */
+    CacheInterceptor(Object target, CacheManager cacheManager, WarmUpJournal journal, Executor refreshExecutor,
+            InvocationPlan.KeyMode keyMode) {
         this.target = target;
         this.cacheManager = cacheManager;
+        this.journal = journal;
+        this.refreshExecutor = refreshExecutor;
+        this.keyMode = keyMode;
     }
 
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        InvocationPlan plan = plan(method);
+        if (plan.getOperation() == InvocationPlan.Operation.NONE) {
+            return plan.invoke(args);
+        }
         LOGGER.info("Invoking method: {}.{}", target.getClass().getName(), method.getName());
+        switch (plan.getOperation()) {
+            case INVALIDATE:
+                delete(plan, plan.key(args));
+                return plan.invoke(args);
+            case INVALIDATE_ALL:
+                clear(plan);
+                return plan.invoke(args);
+            case RESULT:
+                return cacheResult(plan, plan.key(args), new ProxyInvocation(plan, args));
+            default:
+                return plan.invoke(args);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getResult(Method method, String key, Invocation<T> invocation) throws Throwable {
+        InvocationPlan plan = plan(method);
+        if (plan.getOperation() != InvocationPlan.Operation.RESULT) {
+            return invocation.proceed();
+        }
+        return (T) cacheResult(plan, key, invocation);
+    }
 
-        // Check for cache invalidation annotations first
-        CacheInvalidate invalidateAnn = getAnnotation(method, CacheInvalidate.class);
-        CacheInvalidateAll invalidateAllAnn = getAnnotation(method, CacheInvalidateAll.class);
+    @Override
+    public void invalidate(Method method, String key) {
+        delete(plan(method), key);
+    }
 
-        // Handle cache invalidation
-        if (invalidateAnn != null) {
-            String cacheName = invalidateAnn.cacheName();
-            LOGGER.info("Method requires cache invalidation for cache: {}", cacheName);
-            try {
-                Cache<Object> cache = cacheManager.getCache(cacheName, Object.class);
-                String key = CacheKeyGenerator.generate(method, args, target);
-                cache.delete(key);
-                LOGGER.info("Cache entry with key: {} evicted from cache: {}", key, cacheName);
-            } catch (Exception e) {
-                LOGGER.warn("Failed to evict cache entry from cache: {}", cacheName, e);
+    @Override
+    public void invalidateAll(Method method) {
+        clear(plan(method));
+    }
+
+    /**
+     * Compiles the plans of the methods of the given types ahead of their first invocation, so that invalid cache
+     * annotations are reported when the service is proxied.
+     */
+    void compilePlans(Class<?>... types) {
+        for (Class<?> type : types) {
+            for (Method method : type.getMethods()) {
+                plan(method);
             }
-            return method.invoke(target, args);
         }
+    }
 
-        if (invalidateAllAnn != null) {
-            String cacheName = invalidateAllAnn.cacheName();
-            LOGGER.info("Method requires cache invalidation of all entries for cache: {}", cacheName);
-            try {
-                Cache<Object> cache = cacheManager.getCache(cacheName, Object.class);
-                cache.clear();
-                LOGGER.info("All entries evicted from cache: {}", cacheName);
-            } catch (Exception e) {
-                LOGGER.warn("Failed to clear cache: {}", cacheName, e);
-            }
-            return method.invoke(target, args);
+    /**
+     * @return the plan of the method, compiled on its first invocation unless compiled ahead. The proxy and the generated decorators pass the
+     * same method instances on every invocation, so the lookup only hashes and compares them.
+     */
+    private InvocationPlan plan(Method method) {
+        InvocationPlan plan = plans.get(method);
+        if (plan == null) {
+            plan = plans.computeIfAbsent(method, m -> InvocationPlan.compile(m, target, keyMode));
         }
+        return plan;
+    }
 
-        // Handle cache result
-        CacheResult ann = getAnnotation(method, CacheResult.class);
-        if (ann != null) {
-            String cacheName = ann.cacheName();
-            LOGGER.info("Methods requires cached result from cache with name: {}", cacheName);
-            Cache<Object> cache;
+    /**
+     * @return the cache of the plan, looked up again only when the caches were recreated for a new provider
+     */
+    private Cache<Object> cache(InvocationPlan plan, boolean create) throws Exception {
+        long generation = (cacheManager instanceof CacheManagerImpl impl) ? impl.getGeneration() : -1;
+        Cache<Object> cache = plan.getCache(generation);
+        if (cache == null) {
+            String cacheName = plan.getCacheName();
             try {
                 cache = cacheManager.getCache(cacheName, Object.class);
             } catch (Exception e) {
+                if (!create) {
+                    throw e;
+                }
                 LOGGER.info("Cache {} not found, creating it with default configuration.", cacheName);
-                cache = cacheManager.createCache(cacheName, CacheConfig.create().build(), Object.class);
+                try {
+                    // Values read back from serialized storage are resolved by the bundle of the service
+                    CacheConfig config = CacheConfig.create().classLoader(target.getClass().getClassLoader()).build();
+                    cache = cacheManager.createCache(cacheName, config, Object.class);
+                } catch (CacheAlreadyExistsException ex) {
+                    // Created meanwhile by a concurrent call
+                    cache = cacheManager.getCache(cacheName, Object.class);
+                }
             }
-            String key = CacheKeyGenerator.generate(method, args, target);
-            Object value = cache.get(key);
-            if (value != null) {
-                LOGGER.info("Cache hit for key: {} in cache: {}", key, cacheName);
-                return value;
-            }
-            LOGGER.info("Cache miss for key: {} in cache: {}. Caching result.", key, cacheName);
-            value = method.invoke(target, args);
+            plan.setCache(cache, generation);
+        }
+        return cache;
+    }
 
-            if (value != null) {
-                LOGGER.info("Caching value for key: {} in cache: {}", key, cacheName);
-                cache.put(key, value);
+    private void delete(InvocationPlan plan, Object key) {
+        String cacheName = plan.getCacheName();
+        LOGGER.info("Method requires cache invalidation for cache: {}", cacheName);
+        try {
+            Cache<Object> cache = cache(plan, false);
+            delete(cache, key);
+            LOGGER.info("Cache entry with key: {} evicted from cache: {}", key, cacheName);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to evict cache entry from cache: {}", cacheName, e);
+        }
+    }
+
+    private void clear(InvocationPlan plan) {
+        String cacheName = plan.getCacheName();
+        LOGGER.info("Method requires cache invalidation of all entries for cache: {}", cacheName);
+        try {
+            Cache<Object> cache = cache(plan, false);
+            cache.clear();
+            LOGGER.info("All entries evicted from cache: {}", cacheName);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to clear cache: {}", cacheName, e);
+        }
+    }
+
+    private Object cacheResult(InvocationPlan plan, Object key, Invocation<?> call) throws Throwable {
+        CacheResult ann = plan.getResult();
+        String cacheName = plan.getCacheName();
+        LOGGER.info("Methods requires cached result from cache with name: {}", cacheName);
+        Cache<Object> cache = cache(plan, true);
+        if (journal != null) {
+            journal.record(cacheName, key, plan.getMethod(), call.arguments());
+        }
+        CacheEntry<Object> entry = getEntry(cache, key);
+        Object value = (entry != null) ? entry.value() : null;
+        long staleCreated = Long.MIN_VALUE;
+        if (value instanceof NegativeResult) {
+            if (CacheClock.currentTimeMillis() - entry.created() < negativeTimeToLive(ann, cache)) {
+                LOGGER.info("Cache hit of a negative result for key: {} in cache: {}", key, cacheName);
+                return absent(plan);
+            }
+            value = null;
+            staleCreated = entry.created();
+        }
+        if (value != null) {
+            LOGGER.info("Cache hit for key: {} in cache: {}", key, cacheName);
+            long refreshAfterWrite = refreshAfterWrite(ann, cache);
+            if (refreshAfterWrite > 0 && CacheClock.currentTimeMillis() - entry.created() >= refreshAfterWrite) {
+                refresh(cache, key, plan, call, ann, entry.created());
             }
             return value;
         }
-        return method.invoke(target, args);
+        CacheEntry<Object> stale = getStaleEntry(cache, key);
+        if (stale != null && stale.value() != null && !(stale.value() instanceof NegativeResult)) {
+            return revalidate(cache, key, plan, call, ann, stale);
+        }
+        LOGGER.info("Cache miss for key: {} in cache: {}. Caching result.", key, cacheName);
+        return singleFlight.load(new FlightKey(cacheName, key), loader(cache, key, plan, call, ann, staleCreated),
+                ann.loadTimeout());
     }
 
-    private <T extends Annotation> T getAnnotation(Method method, Class<T> annotationClass) {
-        T ann = method.getAnnotation(annotationClass);
-        if (ann == null) {
-            try {
-                Method implMethod = target.getClass().getMethod(method.getName(), method.getParameterTypes());
-                ann = implMethod.getAnnotation(annotationClass);
-            } catch (NoSuchMethodException e) {
-                LOGGER.debug("Method {} not found in the implementation.", method.getName());
+    /**
+     * @param staleCreated creation time of the cached value being replaced, only a value cached after it by another
+     *                     node is reused
+     */
+    private SingleFlight.Loader loader(Cache<Object> cache, Object key, InvocationPlan plan, Invocation<?> call,
+            CacheResult ann, long staleCreated) {
+        CacheLoadLock loadLock = (ann.distributedLoad() && ann.loadTimeout() > 0) ? cache.getLoadLock() : null;
+        if (loadLock == null) {
+            return () -> load(cache, key, plan, call, ann);
+        }
+        return () -> loadInCluster(cache, loadLock, key, plan, call, ann, staleCreated);
+    }
+
+    /**
+     * @return the refresh interval of the cached values in milliseconds, from the annotation or else from the cache
+     * configuration, zero when the values are never refreshed
+     */
+    private long refreshAfterWrite(CacheResult ann, Cache<Object> cache) {
+        if (refreshExecutor == null) {
+            return 0;
+        }
+        int seconds = (ann.refreshAfterWrite() > 0) ? ann.refreshAfterWrite() : cache.getConfig().getRefreshAfterWrite();
+        return seconds * 1000L;
+    }
+
+    /**
+     * Reloads the value of the key in the background while the current value keeps being served. A single refresh
+     * of a key runs at a time, and refreshes are dropped while the executor is saturated, to be attempted again on a
+     * later hit.
+     */
+    private void refresh(Cache<Object> cache, Object key, InvocationPlan plan, Invocation<?> call, CacheResult ann,
+            long staleCreated) {
+        FlightKey flightKey = new FlightKey(cache.getName(), key);
+        if (!refreshing.add(flightKey)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    LOGGER.info("Refreshing value of key: {} in cache: {}", key, cache.getName());
+                    singleFlight.load(flightKey, loader(cache, key, plan, call, ann, staleCreated), ann.loadTimeout());
+                } catch (Throwable t) {
+                    LOGGER.warn("Refresh of key: {} in cache: {} failed, keeping the current value", key, cache.getName(), t);
+                } finally {
+                    refreshing.remove(flightKey);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(flightKey);
+            LOGGER.debug("Refresh executor saturated, refresh of key: {} in cache: {} postponed", key, cache.getName());
+        }
+    }
+
+    /**
+     * Serves an expired value still within its grace period: it is returned right away while reloaded in the background
+     * when a refresh executor is available, otherwise it is reloaded first and only returned if the method fails.
+     */
+    private Object revalidate(Cache<Object> cache, Object key, InvocationPlan plan, Invocation<?> call, CacheResult ann,
+            CacheEntry<Object> stale) throws Throwable {
+        if (refreshExecutor != null) {
+            LOGGER.info("Serving stale value for key: {} in cache: {} while revalidating", key, cache.getName());
+            refresh(cache, key, plan, call, ann, stale.created());
+            return stale.value();
+        }
+        try {
+            return singleFlight.load(new FlightKey(cache.getName(), key),
+                    loader(cache, key, plan, call, ann, stale.created()), ann.loadTimeout());
+        } catch (Exception e) {
+            LOGGER.warn("Load of key: {} in cache: {} failed, serving the stale value", key, cache.getName(), e);
+            return stale.value();
+        }
+    }
+
+    /**
+     * @return the time to live of the negative results in milliseconds, from the annotation or else from the cache
+     * configuration, zero when null and empty results are not cached
+     */
+    private long negativeTimeToLive(CacheResult ann, Cache<Object> cache) {
+        int seconds = (ann.negativeTimeToLive() > 0) ? ann.negativeTimeToLive() : cache.getConfig().getNegativeTimeToLive();
+        return seconds * 1000L;
+    }
+
+    private Object load(Cache<Object> cache, Object key, InvocationPlan plan, Invocation<?> call, CacheResult ann)
+            throws Throwable {
+        Object value = call.proceed();
+        boolean absent = (value == null) || Optional.empty().equals(value);
+        if (absent && negativeTimeToLive(ann, cache) > 0) {
+            LOGGER.info("Caching negative result for key: {} in cache: {}", key, cache.getName());
+            put(cache, key, NegativeResult.INSTANCE);
+        } else if (value != null) {
+            LOGGER.info("Caching value for key: {} in cache: {}", key, cache.getName());
+            put(cache, key, value);
+        }
+        return value;
+    }
+
+    /**
+     * @return the result of the method matching a cached negative result, an empty optional or null
+     */
+    private static Object absent(InvocationPlan plan) {
+        return (plan.getMethod().getReturnType() == Optional.class) ? Optional.empty() : null;
+    }
+
+    /**
+     * Loads the value while holding the cluster wide lock of the key, unless another node cached a newer value than the
+     * stale one while this one was waiting for the lock. Without the lock in time, the value is loaded locally.
+     */
+    private Object loadInCluster(Cache<Object> cache, CacheLoadLock loadLock, Object key, InvocationPlan plan,
+            Invocation<?> call, CacheResult ann, long staleCreated) throws Throwable {
+        long timeout = ann.loadTimeout();
+        boolean locked;
+        try {
+            // The lease covers the time the other nodes are ready to wait, a longer load is not protected anymore
+            locked = loadLock.tryLock(key.toString(), timeout, timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            locked = false;
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to acquire the load lock of key: {} in cache: {}, loading it locally", key, cache.getName(), e);
+            return load(cache, key, plan, call, ann);
+        }
+        if (!locked) {
+            LOGGER.warn("Load lock of key: {} in cache: {} not acquired in {}ms, loading it locally", key, cache.getName(), timeout);
+            return load(cache, key, plan, call, ann);
+        }
+        try {
+            CacheEntry<Object> entry = getEntry(cache, key);
+            if (entry != null && entry.value() != null && entry.created() > staleCreated) {
+                LOGGER.info("Value of key: {} in cache: {} loaded by another node", key, cache.getName());
+                return (entry.value() instanceof NegativeResult) ? absent(plan) : entry.value();
             }
+            return load(cache, key, plan, call, ann);
+        } finally {
+            loadLock.unlock(key.toString());
+        }
+    }
+
+    /**
+     * Digests go through the String methods every provider implements, structured and binary keys through the Object
+     * ones.
+     */
+    private static CacheEntry<Object> getEntry(Cache<Object> cache, Object key) {
+        return (key instanceof String name) ? cache.getEntry(name) : cache.getEntry(key);
+    }
+
+    private static CacheEntry<Object> getStaleEntry(Cache<Object> cache, Object key) {
+        return (key instanceof String name) ? cache.getStaleEntry(name) : cache.getStaleEntry(key);
+    }
+
+    private static void put(Cache<Object> cache, Object key, Object value) {
+        if (key instanceof String name) {
+            cache.put(name, value);
+        } else {
+            cache.put(key, value);
+        }
+    }
+
+    private static void delete(Cache<Object> cache, Object key) {
+        if (key instanceof String name) {
+            cache.delete(name);
+        } else {
+            cache.delete(key);
+        }
+    }
+
+    /**
+     * Key of a load coalesced by the single flight, the same key may be used by several caches.
+     */
+    private record FlightKey(String cacheName, Object key) {
+    }
+
+    /**
+     * Invocation of the target through the plan of the proxied method.
+     */
+    private record ProxyInvocation(InvocationPlan plan, Object[] args) implements Invocation<Object> {
+
+        @Override
+        public Object proceed() throws Throwable {
+            return plan.invoke(args);
+        }
+
+        @Override
+        public Object[] arguments() {
+            return args;
         }
-        return ann;
     }
 }
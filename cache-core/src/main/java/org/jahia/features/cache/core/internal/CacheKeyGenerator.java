@@ -15,21 +15,23 @@
  */
 package org.jahia.features.cache.core.internal;
 
+import org.jahia.features.cache.api.CacheInvalidate;
 import org.jahia.features.cache.api.CacheKey;
+import org.jahia.features.cache.api.CacheKeys;
+import org.jahia.features.cache.api.CacheResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 /**
  * Generates cache keys based on method signatures and parameters.
- * Supports @CacheKey annotations to control which parameters are included.
+ * Supports @CacheKey annotations to control which parameters are included, and key expressions to include properties
+ * of the parameters instead, see {@link KeyExpression}.
  *
  * @author Jerome Blanchard
  */
@@ -49,44 +51,98 @@ public class CacheKeyGenerator {
      * @return a unique cache key
      */
     public static String generate(Method method, Object[] args, Object target) {
-        List<Object> keyComponents = new ArrayList<>();
-        keyComponents.add(method.getDeclaringClass().getName());
+        Class<?> targetClass = (target != null) ? target.getClass() : null;
+        KeyExpression[] expressions = keyExpressions(method, targetClass, annotatedKey(method, targetClass));
+        if (expressions != null) {
+            return generate(method.getDeclaringClass().getName(), allParameters(expressions.length),
+                    KeyExpression.evaluate(expressions, args));
+        }
+        return generate(method.getDeclaringClass().getName(), keyParameters(method, targetClass), args);
+    }
 
+    /**
+     * Resolves once the parameters of a method making its cache keys, to be passed to
+     * {@link #generate(String, int[], Object[])} on each invocation without reflection.
+     *
+     * @param method      the method being cached
+     * @param targetClass the implementation class, whose parameter annotations are also checked, or null
+     * @return the indexes of the parameters annotated with @CacheKey, or of all the parameters when none is annotated
+     */
+    static int[] keyParameters(Method method, Class<?> targetClass) {
         Parameter[] parameters = method.getParameters();
-        Method implMethod = null;
-
         // Try to get the implementation method to check for @CacheKey annotations
-        if (target != null) {
-            try {
-                implMethod = target.getClass().getMethod(method.getName(), method.getParameterTypes());
-            } catch (NoSuchMethodException e) {
-                LOGGER.debug("Implementation method not found for {}", method.getName());
+        Method implMethod = findImplementation(method, targetClass);
+
+        // Check which parameters have @CacheKey annotation (either on interface or implementation)
+        List<Integer> annotated = new ArrayList<>();
+        for (int i = 0; i < parameters.length; i++) {
+            if (getParameterCacheKeyAnnotation(parameters[i], implMethod, i) != null) {
+                annotated.add(i);
             }
         }
 
-        boolean hasAnnotatedParams = false;
+        // Without annotated parameters, include all parameters
+        if (annotated.isEmpty()) {
+            return allParameters(parameters.length);
+        }
+        return annotated.stream().mapToInt(Integer::intValue).toArray();
+    }
 
-        // Check if any parameters have @CacheKey annotation (either on interface or implementation)
-        for (int i = 0; i < parameters.length; i++) {
-            if (hasParameterCacheKeyAnnotation(parameters[i], implMethod, i)) {
-                hasAnnotatedParams = true;
-                break;
+    /**
+     * Compiles once the key expressions of a method, whose values are then the key components in place of the
+     * arguments of the {@link #keyParameters(Method, Class) key parameters}.
+     *
+     * @param key the expressions of the cache annotation of the method, replacing the @CacheKey parameters when not
+     *            empty
+     * @return the key expressions, or null when the key is only made of whole parameters
+     * @throws IllegalArgumentException if an expression can not be resolved
+     */
+    static KeyExpression[] keyExpressions(Method method, Class<?> targetClass, String[] key) {
+        if (key.length > 0) {
+            KeyExpression[] expressions = new KeyExpression[key.length];
+            for (int i = 0; i < key.length; i++) {
+                expressions[i] = KeyExpression.parse(method, key[i]);
             }
+            return expressions;
+        }
+        Method implMethod = findImplementation(method, targetClass);
+        Parameter[] parameters = method.getParameters();
+        int[] keyParameters = keyParameters(method, targetClass);
+        KeyExpression[] expressions = new KeyExpression[keyParameters.length];
+        boolean paths = false;
+        for (int i = 0; i < keyParameters.length; i++) {
+            int parameter = keyParameters[i];
+            CacheKey cacheKey = getParameterCacheKeyAnnotation(parameters[parameter], implMethod, parameter);
+            String path = (cacheKey != null) ? cacheKey.value() : "";
+            paths |= !path.isEmpty();
+            expressions[i] = KeyExpression.of(method, parameter, path);
         }
+        return paths ? expressions : null;
+    }
 
-        // If we have annotated parameters, only include those in the key
-        if (hasAnnotatedParams) {
-            for (int i = 0; i < parameters.length; i++) {
-                if (hasParameterCacheKeyAnnotation(parameters[i], implMethod, i)) {
-                    if (args != null && i < args.length) {
-                        keyComponents.add(args[i]);
-                    }
-                }
-            }
-        } else {
-            // Include all parameters
-            if (args != null) {
-                keyComponents.addAll(Arrays.asList(args));
+    /**
+     * @return the indexes of the first parameters of a method, as the key parameters including them all
+     */
+    static int[] allParameters(int count) {
+        int[] all = new int[count];
+        Arrays.setAll(all, i -> i);
+        return all;
+    }
+
+    /**
+     * Generates a cache key from the arguments of the key parameters.
+     *
+     * @param prefix        the name of the class declaring the method
+     * @param keyParameters the indexes of the parameters making the key, see {@link #keyParameters(Method, Class)}
+     * @param args          the method arguments
+     * @return a unique cache key
+     */
+    static String generate(String prefix, int[] keyParameters, Object[] args) {
+        List<Object> keyComponents = new ArrayList<>(keyParameters.length + 1);
+        keyComponents.add(prefix);
+        for (int index : keyParameters) {
+            if (args != null && index < args.length) {
+                keyComponents.add(args[index]);
             }
         }
 
@@ -102,56 +158,78 @@ public class CacheKeyGenerator {
     }
 
     /**
-     * Checks if a parameter has a specific annotation, looking at both interface and implementation
+     * Gets the @CacheKey annotation of a parameter, looking at both interface and implementation
      */
-    private static boolean hasParameterCacheKeyAnnotation(Parameter interfaceParam, Method implMethod, int paramIndex) {
+    private static CacheKey getParameterCacheKeyAnnotation(Parameter interfaceParam, Method implMethod, int paramIndex) {
         // Check interface parameter first
-        if (interfaceParam.isAnnotationPresent(CacheKey.class)) {
-            return true;
+        CacheKey cacheKey = interfaceParam.getAnnotation(CacheKey.class);
+        if (cacheKey != null) {
+            return cacheKey;
         }
 
         // Check implementation parameter if available
         if (implMethod != null) {
             Parameter[] implParams = implMethod.getParameters();
             if (paramIndex < implParams.length) {
-                return implParams[paramIndex].isAnnotationPresent(CacheKey.class);
+                return implParams[paramIndex].getAnnotation(CacheKey.class);
             }
         }
 
-        return false;
+        return null;
+    }
+
+    private static Method findImplementation(Method method, Class<?> targetClass) {
+        if (targetClass == null) {
+            return null;
+        }
+        try {
+            return targetClass.getMethod(method.getName(), method.getParameterTypes());
+        } catch (NoSuchMethodException e) {
+            LOGGER.debug("Implementation method not found for {}", method.getName());
+            return null;
+        }
     }
 
     /**
-     * Generates a hash-based key from the components
+     * @return the key expressions of the cache annotation of the method or of its implementation, invalidations taking
+     * precedence over cached results
      */
-    private static String generateHashKey(List<Object> components) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            StringBuilder sb = new StringBuilder();
-
-            for (Object component : components) {
-                if (component != null) {
-                    sb.append(component).append("|");
-                } else {
-                    sb.append("null|");
-                }
+    private static String[] annotatedKey(Method method, Class<?> targetClass) {
+        Method implMethod = findImplementation(method, targetClass);
+        for (Method candidate : new Method[]{ method, implMethod }) {
+            CacheInvalidate invalidate = (candidate != null) ? candidate.getAnnotation(CacheInvalidate.class) : null;
+            if (invalidate != null) {
+                return invalidate.key();
             }
-
-            byte[] hash = md.digest(sb.toString().getBytes());
-            StringBuilder hexString = new StringBuilder();
-
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
+        }
+        for (Method candidate : new Method[]{ method, implMethod }) {
+            CacheResult result = (candidate != null) ? candidate.getAnnotation(CacheResult.class) : null;
+            if (result != null) {
+                return result.key();
             }
+        }
+        return new String[0];
+    }
 
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            LOGGER.warn("SHA-256 algorithm not available, falling back to simple hash", e);
-            return String.valueOf(components.hashCode());
+    /**
+     * @return the key {@link #generate(String, int[], Object[])} returns for the arguments of the key parameters
+     */
+    static String hashKey(String prefix, Object[] components) {
+        StringBuilder sb = new StringBuilder().append(prefix).append('|');
+        for (Object component : components) {
+            sb.append(component).append('|');
+        }
+        return CacheKeys.digest(sb.toString());
+    }
+
+    /**
+     * Generates a hash-based key from the components, see {@link CacheKeys}
+     */
+    private static String generateHashKey(List<Object> components) {
+        StringBuilder sb = new StringBuilder();
+        for (Object component : components) {
+            sb.append(component).append('|');
         }
+        return CacheKeys.digest(sb.toString());
     }
 }
@@ -22,24 +22,64 @@ import org.osgi.service.component.annotations.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 /**
+ * Cache manager, creating the caches with the best available provider.
+ * <p>
+ * With the <code>snapshot</code> configuration property set to <code>true</code>, the content of the local caches is
+ * written to the <code>snapshotDirectory</code> directory (<code>${karaf.data}/cache-snapshot</code> by default) when
+ * the manager is deactivated and, if <code>snapshotInterval</code> is set, periodically every given number of seconds.
+ * When a cache is created again, its snapshot is reloaded in the background.
+ * <p>
+ * With the <code>budget</code> property set, the capacity of the local caches, including the ones created on the fly
+ * by the cache interceptor, is shared within this global budget: every <code>budgetInterval</code> seconds (10 by
+ * default) a share of the budget moves to the cache that would gain the most hits from it (see {@link MemoryBudget}).
+ * The budget is in entries, or in weight with <code>budgetUnit=weight</code>; only the caches bounded in the unit of
+ * the budget share it.
+ *
  * @author Jerome Blanchard
  */
 @Component(service = CacheManager.class, immediate = true)
 public class CacheManagerImpl implements CacheManager {
 
+    public static final String SNAPSHOT_PROPERTY = "snapshot";
+    public static final String SNAPSHOT_DIRECTORY_PROPERTY = "snapshotDirectory";
+    public static final String SNAPSHOT_INTERVAL_PROPERTY = "snapshotInterval";
+    public static final String BUDGET_PROPERTY = "budget";
+    public static final String BUDGET_INTERVAL_PROPERTY = "budgetInterval";
+    public static final String BUDGET_UNIT_PROPERTY = "budgetUnit";
+    public static final String ENTRIES_UNIT = "entries";
+    public static final String WEIGHT_UNIT = "weight";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(CacheManagerImpl.class);
+    private static final String SNAPSHOT_DIRECTORY = "cache-snapshot";
+    private static final long DEFAULT_BUDGET_INTERVAL = 10;
     private final List<CacheProvider> providers = new CopyOnWriteArrayList<>();
     private CacheProvider activeProvider;
     private ConcurrentHashMap<String, Cache<?>> caches;
+    private ConcurrentHashMap<String, LongKeyCache<?>> longKeyCaches;
+    private volatile CacheSnapshotStore snapshotStore;
+    private ScheduledExecutorService snapshotExecutor;
+    private ExecutorService restoreExecutor;
+    private volatile MemoryBudget memoryBudget;
+    private ScheduledExecutorService budgetExecutor;
+    private volatile long generation;
 
     public CacheManagerImpl() {
         LOGGER.info("Instantiating cache manager");
         caches = new ConcurrentHashMap<>();
+        longKeyCaches = new ConcurrentHashMap<>();
     }
 
     @Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC, unbind = "removeProvider")
@@ -59,14 +99,57 @@ public class CacheManagerImpl implements CacheManager {
     }
 
     @Activate
-    public void activate() {
+    public void activate(Map<String, Object> properties) {
+        CacheClock.start();
+        if (ComponentProperties.getBoolean(properties, SNAPSHOT_PROPERTY)) {
+            snapshotStore = new CacheSnapshotStore(
+                    ComponentProperties.getPath(properties, SNAPSHOT_DIRECTORY_PROPERTY, SNAPSHOT_DIRECTORY), new JavaCacheSerializer());
+            snapshotExecutor = Executors.newSingleThreadScheduledExecutor(daemonThreads("cache-snapshot"));
+            restoreExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), daemonThreads("cache-restore"));
+            long interval = ComponentProperties.getLong(properties, SNAPSHOT_INTERVAL_PROPERTY, 0);
+            if (interval > 0) {
+                snapshotExecutor.scheduleWithFixedDelay(this::snapshotAll, interval, interval, TimeUnit.SECONDS);
+            }
+        }
+        long budget = ComponentProperties.getLong(properties, BUDGET_PROPERTY, 0);
+        if (budget > 0) {
+            String unit = ComponentProperties.getChoice(properties, BUDGET_UNIT_PROPERTY, ENTRIES_UNIT, WEIGHT_UNIT);
+            MemoryBudget shared = new MemoryBudget(budget, WEIGHT_UNIT.equals(unit));
+            caches.values().forEach(cache -> budget(shared, cache));
+            longKeyCaches.values().forEach(cache -> budget(shared, cache));
+            memoryBudget = shared;
+            long interval = ComponentProperties.getLong(properties, BUDGET_INTERVAL_PROPERTY, DEFAULT_BUDGET_INTERVAL);
+            budgetExecutor = Executors.newSingleThreadScheduledExecutor(daemonThreads("cache-budget"));
+            budgetExecutor.scheduleWithFixedDelay(shared::reallocate, interval, interval, TimeUnit.SECONDS);
+            LOGGER.info("Sharing a capacity budget of {} {} between the caches", budget, unit);
+        }
         LOGGER.info("Cache Manager activated");
     }
 
     @Deactivate
     public void deactivate() {
         LOGGER.info("Cache Manager deactivated");
+        if (memoryBudget != null) {
+            budgetExecutor.shutdownNow();
+            memoryBudget = null;
+        }
+        if (snapshotStore != null) {
+            snapshotExecutor.shutdownNow();
+            restoreExecutor.shutdownNow();
+            try {
+                snapshotExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            snapshotAll();
+            snapshotStore = null;
+        }
+        // Release the resources held outside of the heap by the caches, like off-heap storage
+        caches.forEach((name, cache) -> cache.clear());
         caches.clear();
+        longKeyCaches.forEach((name, cache) -> cache.clear());
+        longKeyCaches.clear();
+        CacheClock.stop();
     }
 
     @Override
@@ -76,41 +159,129 @@ public class CacheManagerImpl implements CacheManager {
 
     @Override
     public List<String> listCacheNames() {
-        return caches.keySet().stream().toList();
+        return Stream.concat(caches.keySet().stream(), longKeyCaches.keySet().stream()).toList();
     }
 
     @Override
-    public <T> Cache<T> createCache(String name, CacheConfig config, Class<T> type) throws CacheAlreadyExistsException {
-        if (caches.containsKey(name)) {
+    public synchronized <T> Cache<T> createCache(String name, CacheConfig config, Class<T> type) throws CacheAlreadyExistsException {
+        if (caches.containsKey(name) || longKeyCaches.containsKey(name)) {
             throw new CacheAlreadyExistsException("Cache " + name + " already exists");
         }
         LOGGER.info("Creating cache {} using provider: {}", name, activeProvider.getProviderName());
         Cache<T> cache = activeProvider.createCache(name, config, type);
         caches.put(name, cache);
+        budget(memoryBudget, cache);
+        CacheSnapshotStore store = snapshotStore;
+        if (store != null && cache instanceof LocalCache && store.exists(name)) {
+            snapshotExecutor.execute(() -> restore(store, (LocalCache<T>) cache, type));
+        }
         return cache;
     }
 
     @Override
+    public synchronized <T> LongKeyCache<T> createLongKeyCache(String name, CacheConfig config, Class<T> type) throws CacheAlreadyExistsException {
+        if (caches.containsKey(name) || longKeyCaches.containsKey(name)) {
+            throw new CacheAlreadyExistsException("Cache " + name + " already exists");
+        }
+        LOGGER.info("Creating long keyed cache {} using provider: {}", name, activeProvider.getProviderName());
+        LongKeyCache<T> cache = activeProvider.createLongKeyCache(name, config, type);
+        longKeyCaches.put(name, cache);
+        budget(memoryBudget, cache);
+        return cache;
+    }
+
+    private static void budget(MemoryBudget memoryBudget, Object cache) {
+        if (memoryBudget != null && cache instanceof ResizableCache resizableCache) {
+            memoryBudget.register(resizableCache);
+        }
+    }
+
+    private <T> void restore(CacheSnapshotStore store, LocalCache<T> cache, Class<T> type) {
+        long start = System.currentTimeMillis();
+        try {
+            int count = store.restore(cache, type, restoreExecutor);
+            LOGGER.info("Restored {} entries of cache {} in {}ms", count, cache.getName(), System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to restore snapshot of cache {}", cache.getName(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the snapshot of every local cache.
+     */
+    void snapshotAll() {
+        CacheSnapshotStore store = snapshotStore;
+        if (store == null) {
+            return;
+        }
+        caches.forEach((name, cache) -> {
+            if (cache instanceof LocalCache<?> localCache) {
+                try {
+                    int count = store.write(localCache);
+                    LOGGER.info("Snapshot of cache {} written with {} entries", name, count);
+                } catch (IOException e) {
+                    LOGGER.warn("Unable to write snapshot of cache {}", name, e);
+                }
+            }
+        });
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
     public <T> Cache<T> getCache(String name, Class<T> type) throws CacheNotFoundException {
-        if (!caches.containsKey(name)) {
+        Cache<?> cache = caches.get(name);
+        if (cache == null) {
             throw new CacheNotFoundException("Cache " + name + " does not exist");
         }
-        return (Cache<T>) caches.get(name);
+        return (Cache<T>) cache;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> LongKeyCache<T> getLongKeyCache(String name, Class<T> type) throws CacheNotFoundException {
+        LongKeyCache<?> cache = longKeyCaches.get(name);
+        if (cache == null) {
+            throw new CacheNotFoundException("Cache " + name + " does not exist");
+        }
+        return (LongKeyCache<T>) cache;
     }
 
     @Override
     public void clearCache(String name) throws CacheNotFoundException {
-        if (!caches.containsKey(name)) {
+        if (caches.containsKey(name)) {
+            LOGGER.info("Clearing cache {}", name);
+            caches.get(name).clear();
+        } else if (longKeyCaches.containsKey(name)) {
+            LOGGER.info("Clearing cache {}", name);
+            longKeyCaches.get(name).clear();
+        } else {
             throw new CacheNotFoundException("Cache " + name + " does not exist");
         }
-        LOGGER.info("Clearing cache {}", name);
-        caches.get(name).clear();
     }
 
     @Override
     public void clearAll() {
         LOGGER.info("Clearing all caches");
         caches.forEach((key, value) -> value.clear());
+        longKeyCaches.forEach((key, value) -> value.clear());
+    }
+
+    /**
+     * @return the number of times the caches were recreated for a new provider, the cache instances obtained before a
+     * change of generation are not used anymore
+     */
+    long getGeneration() {
+        return generation;
     }
 
     private CacheProvider getBestAvailableProvider() {
@@ -127,11 +298,33 @@ public class CacheManagerImpl implements CacheManager {
                 LOGGER.info("Recreating cache {} using provider: {}", name, activeProvider.getProviderName());
                 Cache<?> newCache = activeProvider.createCache(name, oldCache.getConfig(), Object.class);
                 newCaches.put(name, newCache);
+                budget(memoryBudget, newCache);
+            } catch (Exception e) {
+                LOGGER.error("Failed to recreate cache {}", name, e);
+            }
+        });
+        ConcurrentHashMap<String, LongKeyCache<?>> newLongKeyCaches = new ConcurrentHashMap<>();
+        longKeyCaches.forEach((name, oldCache) -> {
+            try {
+                LOGGER.info("Recreating long keyed cache {} using provider: {}", name, activeProvider.getProviderName());
+                LongKeyCache<?> newCache = activeProvider.createLongKeyCache(name, oldCache.getConfig(), Object.class);
+                newLongKeyCaches.put(name, newCache);
+                budget(memoryBudget, newCache);
             } catch (Exception e) {
                 LOGGER.error("Failed to recreate cache {}", name, e);
             }
         });
+        ConcurrentHashMap<String, Cache<?>> oldCaches = caches;
+        ConcurrentHashMap<String, LongKeyCache<?>> oldLongKeyCaches = longKeyCaches;
         caches = newCaches;
+        longKeyCaches = newLongKeyCaches;
+        generation++;
+        MemoryBudget budget = memoryBudget;
+        Stream.concat(oldCaches.values().stream(), oldLongKeyCaches.values().stream())
+                .filter(oldCache -> budget != null && oldCache instanceof ResizableCache)
+                .forEach(oldCache -> budget.unregister((ResizableCache) oldCache));
+        oldCaches.forEach((name, oldCache) -> oldCache.clear());
+        oldLongKeyCaches.forEach((name, oldCache) -> oldCache.clear());
     }
 
 }
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.CacheClock;
+import org.jahia.features.cache.api.CacheEntry;
+import org.jahia.features.cache.api.CacheSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Snapshots of local caches on disk, used to restart warm.
+ * A snapshot is a stream of records (key, creation time, serialized value) written to a temporary file then moved
+ * over the previous snapshot of the cache. It is reloaded by streaming the file: records whose time to live elapsed
+ * in the meantime are skipped without being deserialized, the others are deserialized by batches in parallel and
+ * restored in the cache without overriding the entries it already holds. A snapshot is deleted once reloaded.
+ *
+ * @author Jerome Blanchard
+ */
+class CacheSnapshotStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheSnapshotStore.class);
+
+    private static final int MAGIC = 0x53434e50;
+    private static final int VERSION = 1;
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    static final int BATCH_SIZE = 512;
+    // Bounds the memory used by the records read but not yet deserialized
+    private static final int MAX_PENDING_BATCHES = 16;
+
+    private final Path directory;
+    private final CacheSerializer defaultSerializer;
+
+    CacheSnapshotStore(Path directory, CacheSerializer defaultSerializer) {
+        this.directory = directory;
+        this.defaultSerializer = defaultSerializer;
+    }
+
+    boolean exists(String cacheName) {
+        return Files.isRegularFile(fileFor(cacheName));
+    }
+
+    /**
+     * Writes the snapshot of the cache, entries whose value cannot be serialized are skipped.
+     *
+     * @return the number of entries written
+     */
+    <T> int write(LocalCache<T> cache) throws IOException {
+        Files.createDirectories(directory);
+        CacheSerializer serializer = serializerFor(cache);
+        Path file = fileFor(cache.getName());
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        AtomicInteger count = new AtomicInteger();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            cache.forEach((key, entry) -> {
+                byte[] data;
+                try {
+                    data = serializer.serialize(entry.value());
+                } catch (IOException e) {
+                    LOGGER.debug("Unable to serialize value of key: {} in cache: {}, skipped", key, cache.getName(), e);
+                    return;
+                }
+                try {
+                    out.writeBoolean(true);
+                    byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                    out.writeLong(entry.created());
+                    out.writeInt(data.length);
+                    out.write(data);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                count.incrementAndGet();
+            });
+            out.writeBoolean(false);
+        } catch (UncheckedIOException e) {
+            Files.deleteIfExists(temporary);
+            throw e.getCause();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count.get();
+    }
+
+    /**
+     * Reloads the snapshot of the cache, if any, then deletes it. Values are deserialized by the given executor.
+     *
+     * @return the number of entries restored
+     */
+    <T> int restore(LocalCache<T> cache, Class<T> type, ExecutorService executor) throws IOException, InterruptedException {
+        Path file = fileFor(cache.getName());
+        if (!Files.isRegularFile(file)) {
+            return 0;
+        }
+        CacheSerializer serializer = serializerFor(cache);
+        long expiredBefore = CacheClock.currentTimeMillis() - ConcurrentInMemoryCache.timeToLiveMillis(cache.getConfig());
+        AtomicInteger restored = new AtomicInteger();
+        Semaphore pending = new Semaphore(MAX_PENDING_BATCHES);
+        List<Future<?>> batches = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOGGER.warn("Ignoring snapshot {} of unknown format", file);
+                return 0;
+            }
+            List<Record> batch = new ArrayList<>(BATCH_SIZE);
+            while (in.readBoolean()) {
+                String key = new String(readBytes(in), StandardCharsets.UTF_8);
+                long created = in.readLong();
+                int length = in.readInt();
+                if (created <= expiredBefore) {
+                    in.skipNBytes(length);
+                    continue;
+                }
+                byte[] data = new byte[length];
+                in.readFully(data);
+                batch.add(new Record(key, created, data));
+                if (batch.size() == BATCH_SIZE) {
+                    batches.add(submit(cache, type, serializer, batch, executor, pending, restored));
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) {
+                batches.add(submit(cache, type, serializer, batch, executor, pending, restored));
+            }
+        } catch (EOFException e) {
+            LOGGER.warn("Snapshot {} is truncated, only its complete entries are restored", file);
+        } finally {
+            for (Future<?> future : batches) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    LOGGER.warn("Unable to restore entries of cache: {}", cache.getName(), e.getCause());
+                }
+            }
+            Files.deleteIfExists(file);
+        }
+        return restored.get();
+    }
+
+    private <T> Future<?> submit(LocalCache<T> cache, Class<T> type, CacheSerializer serializer, List<Record> batch,
+                                 ExecutorService executor, Semaphore pending, AtomicInteger restored) throws InterruptedException {
+        pending.acquire();
+        Runnable task = () -> {
+            try {
+                for (Record record : batch) {
+                    try {
+                        if (cache.restore(record.key, new CacheEntry<>(serializer.deserialize(record.data, type,
+                                cache.getConfig().getClassLoader()), record.created))) {
+                            restored.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        LOGGER.debug("Unable to deserialize value of key: {} in cache: {}, skipped", record.key, cache.getName(), e);
+                    }
+                }
+            } finally {
+                pending.release();
+            }
+        };
+        try {
+            return executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private CacheSerializer serializerFor(LocalCache<?> cache) {
+        return (cache.getConfig().getSerializer() != null) ? cache.getConfig().getSerializer() : defaultSerializer;
+    }
+
+    private Path fileFor(String cacheName) {
+        return directory.resolve(ComponentProperties.toFileName(cacheName) + SNAPSHOT_SUFFIX);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static final class Record {
+        private final String key;
+        private final long created;
+        private final byte[] data;
+
+        private Record(String key, long created, byte[] data) {
+            this.key = key;
+            this.created = created;
+            this.data = data;
+        }
+    }
+}
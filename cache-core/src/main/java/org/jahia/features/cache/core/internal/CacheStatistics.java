@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.CacheConfig;
+import org.jahia.features.cache.api.CacheStats;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics recorded by a local cache: hits, misses and evictions, and the misses on recently evicted keys.
+ * <p>
+ * Once given a ghost capacity, the statistics remember the hashes of about that many of the last evicted keys in two
+ * rotating Bloom filters, the ghost. A miss on a key found in the ghost would have been a hit if the cache had been
+ * larger by the ghost capacity: the number of these ghost hits per entry of ghost capacity estimates the marginal hit
+ * gain of growing the cache.
+ * <p>
+ * When enabled by the cache configuration, the references are also sampled to estimate the hit ratio of the cache at
+ * other capacities, see {@link MissRatioCurve}.
+ *
+ * @author Jerome Blanchard
+ */
+class CacheStatistics {
+
+    static final double[] ESTIMATED_SCALES = { 0.5, 1.0, 2.0, 4.0 };
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder ghostHits = new LongAdder();
+    private volatile Ghost ghost;
+    private final MissRatioCurve missRatioCurve;
+
+    CacheStatistics() {
+        this(false);
+    }
+
+    /**
+     * @param missRatioCurve true to sample the references and estimate the miss ratio curve of the cache
+     */
+    CacheStatistics(boolean missRatioCurve) {
+        this.missRatioCurve = missRatioCurve ? new MissRatioCurve() : null;
+    }
+
+    void recordHit(int hash) {
+        hits.increment();
+        if (missRatioCurve != null) {
+            missRatioCurve.record(hash);
+        }
+    }
+
+    void recordMiss(int hash) {
+        misses.increment();
+        if (missRatioCurve != null) {
+            missRatioCurve.record(hash);
+        }
+        Ghost current = ghost;
+        if (current != null && current.contains(hash)) {
+            ghostHits.increment();
+        }
+    }
+
+    void recordEviction(int hash) {
+        evictions.increment();
+        Ghost current = ghost;
+        if (current != null) {
+            current.add(hash);
+        }
+    }
+
+    /**
+     * Sets the number of evicted keys remembered, zero to stop remembering them. The ghost is kept when the capacity
+     * does not change.
+     */
+    void setGhostCapacity(int capacity) {
+        Ghost current = ghost;
+        if (capacity <= 0) {
+            ghost = null;
+        } else if (current == null || current.capacity != capacity) {
+            ghost = new Ghost(capacity);
+        }
+    }
+
+    int getGhostCapacity() {
+        Ghost current = ghost;
+        return (current != null) ? current.capacity : 0;
+    }
+
+    long hitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of ghost hits since the previous call
+     */
+    long drainGhostHits() {
+        return ghostHits.sumThenReset();
+    }
+
+    /**
+     * @param capacity current capacity of the cache in entries, around which the hit ratios are estimated
+     */
+    CacheStats snapshot(long capacity) {
+        if (missRatioCurve == null) {
+            return new CacheStats(hits.sum(), misses.sum(), evictions.sum());
+        }
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), missRatioCurve.hitRatios(capacity, ESTIMATED_SCALES));
+    }
+
+    /**
+     * @param capacityRatio fraction of the configured maximum allowed to relieve the heap
+     * @param budgetRatio   fraction of the configured maximum granted by the memory budget
+     * @param size          current number of entries of the cache
+     * @return the capacity in entries around which the hit ratios of the cache are estimated: its maximum number of
+     * entries, or its current one when not bounded by entries
+     */
+    static long estimatedCapacity(CacheConfig config, double capacityRatio, double budgetRatio, long size) {
+        if (config.isWeighted() || config.getMaxEntries() <= 0) {
+            return size;
+        }
+        return Math.max(1, (long) (config.getMaxEntries() * capacityRatio * budgetRatio));
+    }
+
+    static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    static int hash(long key) {
+        int h = Long.hashCode(key);
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Two Bloom filters of two hash functions: keys are added to the current filter, which becomes the previous one
+     * once it holds capacity keys, so that the ghost holds between capacity and twice capacity keys.
+     */
+    private static final class Ghost {
+        private final int capacity;
+        private final int mask;
+        private long[] current;
+        private long[] previous;
+        private int count;
+
+        Ghost(int capacity) {
+            this.capacity = capacity;
+            // 16 bits per key keep the false positive rate around 1.4%
+            int bits = Integer.highestOneBit((int) Math.min((long) capacity * 16 - 1, 1 << 23)) << 1;
+            this.mask = Math.max(bits, 64) - 1;
+            this.current = new long[(mask + 1) >>> 6];
+            this.previous = new long[(mask + 1) >>> 6];
+        }
+
+        synchronized void add(int hash) {
+            if (count++ >= capacity) {
+                long[] recycled = previous;
+                Arrays.fill(recycled, 0L);
+                previous = current;
+                current = recycled;
+                count = 1;
+            }
+            set(current, hash);
+            set(current, rehash(hash));
+        }
+
+        synchronized boolean contains(int hash) {
+            int second = rehash(hash);
+            return (isSet(current, hash) && isSet(current, second)) || (isSet(previous, hash) && isSet(previous, second));
+        }
+
+        private void set(long[] bits, int hash) {
+            int bit = hash & mask;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+
+        private boolean isSet(long[] bits, int hash) {
+            int bit = hash & mask;
+            return (bits[bit >>> 6] & (1L << bit)) != 0;
+        }
+
+        private static int rehash(int hash) {
+            int x = hash * 0x9E3779B9;
+            return x ^ (x >>> 15);
+        }
+    }
+}
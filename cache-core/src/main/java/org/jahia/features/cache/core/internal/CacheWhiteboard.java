@@ -16,6 +16,7 @@
 package org.jahia.features.cache.core.internal;
 
 import org.jahia.features.cache.api.CacheManager;
+import org.jahia.features.cache.api.CacheOperations;
 import org.jahia.features.cache.api.CacheResult;
 import org.osgi.framework.*;
 import org.osgi.service.component.annotations.Activate;
@@ -27,31 +28,121 @@ import org.osgi.util.tracker.ServiceTrackerCustomizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.Arrays;
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
+ * Registers a caching proxy in front of every service declaring <code>@CacheResult</code> methods. When the bundle of
+ * the service was compiled with the cache-processor annotation processor, the generated decorator of the service is
+ * registered instead of a runtime proxy.
+ * <p>
+ * With the <code>warmUp</code> configuration property, the proxies record the hottest invocations of each cache in a
+ * journal, written in the <code>warmUpDirectory</code> directory (<code>${karaf.data}/cache-journal</code> by default)
+ * when the whiteboard is deactivated. After a restart, the journaled invocations of a service are replayed through
+ * its proxy, by <code>warmUpConcurrency</code> threads:
+ * <ul>
+ *     <li><code>off</code> (default): no journal</li>
+ *     <li><code>blocking</code>: the proxy is registered once the replay is done, or after <code>warmUpTimeout</code> seconds</li>
+ *     <li><code>background</code>: the proxy is registered at once and the caches fill up progressively</li>
+ * </ul>
+ * The <code>warmUpKeys</code> property sets the number of invocations journaled per cache.
+ * <p>
+ * Values due for a refresh (see <code>refreshAfterWrite</code>) are reloaded by <code>refreshConcurrency</code> threads
+ * (4 by default), at most <code>refreshQueueSize</code> refreshes (1000 by default) waiting for a thread: beyond,
+ * refreshes are postponed to a later hit.
+ * <p>
+ * The <code>keyMode</code> property selects the keys of the cached invocations: <code>hash</code> (default) for the
+ * SHA-256 digests of the key arguments, <code>structured</code> for keys holding the arguments themselves, compared
+ * with their <code>equals</code> methods, which the in-memory engines of the default provider look up without hashing
+ * any string, or <code>binary</code> for 128-bit hashes of the arguments held in two longs, compact in the cluster.
+ * Structured and binary keys are built by the runtime proxies, the generated decorators are then not used.
+ *
  * @author Jerome Blanchard
  */
 @Component(immediate = true)
 public class CacheWhiteboard {
 
+    public static final String WARM_UP_PROPERTY = "warmUp";
+    public static final String WARM_UP_OFF = "off";
+    public static final String WARM_UP_BLOCKING = "blocking";
+    public static final String WARM_UP_BACKGROUND = "background";
+    public static final String WARM_UP_DIRECTORY_PROPERTY = "warmUpDirectory";
+    public static final String WARM_UP_KEYS_PROPERTY = "warmUpKeys";
+    public static final String WARM_UP_CONCURRENCY_PROPERTY = "warmUpConcurrency";
+    public static final String WARM_UP_TIMEOUT_PROPERTY = "warmUpTimeout";
+    public static final String REFRESH_CONCURRENCY_PROPERTY = "refreshConcurrency";
+    public static final String REFRESH_QUEUE_SIZE_PROPERTY = "refreshQueueSize";
+    public static final String KEY_MODE_PROPERTY = "keyMode";
+    public static final String KEY_MODE_HASH = "hash";
+    public static final String KEY_MODE_STRUCTURED = "structured";
+    public static final String KEY_MODE_BINARY = "binary";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(CacheWhiteboard.class);
+    private static final String WARM_UP_DIRECTORY = "cache-journal";
+    private static final String JOURNAL_FILE = "warmup.journal";
 
     private final Map<Object, ServiceRegistration<?>> registrations = new ConcurrentHashMap<>();
     private ServiceTracker<Object, Object> serviceTracker;
     private BundleContext context;
     @Reference
     private CacheManager cacheManager;
+    private String warmUp = WARM_UP_OFF;
+    private long warmUpTimeout;
+    private WarmUpJournal journal;
+    private ExecutorService warmUpExecutor;
+    private ThreadPoolExecutor refreshExecutor;
+    private InvocationPlan.KeyMode keyMode = InvocationPlan.KeyMode.HASH;
 
     @Activate
-    public void activate(BundleContext context) {
+    public void activate(BundleContext context, Map<String, Object> properties) {
         this.context = context;
+        this.warmUp = ComponentProperties.getChoice(properties, WARM_UP_PROPERTY, WARM_UP_OFF, WARM_UP_BLOCKING, WARM_UP_BACKGROUND);
+        if (!WARM_UP_OFF.equals(warmUp)) {
+            this.warmUpTimeout = ComponentProperties.getLong(properties, WARM_UP_TIMEOUT_PROPERTY, 30);
+            this.journal = new WarmUpJournal(
+                    ComponentProperties.getPath(properties, WARM_UP_DIRECTORY_PROPERTY, WARM_UP_DIRECTORY).resolve(JOURNAL_FILE),
+                    (int) ComponentProperties.getLong(properties, WARM_UP_KEYS_PROPERTY, 100));
+            try {
+                LOGGER.info("Loaded {} invocations from the warm-up journal", journal.load());
+            } catch (IOException e) {
+                LOGGER.warn("Unable to load the warm-up journal", e);
+            }
+            int concurrency = (int) Math.max(1, ComponentProperties.getLong(properties, WARM_UP_CONCURRENCY_PROPERTY, 4));
+            this.warmUpExecutor = Executors.newFixedThreadPool(concurrency, runnable -> {
+                Thread thread = new Thread(runnable, "cache-warmup");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        int refreshConcurrency = (int) Math.max(1, ComponentProperties.getLong(properties, REFRESH_CONCURRENCY_PROPERTY, 4));
+        int refreshQueueSize = (int) Math.max(1, ComponentProperties.getLong(properties, REFRESH_QUEUE_SIZE_PROPERTY, 1000));
+        this.refreshExecutor = new ThreadPoolExecutor(refreshConcurrency, refreshConcurrency, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(refreshQueueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "cache-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.refreshExecutor.allowCoreThreadTimeOut(true);
+        this.keyMode = InvocationPlan.KeyMode.valueOf(ComponentProperties.getChoice(properties, KEY_MODE_PROPERTY,
+                KEY_MODE_HASH, KEY_MODE_STRUCTURED, KEY_MODE_BINARY).toUpperCase(Locale.ROOT));
         this.startServiceTracker();
     }
 
@@ -60,8 +151,18 @@ public class CacheWhiteboard {
         if (serviceTracker != null) {
             serviceTracker.close();
         }
+        if (journal != null) {
+            warmUpExecutor.shutdownNow();
+            try {
+                LOGGER.info("Warm-up journal written with {} invocations", journal.write());
+            } catch (IOException e) {
+                LOGGER.warn("Unable to write the warm-up journal", e);
+            }
+            journal = null;
+        }
         registrations.values().forEach(ServiceRegistration::unregister);
         registrations.clear();
+        refreshExecutor.shutdownNow();
     }
 
     private void startServiceTracker () {
@@ -86,6 +187,9 @@ public class CacheWhiteboard {
                         if (hasCacheAnnotations(service)) {
                             LOGGER.info("Creating caching proxy for service: {}", service.getClass().getName());
                             Object proxy = createProxy(service);
+                            if (WARM_UP_BLOCKING.equals(warmUp)) {
+                                awaitWarmUp(service, journal.replay(proxy, service.getClass().getClassLoader(), warmUpExecutor));
+                            }
                             Dictionary<String, Object> proxyProps = new Hashtable<>(props);
                             proxyProps.put(Constants.SERVICE_RANKING, (int) props.getOrDefault(Constants.SERVICE_RANKING, 0) + 1);
                             proxyProps.put("cache.proxy", Boolean.TRUE);
@@ -93,6 +197,9 @@ public class CacheWhiteboard {
                             ServiceRegistration<?> reg = context.registerService(ifaces, proxy, proxyProps);
                             LOGGER.info("Caching proxy registered: {} with properties: {}", proxy.getClass().getName(), props);
                             registrations.put(service, reg);
+                            if (WARM_UP_BACKGROUND.equals(warmUp)) {
+                                journal.replay(proxy, service.getClass().getClassLoader(), warmUpExecutor);
+                            }
                         }
                         return service;
                     }
@@ -118,6 +225,27 @@ public class CacheWhiteboard {
         }
     }
 
+    private void awaitWarmUp(Object service, List<Future<?>> replays) {
+        if (replays.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long deadline = start + TimeUnit.SECONDS.toMillis(warmUpTimeout);
+        try {
+            for (Future<?> replay : replays) {
+                replay.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            }
+            LOGGER.info("Replayed {} invocations for service: {} in {}ms", replays.size(), service.getClass().getName(),
+                    System.currentTimeMillis() - start);
+        } catch (TimeoutException e) {
+            LOGGER.warn("Warm-up of service: {} not done after {}s, continuing in background", service.getClass().getName(), warmUpTimeout);
+        } catch (ExecutionException e) {
+            LOGGER.warn("Warm-up of service: {} failed", service.getClass().getName(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private boolean hasCacheAnnotations(Object svc) {
         for (Method m : svc.getClass().getMethods()) {
             if (m.isAnnotationPresent(CacheResult.class)) {
@@ -135,9 +263,53 @@ public class CacheWhiteboard {
     }
 
     private Object createProxy(Object target) {
+        CacheInterceptor interceptor = new CacheInterceptor(target, cacheManager, journal, refreshExecutor, keyMode);
+        interceptor.compilePlans(target.getClass().getInterfaces());
+        // The generated decorators compute digests, their keys would not match the keys of other services
+        Object decorator = (keyMode == InvocationPlan.KeyMode.HASH) ? createDecorator(target, interceptor) : null;
+        if (decorator != null) {
+            return decorator;
+        }
         return Proxy.newProxyInstance(
                 target.getClass().getClassLoader(),
                 target.getClass().getInterfaces(),
-                new CacheInterceptor(target, cacheManager));
+                interceptor);
+    }
+
+    /**
+     * @return the decorator generated by the cache-processor module for the class of the service, as listed in the
+     * metadata of its bundle, or null when there is none
+     */
+    static Object createDecorator(Object target, CacheOperations operations) {
+        Class<?> type = target.getClass();
+        ClassLoader loader = type.getClassLoader();
+        if (loader == null) {
+            return null;
+        }
+        String decoratorName;
+        try (InputStream in = loader.getResourceAsStream(CacheOperations.DECORATORS_RESOURCE)) {
+            if (in == null) {
+                return null;
+            }
+            Properties decorators = new Properties();
+            decorators.load(in);
+            decoratorName = decorators.getProperty(type.getName());
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read the caching decorators of service: {}", type.getName(), e);
+            return null;
+        }
+        if (decoratorName == null) {
+            return null;
+        }
+        try {
+            Object decorator = loader.loadClass(decoratorName).getConstructor(type, CacheOperations.class)
+                    .newInstance(target, operations);
+            LOGGER.info("Using generated caching decorator: {} for service: {}", decoratorName, type.getName());
+            return decorator;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            LOGGER.warn("Unable to create the caching decorator: {} of service: {}, using a proxy", decoratorName,
+                    type.getName(), e);
+            return null;
+        }
     }
 }
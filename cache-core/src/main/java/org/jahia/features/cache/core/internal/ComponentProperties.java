@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Parsing of the configuration properties of the components, invalid values fall back to their default.
+ *
+ * @author Jerome Blanchard
+ */
+final class ComponentProperties {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ComponentProperties.class);
+
+    private ComponentProperties() {
+    }
+
+    static String getChoice(Map<String, Object> properties, String key, String defaultValue, String... others) {
+        Object value = properties.get(key);
+        String configured = (value != null) ? value.toString().trim() : defaultValue;
+        if (!defaultValue.equals(configured) && !Arrays.asList(others).contains(configured)) {
+            LOGGER.warn("Unknown value: {} for: {}, falling back to: {}", configured, key, defaultValue);
+            return defaultValue;
+        }
+        return configured;
+    }
+
+    static long getLong(Map<String, Object> properties, String key, long defaultValue) {
+        Object value = properties.get(key);
+        if (value != null) {
+            try {
+                return Long.parseLong(value.toString().trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Invalid value: {} for: {}, falling back to: {}", value, key, defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
+    static boolean getBoolean(Map<String, Object> properties, String key) {
+        Object value = properties.get(key);
+        return value != null && Boolean.parseBoolean(value.toString().trim());
+    }
+
+    /**
+     * @return the configured path, or the given directory of the Karaf data directory (the temporary directory
+     * outside of Karaf)
+     */
+    static Path getPath(Map<String, Object> properties, String key, String dataDirectory) {
+        Object value = properties.get(key);
+        if (value != null) {
+            return Paths.get(value.toString().trim());
+        }
+        return Paths.get(System.getProperty("karaf.data", System.getProperty("java.io.tmpdir")), dataDirectory);
+    }
+
+    /**
+     * @return the name turned into a safe file name
+     */
+    static String toFileName(String name) {
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+}
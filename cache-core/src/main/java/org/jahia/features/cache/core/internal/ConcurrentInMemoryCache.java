@@ -0,0 +1,806 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.CacheClock;
+import org.jahia.features.cache.api.CacheConfig;
+import org.jahia.features.cache.api.CacheEntry;
+import org.jahia.features.cache.api.CacheStats;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Concurrent in-memory cache engine.
+ * Entries are stored in a {@link ConcurrentHashMap} so lookups never block, while the LRU eviction order is
+ * split into independent segments, each one guarded by its own lock and owning a share of maxEntries.
+ * Eviction is therefore an approximate LRU: the least recently used entry of the segment receiving the write
+ * is evicted, not necessarily the global one. When the configuration defines a maximum weight, segments share the
+ * maximum weight instead of maxEntries and evict until their total weight fits.
+ * <p>
+ * Cache operations never update the eviction order directly. Hits are recorded in a lossy ring buffer per segment
+ * and writes in a bounded write buffer, both being replayed in batches by whichever thread acquires the segment
+ * lock with a try-lock. Read events are dropped when the ring buffer is full, which only degrades the LRU accuracy.
+ * A writer finding the write buffer full waits for the lock and drains it, bounding the pending work.
+ * <p>
+ * When the {@link CacheConfig.EvictionPolicy#TINY_LFU} policy is configured, each segment runs a W-TinyLFU policy:
+ * a small LRU admission window in front of a segmented LRU main space, a frequency sketch deciding whether an
+ * entry leaving the window may replace the main space victim.
+ * <p>
+ * Expired entries are removed proactively: each segment schedules its entries in a {@link TimerWheel} advanced
+ * on every maintenance run, either piggybacked on cache operations or triggered periodically by the maintenance
+ * scheduler of the provider so that idle caches also release their expired entries.
+ * <p>
+ * With soft or weak {@link CacheConfig.ValueReference value references}, the entries whose value was reclaimed by
+ * the garbage collector are removed on the next write or maintenance run, and treated as misses meanwhile.
+ *
+ * @author Jerome Blanchard
+ */
+public class ConcurrentInMemoryCache<T> implements LocalCache<T>, ResizableCache {
+
+    private static final int MIN_ENTRIES_PER_SEGMENT = 16;
+    private static final int MAX_WEIGHTED_SEGMENTS = 8;
+    private static final int ENTRY_WEIGHTS_PER_SEGMENT = 8;
+    private static final int DEFAULT_SKETCH_SIZE = 1024;
+    private static final int MAX_SEGMENTS = 64;
+    static final int READ_BUFFER_SIZE = 64;
+    static final int READ_BUFFER_DRAIN_THRESHOLD = 32;
+    static final int WRITE_BUFFER_SIZE = 128;
+    static final long MAINTENANCE_PERIOD = 1000L;
+
+    private final String cacheName;
+    private final CacheConfig cacheConfig;
+    private final ConcurrentHashMap<Object, Node<T>> entries;
+    private final Segment<T>[] segments;
+    private final int segmentShift;
+    private final long timeToLiveMillis;
+    private final long graceMillis;
+    private final ReferenceQueue<T> reclaimed = new ReferenceQueue<>();
+    private final CacheStatistics statistics;
+    private volatile double capacityRatio = 1.0;
+    private volatile double budgetRatio = 1.0;
+
+    public ConcurrentInMemoryCache(String cacheName, CacheConfig cacheConfig) {
+        this(cacheName, cacheConfig, null);
+    }
+
+    /**
+     * @param scheduler executor running the periodic maintenance of the cache, or null to only rely on the
+     *                  maintenance piggybacked on cache operations
+     */
+    public ConcurrentInMemoryCache(String cacheName, CacheConfig cacheConfig, ScheduledExecutorService scheduler) {
+        this.cacheName = cacheName;
+        this.cacheConfig = cacheConfig;
+        this.entries = new ConcurrentHashMap<>();
+        this.statistics = new CacheStatistics(cacheConfig.isMissRatioCurve());
+        this.timeToLiveMillis = timeToLiveMillis(cacheConfig);
+        this.graceMillis = cacheConfig.getGracePeriod() * 1000L;
+        int segmentCount = segmentCount(cacheConfig);
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+        this.segments = newSegments(segmentCount, cacheConfig);
+        if (scheduler != null) {
+            MaintenanceTask.schedule(this, scheduler);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return cacheName;
+    }
+
+    @Override
+    public CacheConfig getConfig() {
+        return cacheConfig;
+    }
+
+    @Override
+    public CacheEntry<T> getEntry(String key) {
+        return getEntry((Object) key);
+    }
+
+    @Override
+    public CacheEntry<T> getEntry(Object key) {
+        Node<T> node = entries.get(key);
+        if (node == null) {
+            statistics.recordMiss(CacheStatistics.hash(key));
+            return null;
+        }
+        Segment<T> segment = segmentFor(key);
+        long now = CacheClock.currentTimeMillis();
+        if (node.expiresAt <= now || ReferenceCacheEntry.isCleared(node.entry)) {
+            if (entries.remove(key, node)) {
+                node.retired = true;
+                afterWrite(segment, new WriteTask<>(node, false));
+            }
+            statistics.recordMiss(CacheStatistics.hash(key));
+            return null;
+        }
+        if (isStale(node, now)) {
+            // Kept until the end of its grace period, only served by getStaleEntry
+            statistics.recordMiss(CacheStatistics.hash(key));
+            return null;
+        }
+        if (segment.recordRead(node)) {
+            tryDrain(segment);
+        }
+        statistics.recordHit(CacheStatistics.hash(key));
+        return node.entry;
+    }
+
+    @Override
+    public CacheEntry<T> getStaleEntry(String key) {
+        return getStaleEntry((Object) key);
+    }
+
+    @Override
+    public CacheEntry<T> getStaleEntry(Object key) {
+        Node<T> node = entries.get(key);
+        long now = CacheClock.currentTimeMillis();
+        if (node == null || node.expiresAt <= now || ReferenceCacheEntry.isCleared(node.entry) || !isStale(node, now)) {
+            return null;
+        }
+        return node.entry;
+    }
+
+    @Override
+    public T get(String key) {
+        CacheEntry<T> entry = getEntry(key);
+        return (entry != null) ? entry.value() : null;
+    }
+
+    @Override
+    public CacheEntry<T> put(String key, T value) {
+        return put((Object) key, value);
+    }
+
+    @Override
+    public CacheEntry<T> put(Object key, T value) {
+        int weight = weigh(cacheConfig, key, value);
+        if (isOverweight(cacheConfig, weight)) {
+            return delete(key);
+        }
+        expungeReclaimed();
+        Node<T> node = new Node<>(key, ReferenceCacheEntry.create(cacheConfig, key, value, CacheClock.currentTimeMillis(), reclaimed));
+        node.weight = weight;
+        node.expiresAt = expiration(node.entry.created(), timeToLiveMillis, graceMillis);
+        Segment<T> segment = segmentFor(key);
+        Node<T> old = entries.put(key, node);
+        if (old != null) {
+            old.retired = true;
+            afterWrite(segment, new WriteTask<>(old, false));
+        }
+        afterWrite(segment, new WriteTask<>(node, true));
+        return (old != null) ? old.entry : null;
+    }
+
+    /**
+     * Entries of keys that are not String, only meaningful to the running services, are left out.
+     */
+    @Override
+    public void forEach(BiConsumer<String, CacheEntry<T>> action) {
+        long now = CacheClock.currentTimeMillis();
+        for (Node<T> node : entries.values()) {
+            if (node.key instanceof String key && node.expiresAt > now && !isStale(node, now)
+                    && !ReferenceCacheEntry.isCleared(node.entry)) {
+                action.accept(key, node.entry);
+            }
+        }
+    }
+
+    @Override
+    public boolean restore(String key, CacheEntry<T> entry) {
+        int weight = weigh(cacheConfig, key, entry.value());
+        if (isOverweight(cacheConfig, weight)) {
+            return false;
+        }
+        Node<T> node = new Node<>(key, ReferenceCacheEntry.create(cacheConfig, key, entry.value(), entry.created(), reclaimed));
+        node.weight = weight;
+        node.expiresAt = expiration(entry.created(), timeToLiveMillis, graceMillis);
+        if (isStale(node, CacheClock.currentTimeMillis()) || entries.putIfAbsent(key, node) != null) {
+            return false;
+        }
+        afterWrite(segmentFor(key), new WriteTask<>(node, true));
+        return true;
+    }
+
+    @Override
+    public CacheEntry<T> delete(String key) {
+        return delete((Object) key);
+    }
+
+    @Override
+    public CacheEntry<T> delete(Object key) {
+        Node<T> old = entries.remove(key);
+        if (old == null) {
+            return null;
+        }
+        old.retired = true;
+        afterWrite(segmentFor(key), new WriteTask<>(old, false));
+        return old.entry;
+    }
+
+    @Override
+    public void clear() {
+        for (Segment<T> segment : segments) {
+            segment.lock();
+        }
+        try {
+            for (Segment<T> segment : segments) {
+                drain(segment);
+            }
+            entries.forEach((key, node) -> {
+                if (entries.remove(key, node)) {
+                    node.retired = true;
+                    segmentFor(key).onRemove(node);
+                }
+            });
+        } finally {
+            for (Segment<T> segment : segments) {
+                segment.unlock();
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Runs the pending maintenance of every segment not currently locked: replays the buffered reads and writes
+     * and removes the expired entries.
+     */
+    @Override
+    public void cleanUp() {
+        expungeReclaimed();
+        for (Segment<T> segment : segments) {
+            tryDrain(segment);
+        }
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return statistics.snapshot(CacheStatistics.estimatedCapacity(cacheConfig, capacityRatio, budgetRatio, entries.size()));
+    }
+
+    @Override
+    public CacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public double getCapacityRatio() {
+        return capacityRatio;
+    }
+
+    @Override
+    public synchronized void setCapacityRatio(double ratio) {
+        capacityRatio = ratio;
+        resize();
+    }
+
+    @Override
+    public double getBudgetRatio() {
+        return budgetRatio;
+    }
+
+    @Override
+    public synchronized void setBudgetRatio(double ratio) {
+        budgetRatio = ratio;
+        resize();
+    }
+
+    private void resize() {
+        double ratio = capacityRatio * budgetRatio;
+        for (Segment<T> segment : segments) {
+            segment.lock();
+            try {
+                drain(segment);
+                segment.resize(ratio);
+                evict(segment);
+            } finally {
+                segment.unlock();
+            }
+        }
+    }
+
+    @Override
+    public long weightedSize() {
+        long weightedSize = 0;
+        for (Segment<T> segment : segments) {
+            segment.lock();
+            try {
+                drain(segment);
+                weightedSize += segment.weightedSize();
+            } finally {
+                segment.unlock();
+            }
+        }
+        return weightedSize;
+    }
+
+    static int weigh(CacheConfig config, Object key, Object value) {
+        if (config.getWeigher() == null) {
+            return 1;
+        }
+        int weight = config.getWeigher().weigh(key.toString(), value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Negative weight " + weight + " for key " + key);
+        }
+        return weight;
+    }
+
+    static boolean isOverweight(CacheConfig config, int weight) {
+        return config.getMaxEntryWeight() > 0 && weight > config.getMaxEntryWeight();
+    }
+
+    /**
+     * @return the time to live of the entries in milliseconds, {@link Long#MAX_VALUE} when they never expire: every
+     * engine, like the clustered providers, keeps the entries without expiration when the time to live is not positive
+     */
+    static long timeToLiveMillis(CacheConfig config) {
+        return (config.getTimeToLive() > 0) ? config.getTimeToLive() * 1000L : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the time the entry leaves the cache, after its time to live and grace period
+     */
+    static long expiration(long created, long timeToLive, long grace) {
+        return (timeToLive == Long.MAX_VALUE) ? Long.MAX_VALUE : created + timeToLive + grace;
+    }
+
+    /**
+     * @return true when the time to live of the entry elapsed, the entry being only kept for its grace period
+     */
+    private boolean isStale(Node<T> node, long now) {
+        return timeToLiveMillis != Long.MAX_VALUE && node.entry.created() + timeToLiveMillis <= now;
+    }
+
+    private void expungeReclaimed() {
+        Reference<? extends T> reference;
+        while ((reference = reclaimed.poll()) != null) {
+            Object key = ReferenceCacheEntry.keyOf(reference);
+            Node<T> node = entries.get(key);
+            // A newer entry may have been put since, only the one that held the reclaimed value is removed
+            if (node != null && ReferenceCacheEntry.holds(node.entry, reference) && entries.remove(key, node)) {
+                node.retired = true;
+                afterWrite(segmentFor(key), new WriteTask<>(node, false));
+            }
+        }
+    }
+
+    private void afterWrite(Segment<T> segment, WriteTask<T> task) {
+        if (segment.pendingWrites.incrementAndGet() > WRITE_BUFFER_SIZE) {
+            // Write buffer is full: apply back pressure by draining it while holding the lock
+            segment.lock();
+            try {
+                drain(segment);
+                segment.pendingWrites.decrementAndGet();
+                apply(segment, task);
+            } finally {
+                segment.unlock();
+            }
+            return;
+        }
+        segment.writeBuffer.offer(task);
+        tryDrain(segment);
+    }
+
+    private void tryDrain(Segment<T> segment) {
+        // Re-check after unlocking so a task enqueued while the lock was held is never left behind
+        do {
+            if (!segment.tryLock()) {
+                return;
+            }
+            try {
+                drain(segment);
+            } finally {
+                segment.unlock();
+            }
+        } while (!segment.writeBuffer.isEmpty());
+    }
+
+    private void drain(Segment<T> segment) {
+        segment.drainReads();
+        WriteTask<T> task;
+        while ((task = segment.writeBuffer.poll()) != null) {
+            segment.pendingWrites.decrementAndGet();
+            apply(segment, task);
+        }
+        segment.timerWheel.advance(CacheClock.currentTimeMillis(), node -> evictNode(segment, node));
+    }
+
+    private void apply(Segment<T> segment, WriteTask<T> task) {
+        if (!task.add) {
+            segment.onRemove(task.node);
+            return;
+        }
+        if (task.node.retired) {
+            return;
+        }
+        segment.onAdd(task.node);
+        evict(segment);
+    }
+
+    /**
+     * Brings the segment back under its capacity. Entries overflowing the admission window become candidates
+     * for the main space, each one either replacing the probation victim or being evicted, as decided by the
+     * segment policy. With the LRU policy the window spans the whole segment so the least recently used entry
+     * is always evicted.
+     */
+    private void evict(Segment<T> segment) {
+        if (segment.capacity <= 0) {
+            return;
+        }
+        int candidates = 0;
+        while (segment.window.weight > segment.windowCapacity) {
+            Node<T> node = segment.window.head;
+            segment.window.unlink(node);
+            segment.probation.linkLast(node);
+            candidates++;
+        }
+        Node<T> candidate = (candidates > 0) ? segment.probation.tail : null;
+        while (segment.weightedSize() > segment.capacity) {
+            Node<T> victim = segment.victim();
+            if (candidate == null || candidate == victim) {
+                candidate = null;
+                evictVictim(segment, victim);
+            } else if (segment.admit(candidate, victim)) {
+                evictVictim(segment, victim);
+            } else {
+                Node<T> previous = (--candidates > 0) ? candidate.prev : null;
+                evictVictim(segment, candidate);
+                candidate = previous;
+            }
+        }
+    }
+
+    private void evictVictim(Segment<T> segment, Node<T> node) {
+        statistics.recordEviction(CacheStatistics.hash(node.key));
+        evictNode(segment, node);
+    }
+
+    private void evictNode(Segment<T> segment, Node<T> node) {
+        entries.remove(node.key, node);
+        node.retired = true;
+        segment.onRemove(node);
+    }
+
+    private Segment<T> segmentFor(Object key) {
+        if (segments.length == 1) {
+            return segments[0];
+        }
+        // Use the high bits of a re-mixed hash so segments are independent from the map bins
+        return segments[(key.hashCode() * 0x9E3779B9) >>> segmentShift];
+    }
+
+    /**
+     * Number of segments, a power of two close to the number of processors. Each segment needs enough capacity for
+     * the approximate LRU to remain meaningful: at least 16 entries, and for weighted caches 8 times the maximum
+     * entry weight, or an eighth of the maximum weight when entries are not bounded.
+     */
+    static int segmentCount(CacheConfig config) {
+        int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        count = Math.min(count, MAX_SEGMENTS);
+        long maximum = maximum(config);
+        if (maximum > 0) {
+            long minPerSegment = MIN_ENTRIES_PER_SEGMENT;
+            if (config.isWeighted()) {
+                minPerSegment = (config.getMaxEntryWeight() > 0) ?
+                        Math.max(minPerSegment, config.getMaxEntryWeight() * ENTRY_WEIGHTS_PER_SEGMENT) :
+                        Math.max(minPerSegment, maximum / MAX_WEIGHTED_SEGMENTS);
+            }
+            while (count > 1 && maximum / count < minPerSegment) {
+                count >>>= 1;
+            }
+        }
+        return count;
+    }
+
+    private static long maximum(CacheConfig config) {
+        return config.isWeighted() ? config.getMaxWeight() : Math.max(config.getMaxEntries(), 0);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> Segment<T>[] newSegments(int count, CacheConfig config) {
+        long maximum = maximum(config);
+        Segment<T>[] segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            long capacity = (maximum > 0) ? maximum / count + ((i < maximum % count) ? 1 : 0) : 0;
+            long expectedEntries = config.isWeighted() ?
+                    ((config.getMaxEntries() > 0) ? config.getMaxEntries() / count : DEFAULT_SKETCH_SIZE) : capacity;
+            segments[i] = new Segment<>(capacity, expectedEntries, config.getEvictionPolicy());
+        }
+        return segments;
+    }
+
+    /**
+     * Map value holding the key, the cache entry and its position in one of the segment access ordered lists.
+     * A node is retired once removed from the map, by the only thread that succeeded in removing it.
+     */
+    static final class Node<T> extends TimerWheel.Timer {
+        final Object key;
+        final CacheEntry<T> entry;
+        volatile boolean retired;
+        int weight = 1;
+        Node<T> prev;
+        Node<T> next;
+        NodeList<T> list;
+
+        Node(Object key, CacheEntry<T> entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+
+        int hash() {
+            return key.hashCode();
+        }
+    }
+
+    /**
+     * A pending change of the eviction order: link a new node or unlink a removed one.
+     */
+    static final class WriteTask<T> {
+        final Node<T> node;
+        final boolean add;
+
+        WriteTask(Node<T> node, boolean add) {
+            this.node = node;
+            this.add = add;
+        }
+    }
+
+    /**
+     * Access ordered doubly linked list of nodes, least recently used first, with the total weight of its nodes.
+     */
+    static final class NodeList<T> {
+        Node<T> head;
+        Node<T> tail;
+        long weight;
+
+        void linkLast(Node<T> node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            node.list = this;
+            weight += node.weight;
+        }
+
+        void unlink(Node<T> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            node.list = null;
+            weight -= node.weight;
+        }
+
+        void moveToTail(Node<T> node) {
+            if (node != tail) {
+                unlink(node);
+                linkLast(node);
+            }
+        }
+    }
+
+    /**
+     * A share of the eviction order with its own capacity, every structural change happening while holding the
+     * segment lock. New entries go to the admission window, entries leaving the window go to the probation list
+     * and are promoted to the protected list when accessed again. With the LRU policy the window spans the whole
+     * capacity and no frequency sketch is maintained.
+     */
+    @SuppressWarnings("serial")
+    static final class Segment<T> extends ReentrantLock {
+        private static final int WARM_FREQUENCY = 6;
+
+        final long maximum;
+        final FrequencySketch sketch;
+        long capacity;
+        long windowCapacity;
+        long protectedCapacity;
+        final NodeList<T> window = new NodeList<>();
+        final NodeList<T> probation = new NodeList<>();
+        final NodeList<T> protectedList = new NodeList<>();
+        final TimerWheel<Node<T>> timerWheel = new TimerWheel<>(CacheClock.currentTimeMillis());
+        final AtomicReferenceArray<Node<T>> readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        final AtomicLong readTail = new AtomicLong();
+        volatile long readHead;
+        final ConcurrentLinkedQueue<WriteTask<T>> writeBuffer = new ConcurrentLinkedQueue<>();
+        final AtomicInteger pendingWrites = new AtomicInteger();
+
+        Segment(long capacity, long expectedEntries, CacheConfig.EvictionPolicy policy) {
+            this.maximum = capacity;
+            this.sketch = (capacity > 0 && policy == CacheConfig.EvictionPolicy.TINY_LFU) ? new FrequencySketch(expectedEntries) : null;
+            resize(1.0);
+        }
+
+        /**
+         * Sets the capacity to the given fraction of the maximum of the segment, the caller evicting the exceeding
+         * entries.
+         */
+        void resize(double ratio) {
+            capacity = (maximum > 0) ? Math.max(1, (long) (maximum * ratio)) : 0;
+            if (sketch != null) {
+                windowCapacity = Math.max(1, capacity / 100);
+                protectedCapacity = (long) ((capacity - windowCapacity) * 0.8);
+            } else {
+                windowCapacity = capacity;
+                protectedCapacity = 0;
+            }
+        }
+
+        long weightedSize() {
+            return window.weight + probation.weight + protectedList.weight;
+        }
+
+        /**
+         * Records a hit in the ring buffer, dropping it when the buffer is full or contended.
+         *
+         * @return true if the buffer should be drained
+         */
+        boolean recordRead(Node<T> node) {
+            long head = readHead;
+            long tail = readTail.get();
+            long size = tail - head;
+            if (size >= READ_BUFFER_SIZE) {
+                return true;
+            }
+            if (readTail.compareAndSet(tail, tail + 1)) {
+                readBuffer.lazySet((int) (tail & (READ_BUFFER_SIZE - 1)), node);
+                return size + 1 >= READ_BUFFER_DRAIN_THRESHOLD;
+            }
+            return false;
+        }
+
+        void drainReads() {
+            long head = readHead;
+            long tail = readTail.get();
+            for (; head < tail; head++) {
+                int index = (int) (head & (READ_BUFFER_SIZE - 1));
+                Node<T> node = readBuffer.get(index);
+                if (node == null) {
+                    // Slot claimed but not yet published, resume from here on next drain
+                    break;
+                }
+                readBuffer.lazySet(index, null);
+                onAccess(node);
+            }
+            readHead = head;
+        }
+
+        void onAdd(Node<T> node) {
+            if (node.list != null) {
+                return;
+            }
+            if (sketch != null) {
+                sketch.increment(node.hash());
+            }
+            window.linkLast(node);
+            timerWheel.schedule(node);
+        }
+
+        void onAccess(Node<T> node) {
+            NodeList<T> list = node.list;
+            if (list == null) {
+                return;
+            }
+            node.entry.touch();
+            if (sketch == null) {
+                list.moveToTail(node);
+                return;
+            }
+            sketch.increment(node.hash());
+            if (list == probation) {
+                probation.unlink(node);
+                protectedList.linkLast(node);
+                while (protectedList.weight > protectedCapacity) {
+                    Node<T> demoted = protectedList.head;
+                    protectedList.unlink(demoted);
+                    probation.linkLast(demoted);
+                }
+            } else {
+                list.moveToTail(node);
+            }
+        }
+
+        void onRemove(Node<T> node) {
+            if (node.list != null) {
+                node.list.unlink(node);
+            }
+            timerWheel.deschedule(node);
+        }
+
+        Node<T> victim() {
+            if (probation.head != null) {
+                return probation.head;
+            }
+            return (protectedList.head != null) ? protectedList.head : window.head;
+        }
+
+        /**
+         * TinyLFU admission: the candidate replaces the victim when it is estimated more popular. A warm candidate
+         * is also admitted at random from time to time so that an attacker cannot keep a key out by inflating
+         * the frequency of the victim.
+         */
+        boolean admit(Node<T> candidate, Node<T> victim) {
+            if (sketch == null) {
+                return false;
+            }
+            int candidateFrequency = sketch.frequency(candidate.hash());
+            int victimFrequency = sketch.frequency(victim.hash());
+            if (candidateFrequency > victimFrequency) {
+                return true;
+            }
+            return candidateFrequency >= WARM_FREQUENCY && (ThreadLocalRandom.current().nextInt() & 127) == 0;
+        }
+    }
+
+    /**
+     * Periodic maintenance of a cache, only holding a weak reference so that discarded caches are not retained by
+     * the scheduler: the task cancels itself once its cache has been garbage collected.
+     */
+    static final class MaintenanceTask implements Runnable {
+        private final WeakReference<LocalCache<?>> cacheRef;
+        private volatile ScheduledFuture<?> future;
+
+        private MaintenanceTask(LocalCache<?> cache) {
+            this.cacheRef = new WeakReference<>(cache);
+        }
+
+        static void schedule(LocalCache<?> cache, ScheduledExecutorService scheduler) {
+            MaintenanceTask task = new MaintenanceTask(cache);
+            task.future = scheduler.scheduleWithFixedDelay(task, MAINTENANCE_PERIOD, MAINTENANCE_PERIOD, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            LocalCache<?> cache = cacheRef.get();
+            if (cache == null) {
+                ScheduledFuture<?> scheduled = future;
+                if (scheduled != null) {
+                    scheduled.cancel(false);
+                }
+                return;
+            }
+            cache.cleanUp();
+        }
+    }
+}
@@ -18,22 +18,225 @@ package org.jahia.features.cache.core.internal;
 import org.jahia.features.cache.api.Cache;
 import org.jahia.features.cache.api.CacheConfig;
 import org.jahia.features.cache.api.CacheProvider;
+import org.jahia.features.cache.api.CacheSerializer;
+import org.jahia.features.cache.api.LongKeyCache;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
 /**
+ * Default local cache provider.
+ * The cache engine can be selected with the <code>engine</code> configuration property:
+ * <ul>
+ *     <li><code>synchronized</code> (default): {@link InMemoryCache}, a strict LRU guarded by a single lock</li>
+ *     <li><code>concurrent</code>: {@link ConcurrentInMemoryCache}, non-blocking lookups and lock-striped approximate LRU</li>
+ * </ul>
+ * Caches configured with the {@link CacheConfig.EvictionPolicy#TINY_LFU} eviction policy always use the concurrent
+ * engine, the only one implementing it.
+ * The provider owns a single maintenance thread, shared by all the in-memory caches of both engines, that removes
+ * expired entries from idle caches.
+ * <p>
+ * With the <code>storage</code> property set to <code>offheap</code>, caches are created as {@link OffHeapCache}
+ * whatever the engine: values are serialized in native memory shared by all the caches and limited by the
+ * <code>offHeapMaxMemory</code> property, in megabytes. When the limit changes, the off-heap caches are cleared and
+ * moved to a new store, so that a single store is ever reserving native memory. When the provider is deactivated, they
+ * are cleared and the store is released.
+ * <p>
+ * With the <code>diskOverflow</code> property set to <code>true</code>, the caches of the synchronized engine spill
+ * the entries evicted from the heap to memory-mapped files in the <code>diskOverflowDirectory</code> directory
+ * (<code>${karaf.data}/cache-overflow</code> by default), limited per cache by the <code>diskOverflowMaxSize</code>
+ * property, in megabytes (64 by default, as caches created on the fly get an overflow too).
+ * <p>
+ * With the <code>heapPressureThreshold</code> property set to a percentage of the old generation, the in-memory
+ * caches are progressively shrunk, those holding the most entries per recent hit first, while the heap used after
+ * garbage collections stays above it, and grown back once it falls under <code>heapPressureRecovery</code> (15 points
+ * below the threshold by default). See {@link HeapPressureController}.
+ *
  * @author Jerome Blanchard
  */
 @Component(service = {DefaultCacheProvider.class, CacheProvider.class}, immediate = true)
 public class DefaultCacheProvider implements CacheProvider {
 
+    public static final String ENGINE_PROPERTY = "engine";
+    public static final String SYNCHRONIZED_ENGINE = "synchronized";
+    public static final String CONCURRENT_ENGINE = "concurrent";
+    public static final String STORAGE_PROPERTY = "storage";
+    public static final String HEAP_STORAGE = "heap";
+    public static final String OFF_HEAP_STORAGE = "offheap";
+    public static final String OFF_HEAP_MAX_MEMORY_PROPERTY = "offHeapMaxMemory";
+    public static final long DEFAULT_OFF_HEAP_MAX_MEMORY = 1024;
+    public static final String DISK_OVERFLOW_PROPERTY = "diskOverflow";
+    public static final String DISK_OVERFLOW_DIRECTORY_PROPERTY = "diskOverflowDirectory";
+    public static final String DISK_OVERFLOW_MAX_SIZE_PROPERTY = "diskOverflowMaxSize";
+    public static final long DEFAULT_DISK_OVERFLOW_MAX_SIZE = 64;
+    public static final String HEAP_PRESSURE_THRESHOLD_PROPERTY = "heapPressureThreshold";
+    public static final String HEAP_PRESSURE_RECOVERY_PROPERTY = "heapPressureRecovery";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultCacheProvider.class);
+    private static final String DISK_OVERFLOW_DIRECTORY = "cache-overflow";
+
+    private volatile String engine = SYNCHRONIZED_ENGINE;
+    private volatile String storage = HEAP_STORAGE;
+    private long offHeapMaxMemory = DEFAULT_OFF_HEAP_MAX_MEMORY;
+    private volatile boolean diskOverflow;
+    private volatile Path diskOverflowDirectory = ComponentProperties.getPath(Map.of(), DISK_OVERFLOW_DIRECTORY_PROPERTY, DISK_OVERFLOW_DIRECTORY);
+    private volatile long diskOverflowMaxSize = DEFAULT_DISK_OVERFLOW_MAX_SIZE;
+    private ScheduledExecutorService maintenanceExecutor;
+    private OffHeapStore offHeapStore;
+    private final Set<OffHeapCache<?>> offHeapCaches = Collections.newSetFromMap(new WeakHashMap<>());
+    private final CacheSerializer defaultSerializer = new JavaCacheSerializer();
+    private final HeapPressureController heapPressureController = HeapPressureController.forOldGeneration();
+
+    @Activate
+    @Modified
+    public void activate(Map<String, Object> properties) {
+        this.engine = ComponentProperties.getChoice(properties, ENGINE_PROPERTY, SYNCHRONIZED_ENGINE, CONCURRENT_ENGINE);
+        this.storage = ComponentProperties.getChoice(properties, STORAGE_PROPERTY, HEAP_STORAGE, OFF_HEAP_STORAGE);
+        long maxMemory = ComponentProperties.getLong(properties, OFF_HEAP_MAX_MEMORY_PROPERTY, DEFAULT_OFF_HEAP_MAX_MEMORY);
+        this.diskOverflow = ComponentProperties.getBoolean(properties, DISK_OVERFLOW_PROPERTY);
+        this.diskOverflowDirectory = ComponentProperties.getPath(properties, DISK_OVERFLOW_DIRECTORY_PROPERTY, DISK_OVERFLOW_DIRECTORY);
+        this.diskOverflowMaxSize = ComponentProperties.getLong(properties, DISK_OVERFLOW_MAX_SIZE_PROPERTY, DEFAULT_DISK_OVERFLOW_MAX_SIZE);
+        long threshold = ComponentProperties.getLong(properties, HEAP_PRESSURE_THRESHOLD_PROPERTY, 0);
+        long recovery = ComponentProperties.getLong(properties, HEAP_PRESSURE_RECOVERY_PROPERTY, threshold - 15);
+        synchronized (this) {
+            if (maxMemory != offHeapMaxMemory) {
+                offHeapMaxMemory = maxMemory;
+                replaceOffHeapStore();
+            }
+        }
+        if (threshold > 0 && threshold <= 100) {
+            heapPressureController.start(getMaintenanceExecutor(), threshold / 100.0, Math.min(recovery, threshold) / 100.0);
+        } else {
+            heapPressureController.stop();
+        }
+        LOGGER.info("Default cache provider activated using engine: {} and storage: {}", engine, storage);
+    }
+
+    @Deactivate
+    public synchronized void deactivate() {
+        LOGGER.info("Default cache provider deactivated");
+        heapPressureController.stop();
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.shutdownNow();
+            maintenanceExecutor = null;
+        }
+        releaseOffHeapStore();
+    }
+
+    public String getEngine() {
+        return engine;
+    }
+
+    public String getStorage() {
+        return storage;
+    }
 
     @Override
     public <T> Cache<T> createCache(String name, CacheConfig config, Class<T> type) {
-        LOGGER.info("Creating default cache: {}", name);
-        return new InMemoryCache<T>(name, config);
+        if (OFF_HEAP_STORAGE.equals(storage)) {
+            LOGGER.info("Creating default cache: {} using off-heap storage", name);
+            return createOffHeapCache(name, config, type);
+        }
+        LOGGER.info("Creating default cache: {} using engine: {}", name, engine);
+        if (CONCURRENT_ENGINE.equals(engine) || config.getEvictionPolicy() == CacheConfig.EvictionPolicy.TINY_LFU) {
+            return resizable(new ConcurrentInMemoryCache<>(name, config, getMaintenanceExecutor()));
+        }
+        if (diskOverflow) {
+            try {
+                return resizable(new InMemoryCache<>(name, config, createDiskOverflowStore(name, config, type),
+                        getMaintenanceExecutor()));
+            } catch (UncheckedIOException e) {
+                LOGGER.error("Unable to create disk overflow of cache: {}, evicted entries will be dropped", name, e);
+            }
+        }
+        return resizable(new InMemoryCache<T>(name, config, getMaintenanceExecutor()));
+    }
+
+    @Override
+    public <T> LongKeyCache<T> createLongKeyCache(String name, CacheConfig config, Class<T> type) {
+        if (OFF_HEAP_STORAGE.equals(storage)) {
+            return CacheProvider.super.createLongKeyCache(name, config, type);
+        }
+        LOGGER.info("Creating default long keyed cache: {}", name);
+        return resizable(new LongKeyInMemoryCache<>(name, config));
+    }
+
+    private <C extends ResizableCache> C resizable(C cache) {
+        heapPressureController.register(cache);
+        return cache;
+    }
+
+    private <T> DiskOverflowStore<T> createDiskOverflowStore(String name, CacheConfig config, Class<T> type) {
+        CacheSerializer serializer = (config.getSerializer() != null) ? config.getSerializer() : defaultSerializer;
+        Path directory = diskOverflowDirectory.resolve(ComponentProperties.toFileName(name));
+        long maxSize = diskOverflowMaxSize * 1024 * 1024;
+        return new DiskOverflowStore<>(name, directory, maxSize, DiskOverflowStore.segmentSize(maxSize),
+                ConcurrentInMemoryCache.timeToLiveMillis(config), serializer, type, config.getClassLoader(), getMaintenanceExecutor());
+    }
+
+    private synchronized ScheduledExecutorService getMaintenanceExecutor() {
+        if (maintenanceExecutor == null) {
+            maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "cache-maintenance");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return maintenanceExecutor;
+    }
+
+    private synchronized <T> OffHeapCache<T> createOffHeapCache(String name, CacheConfig config, Class<T> type) {
+        OffHeapCache<T> cache = new OffHeapCache<>(name, config, type, getOffHeapStore(), defaultSerializer);
+        offHeapCaches.add(cache);
+        return cache;
+    }
+
+    synchronized OffHeapStore getOffHeapStore() {
+        if (offHeapStore == null) {
+            offHeapStore = new OffHeapStore(offHeapMaxMemory * 1024 * 1024);
+        }
+        return offHeapStore;
+    }
+
+    /**
+     * Moves the off-heap caches to a new store bounded by the current limit, dropping their entries, so that the
+     * native memory of the former store is released instead of adding up with the new one.
+     */
+    private synchronized void replaceOffHeapStore() {
+        if (offHeapStore == null) {
+            return;
+        }
+        offHeapStore = new OffHeapStore(offHeapMaxMemory * 1024 * 1024);
+        for (OffHeapCache<?> cache : offHeapCaches) {
+            cache.moveTo(offHeapStore);
+        }
+    }
+
+    /**
+     * Clears the off-heap caches and drops the store, so that its native memory is reclaimed. The caches no longer
+     * cache values, a new store is only created for the off-heap caches created afterwards.
+     */
+    private synchronized void releaseOffHeapStore() {
+        if (offHeapStore == null) {
+            return;
+        }
+        for (OffHeapCache<?> cache : offHeapCaches) {
+            cache.moveTo(null);
+        }
+        offHeapCaches.clear();
+        offHeapStore = null;
     }
 
     @Override
@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.CacheClock;
+import org.jahia.features.cache.api.CacheEntry;
+import org.jahia.features.cache.api.CacheSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Second cache tier keeping the entries evicted from the heap in memory-mapped segment files on local disk.
+ * Serialized values are appended to the active segment, a fixed size file mapped in memory, and located through an
+ * on-heap index. When the maximum size is reached the oldest segment is dropped as a whole. Entries read back are
+ * removed from the store, their space, like the one of overwritten or expired entries, becomes garbage that is
+ * reclaimed by compaction: segments with less than half live data have their live entries copied to the active
+ * segment and are deleted. Compaction runs periodically on the scheduler of the provider, the live entries being read
+ * outside of the lock of the store, which is only taken to find them and to move them in the index.
+ * <p>
+ * The content of the store does not survive a restart, the files found in its directory are deleted on creation.
+ *
+ * @author Jerome Blanchard
+ */
+class DiskOverflowStore<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiskOverflowStore.class);
+
+    static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    static final int MIN_SEGMENTS = 4;
+    static final long COMPACTION_PERIOD = 10000L;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    // Distinguishes the files of successive stores of a same cache, when the cache is recreated
+    private static final AtomicInteger STORE_IDS = new AtomicInteger();
+
+    private final String cacheName;
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final long timeToLiveMillis;
+    private final CacheSerializer serializer;
+    private final Class<T> type;
+    private final ClassLoader classLoader;
+    private final int storeId = STORE_IDS.incrementAndGet();
+    private final Map<String, Location> index = new HashMap<>();
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private Segment active;
+    private int nextSegmentId;
+
+    /**
+     * @param maxSize     maximum size of the segment files, in bytes
+     * @param classLoader class loader resolving the classes of the values read back, null for the one of the type
+     * @param scheduler   executor running the periodic compaction, or null to only compact on demand
+     */
+    DiskOverflowStore(String cacheName, Path directory, long maxSize, int segmentSize, long timeToLiveMillis,
+                      CacheSerializer serializer, Class<T> type, ClassLoader classLoader,
+                      ScheduledExecutorService scheduler) {
+        this.cacheName = cacheName;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = (int) Math.max(1, Math.min(maxSize / segmentSize, Integer.MAX_VALUE));
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.serializer = serializer;
+        this.type = type;
+        this.classLoader = classLoader;
+        try {
+            Files.createDirectories(directory);
+            deleteSegmentFiles();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to prepare disk overflow directory " + directory, e);
+        }
+        if (scheduler != null) {
+            CompactionTask.schedule(this, scheduler);
+        }
+    }
+
+    /**
+     * Stores the entry under the key, replacing any previous one. Entries that cannot be serialized or are larger
+     * than a segment are not stored.
+     */
+    void put(String key, CacheEntry<T> entry) {
+        byte[] data;
+        try {
+            data = serializer.serialize(entry.value());
+        } catch (IOException e) {
+            LOGGER.debug("Unable to serialize value of key: {} in cache: {}, entry dropped", key, cacheName, e);
+            remove(key);
+            return;
+        }
+        synchronized (this) {
+            remove(key);
+            if (data.length <= segmentSize) {
+                try {
+                    append(key, data, entry.created());
+                } catch (UncheckedIOException e) {
+                    LOGGER.warn("Unable to write to disk overflow of cache: {}, entry dropped", cacheName, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the entry from the store and returns it, or null if the store does not hold the key.
+     */
+    CacheEntry<T> take(String key) {
+        byte[] data;
+        long created;
+        synchronized (this) {
+            Location location = index.remove(key);
+            if (location == null) {
+                return null;
+            }
+            location.segment.liveBytes -= location.length;
+            data = read(location);
+            created = location.created;
+        }
+        try {
+            return new CacheEntry<>(serializer.deserialize(data, type, classLoader), created);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to deserialize value of key: {} in cache: {}, entry dropped", key, cacheName, e);
+            return null;
+        }
+    }
+
+    synchronized void remove(String key) {
+        Location location = index.remove(key);
+        if (location != null) {
+            location.segment.liveBytes -= location.length;
+        }
+    }
+
+    synchronized boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    synchronized int size() {
+        return index.size();
+    }
+
+    synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    synchronized void clear() {
+        index.clear();
+        while (!segments.isEmpty()) {
+            delete(segments.pollFirst());
+        }
+        active = null;
+    }
+
+    /**
+     * @return the size of the segments of a store of the given maximum size, so that it holds at least
+     * {@link #MIN_SEGMENTS} segments and never drops all its entries at once
+     */
+    static int segmentSize(long maxSize) {
+        return (int) Math.max(1, Math.min(DEFAULT_SEGMENT_SIZE, maxSize / MIN_SEGMENTS));
+    }
+
+    /**
+     * Copies the live entries of the sealed segments holding less than half live data to the active segment and
+     * deletes them. Expired entries are dropped on the way, entries never expire without time to live.
+     * <p>
+     * Sealed segments are never written again, so their live entries are read without holding the lock; an entry
+     * taken, removed or replaced meanwhile is not moved.
+     */
+    void compact() {
+        long expiredBefore = (timeToLiveMillis > 0) ? CacheClock.currentTimeMillis() - timeToLiveMillis : Long.MIN_VALUE;
+        List<Segment> candidates;
+        synchronized (this) {
+            candidates = new ArrayList<>(segments);
+        }
+        for (Segment segment : candidates) {
+            List<Map.Entry<String, Location>> live = new ArrayList<>();
+            synchronized (this) {
+                if (segment == active || !segments.contains(segment) || segment.liveBytes * 2 >= segment.position) {
+                    continue;
+                }
+                for (Map.Entry<String, Location> entry : index.entrySet()) {
+                    if (entry.getValue().segment == segment) {
+                        live.add(Map.entry(entry.getKey(), entry.getValue()));
+                    }
+                }
+            }
+            List<byte[]> data = new ArrayList<>(live.size());
+            for (Map.Entry<String, Location> entry : live) {
+                data.add((entry.getValue().created > expiredBefore) ? read(entry.getValue()) : null);
+            }
+            int moved = 0;
+            synchronized (this) {
+                for (int i = 0; i < live.size(); i++) {
+                    String key = live.get(i).getKey();
+                    Location location = live.get(i).getValue();
+                    if (index.get(key) != location) {
+                        continue;
+                    }
+                    index.remove(key);
+                    location.segment.liveBytes -= location.length;
+                    if (data.get(i) != null) {
+                        append(key, data.get(i), location.created);
+                        moved++;
+                    }
+                }
+                // Dropped meanwhile if it became the oldest segment of a full store
+                if (segments.remove(segment)) {
+                    delete(segment);
+                }
+            }
+            LOGGER.debug("Compacted disk overflow segment {} of cache: {}, {} entries moved", segment.id, cacheName, moved);
+        }
+    }
+
+    private void append(String key, byte[] data, long created) {
+        if (active == null || active.position + data.length > segmentSize) {
+            roll();
+        }
+        active.buffer.put(active.position, data);
+        index.put(key, new Location(active, active.position, data.length, created));
+        active.position += data.length;
+        active.liveBytes += data.length;
+    }
+
+    private void roll() {
+        while (segments.size() >= maxSegments) {
+            Segment oldest = segments.pollFirst();
+            index.values().removeIf(location -> location.segment == oldest);
+            delete(oldest);
+        }
+        Path file = directory.resolve(SEGMENT_PREFIX + storeId + "-" + nextSegmentId + SEGMENT_SUFFIX);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            active = new Segment(nextSegmentId++, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create disk overflow segment " + file, e);
+        }
+        segments.addLast(active);
+    }
+
+    private static byte[] read(Location location) {
+        byte[] data = new byte[location.length];
+        location.segment.buffer.get(location.offset, data);
+        return data;
+    }
+
+    private void delete(Segment segment) {
+        if (segment == active) {
+            active = null;
+        }
+        try {
+            // The mapping is released when the buffer is garbage collected, the file can be deleted meanwhile
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to delete disk overflow segment {} of cache: {}", segment.file, cacheName, e);
+        }
+    }
+
+    private void deleteSegmentFiles() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static final class Segment {
+        private final int id;
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private int position;
+        private long liveBytes;
+
+        private Segment(int id, Path file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class Location {
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+        private final long created;
+
+        private Location(Segment segment, int offset, int length, long created) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.created = created;
+        }
+    }
+
+    /**
+     * Periodic compaction of a store, only holding a weak reference so that the store of a discarded cache is not
+     * retained by the scheduler.
+     */
+    static final class CompactionTask implements Runnable {
+        private final WeakReference<DiskOverflowStore<?>> storeRef;
+        private volatile ScheduledFuture<?> future;
+
+        private CompactionTask(DiskOverflowStore<?> store) {
+            this.storeRef = new WeakReference<>(store);
+        }
+
+        static void schedule(DiskOverflowStore<?> store, ScheduledExecutorService scheduler) {
+            CompactionTask task = new CompactionTask(store);
+            task.future = scheduler.scheduleWithFixedDelay(task, COMPACTION_PERIOD, COMPACTION_PERIOD, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            DiskOverflowStore<?> store = storeRef.get();
+            if (store == null) {
+                ScheduledFuture<?> scheduled = future;
+                if (scheduled != null) {
+                    scheduled.cancel(false);
+                }
+                return;
+            }
+            try {
+                store.compact();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Disk overflow compaction failed for cache: {}", store.cacheName, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import java.util.Arrays;
+
+/**
+ * Count-Min sketch estimating the popularity of keys, used by the TinyLFU admission policy.
+ * Each key maps to four 4-bit counters (maximum frequency of 15) packed sixteen per long. Once the number of
+ * recorded increments reaches ten times the cache capacity, every counter is halved so that the sketch ages and
+ * follows changes of the working set.
+ * <p>
+ * This class is not thread safe, callers are expected to hold the owning segment lock.
+ *
+ * @author Jerome Blanchard
+ */
+class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(long capacity) {
+        long maximum = Math.min(Math.max(capacity, 1), 1 << 30);
+        int length = (int) Long.highestOneBit(maximum * 2 - 1);
+        this.table = new long[Math.max(length, 8)];
+        this.tableMask = table.length - 1;
+        this.sampleSize = (int) Math.min(10 * maximum, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the estimated number of occurrences of the hash, from 0 to 15
+     */
+    int frequency(int hash) {
+        int spread = spread(hash);
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(spread, i);
+            int offset = counterOffset(spread, i);
+            frequency = Math.min(frequency, (int) ((table[index] >>> offset) & 0xfL));
+        }
+        return frequency;
+    }
+
+    /**
+     * Increments the popularity of the hash, aging the sketch when the sample size is reached.
+     */
+    void increment(int hash) {
+        int spread = spread(hash);
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(spread, i);
+            int offset = counterOffset(spread, i);
+            long mask = 0xfL << offset;
+            if ((table[index] & mask) != mask) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    void clear() {
+        Arrays.fill(table, 0L);
+        additions = 0;
+    }
+
+    /**
+     * Halves every counter, the count of odd counters compensating the truncation error on the additions.
+     */
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions = (additions - (odd >>> 2)) >>> 1;
+    }
+
+    private int indexOf(int spread, int i) {
+        long hash = (spread + SEEDS[i]) * SEEDS[i];
+        hash += hash >>> 32;
+        return ((int) hash) & tableMask;
+    }
+
+    private static int counterOffset(int spread, int i) {
+        // Each long holds 16 counters of 4 bits, every hash function picks a distinct counter within the long
+        int counter = (((spread >>> (i << 3)) & 3) << 2) | i;
+        return counter << 2;
+    }
+
+    private static int spread(int hash) {
+        int x = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
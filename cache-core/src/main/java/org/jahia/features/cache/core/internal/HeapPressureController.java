@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Shrinks the caches when the old generation of the heap is under pressure and grows them back once it is relieved.
+ * <p>
+ * The controller sets the collection usage threshold of the old generation pool, so that the JVM notifies it as soon
+ * as the heap still used after a garbage collection passes the threshold, and also checks the usage periodically.
+ * The usage after a collection only changes with the next collection, so a check only acts on a new sample: the
+ * effect of the previous resize is measured before resizing again.
+ * <p>
+ * While the usage is above the threshold, every check halves the capacity of the cache holding the most entries per
+ * hit since it was last considered, among the caches that can still shrink: without hits this is the biggest cache,
+ * and a cache just shrunk is not picked again as long as it keeps serving hits. Once the usage falls below the
+ * recovery level, every check doubles back the capacity of the most shrunk cache, up to its configured maximum.
+ * Caches are only weakly referenced, and registered even while the controller is stopped so that it can be started
+ * by a configuration change.
+ *
+ * @author Jerome Blanchard
+ */
+class HeapPressureController implements NotificationListener {
+
+    static final double SHRINK_FACTOR = 0.5;
+    static final double MIN_CAPACITY_RATIO = 1.0 / 64;
+    static final long CHECK_PERIOD = 1000L;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HeapPressureController.class);
+
+    private final MemoryPoolMXBean pool;
+    private final DoubleSupplier usage;
+    private final LongSupplier collections;
+    private final Set<ResizableCache> caches = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    private final Map<ResizableCache, Long> lastHits = new WeakHashMap<>();
+    private long lastCollections;
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> future;
+    private double threshold;
+    private double recovery;
+
+    /**
+     * @param pool        old generation pool, or null when the usage is only given by the supplier
+     * @param usage       fraction of the pool used, from 0 to 1
+     * @param collections number of garbage collections of the pool, the usage being sampled by each of them
+     */
+    HeapPressureController(MemoryPoolMXBean pool, DoubleSupplier usage, LongSupplier collections) {
+        this.pool = pool;
+        this.usage = usage;
+        this.collections = collections;
+    }
+
+    /**
+     * @return a controller watching the old generation pool, which never shrinks the caches if the JVM does not
+     * expose a pool with a collection usage threshold
+     */
+    static HeapPressureController forOldGeneration() {
+        MemoryPoolMXBean oldGeneration = findOldGeneration();
+        if (oldGeneration == null) {
+            LOGGER.warn("No heap memory pool with a collection usage threshold, caches will not be shrunk under heap pressure");
+            return new HeapPressureController(null, () -> 0, () -> 0);
+        }
+        return new HeapPressureController(oldGeneration, () -> usedFraction(oldGeneration), () -> collectionCount(oldGeneration));
+    }
+
+    void register(ResizableCache cache) {
+        caches.add(cache);
+    }
+
+    /**
+     * @param threshold usage from which the caches are shrunk, from 0 to 1
+     * @param recovery  usage under which the caches are grown back, from 0 to 1
+     */
+    synchronized void start(ScheduledExecutorService scheduler, double threshold, double recovery) {
+        stop();
+        this.scheduler = scheduler;
+        this.threshold = threshold;
+        this.recovery = recovery;
+        this.lastCollections = -1;
+        if (pool != null) {
+            long max = pool.getUsage().getMax();
+            pool.setCollectionUsageThreshold((long) (max * threshold));
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(this, null, null);
+            LOGGER.info("Watching heap pressure of memory pool: {} with threshold: {}%", pool.getName(), Math.round(threshold * 100));
+        }
+        future = scheduler.scheduleWithFixedDelay(this::check, CHECK_PERIOD, CHECK_PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void stop() {
+        if (future == null) {
+            return;
+        }
+        future.cancel(false);
+        future = null;
+        if (pool != null) {
+            try {
+                ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(this);
+            } catch (ListenerNotFoundException e) {
+                LOGGER.debug("Heap pressure listener already removed", e);
+            }
+        }
+        scheduler = null;
+        for (ResizableCache cache : snapshot()) {
+            if (cache.getCapacityRatio() < 1.0) {
+                cache.setCapacityRatio(1.0);
+            }
+        }
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+            ScheduledExecutorService executor;
+            synchronized (this) {
+                executor = scheduler;
+            }
+            // Relieve the heap right away instead of waiting for the next periodic check
+            if (executor != null) {
+                executor.execute(this::check);
+            }
+        }
+    }
+
+    /**
+     * Shrinks or grows one cache according to the usage of the heap, if it was sampled again since the previous check.
+     */
+    synchronized void check() {
+        if (future == null) {
+            return;
+        }
+        long count = collections.getAsLong();
+        if (count == lastCollections) {
+            return;
+        }
+        lastCollections = count;
+        double used = usage.getAsDouble();
+        if (used >= threshold) {
+            shrink(used);
+        } else if (used < recovery) {
+            grow();
+        }
+    }
+
+    private void shrink(double used) {
+        List<ResizableCache> candidates = snapshot().stream()
+                .filter(cache -> cache.getCapacityRatio() > MIN_CAPACITY_RATIO && cache.size() > 0)
+                .toList();
+        candidates.stream()
+                .max(Comparator.comparingDouble(cache -> cache.size() / (1.0 + recentHits(cache))))
+                .ifPresent(cache -> {
+                    double ratio = Math.max(MIN_CAPACITY_RATIO, cache.getCapacityRatio() * SHRINK_FACTOR);
+                    LOGGER.info("Heap usage at {}%, shrinking cache {} to {}% of its maximum", Math.round(used * 100),
+                            cache.getName(), Math.round(ratio * 100));
+                    cache.setCapacityRatio(ratio);
+                });
+        for (ResizableCache cache : candidates) {
+            lastHits.put(cache, cache.getStatistics().hitCount());
+        }
+    }
+
+    /**
+     * @return the hits of the cache since it was last considered for shrinking, all of them the first time
+     */
+    private long recentHits(ResizableCache cache) {
+        return cache.getStatistics().hitCount() - lastHits.getOrDefault(cache, 0L);
+    }
+
+    private void grow() {
+        snapshot().stream()
+                .filter(cache -> cache.getCapacityRatio() < 1.0)
+                .min(Comparator.comparingDouble(ResizableCache::getCapacityRatio))
+                .ifPresent(cache -> {
+                    double ratio = Math.min(1.0, cache.getCapacityRatio() / SHRINK_FACTOR);
+                    LOGGER.info("Heap pressure relieved, growing cache {} back to {}% of its maximum", cache.getName(),
+                            Math.round(ratio * 100));
+                    cache.setCapacityRatio(ratio);
+                });
+    }
+
+    private List<ResizableCache> snapshot() {
+        synchronized (caches) {
+            return new ArrayList<>(caches);
+        }
+    }
+
+    private static MemoryPoolMXBean findOldGeneration() {
+        MemoryPoolMXBean candidate = null;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported() || pool.getUsage().getMax() <= 0) {
+                continue;
+            }
+            String name = pool.getName();
+            if (name.contains("Old") || name.contains("Tenured")) {
+                return pool;
+            }
+            // Without a recognizable name, the largest collected pool is the old generation
+            if (candidate == null || pool.getUsage().getMax() > candidate.getUsage().getMax()) {
+                candidate = pool;
+            }
+        }
+        return candidate;
+    }
+
+    private static long collectionCount(MemoryPoolMXBean pool) {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (Arrays.asList(collector.getMemoryPoolNames()).contains(pool.getName())) {
+                count += Math.max(0, collector.getCollectionCount());
+            }
+        }
+        return count;
+    }
+
+    private static double usedFraction(MemoryPoolMXBean pool) {
+        MemoryUsage collected = pool.getCollectionUsage();
+        MemoryUsage current = (collected != null && collected.getUsed() > 0) ? collected : pool.getUsage();
+        return (current.getMax() > 0) ? (double) current.getUsed() / current.getMax() : 0;
+    }
+}
@@ -15,26 +15,96 @@
  */
 package org.jahia.features.cache.core.internal;
 
-import org.jahia.features.cache.api.Cache;
+import org.jahia.features.cache.api.CacheClock;
 import org.jahia.features.cache.api.CacheConfig;
 import org.jahia.features.cache.api.CacheEntry;
+import org.jahia.features.cache.api.CacheStats;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BiConsumer;
 
 /**
+ * Synchronized in-memory cache engine, a strict LRU bounded by maxEntries or, when configured, by the total weight
+ * of its entries.
+ * <p>
+ * An optional {@link DiskOverflowStore} can receive the entries evicted from the heap: a miss on the heap then looks
+ * up the disk and promotes the entry found back to the heap. The disk is never accessed under the cache monitor:
+ * evicted entries wait in a bounded spill queue, written to disk by the maintenance scheduler (or by the caller once
+ * the monitor is released without scheduler), and are still served from memory meanwhile. Entries read from disk are
+ * deserialized before taking the monitor to promote them, unless the key was written or deleted in the meantime.
+ * <p>
+ * Expired entries are removed proactively, once out of their grace period: they are scheduled in a
+ * {@link TimerWheel} advanced on every write and lookup, and periodically by the maintenance scheduler of the
+ * provider so that idle caches also release them.
+ * <p>
+ * With soft or weak {@link CacheConfig.ValueReference value references}, the entries whose value was reclaimed by
+ * the garbage collector are removed on the next operation.
+ *
  * @author Jerome Blanchard
  */
-public class InMemoryCache<T> implements Cache<T> {
+public class InMemoryCache<T> implements LocalCache<T>, ResizableCache {
+
+    static final int MAX_PENDING_SPILLS = 1024;
 
     private final String cacheName;
     private final CacheConfig cacheConfig;
-    private final Map<String, CacheEntry<T>> entries;
+    private final Map<Object, Node<T>> entries;
+    private final DiskOverflowStore<T> overflow;
+    private final ReferenceQueue<T> reclaimed = new ReferenceQueue<>();
+    private final CacheStatistics statistics;
+    private final ScheduledExecutorService scheduler;
+    // Entries evicted to the overflow, waiting to be written, being written and being read back
+    private final Map<Object, CacheEntry<T>> pendingSpills = new LinkedHashMap<>();
+    private final Map<Object, CacheEntry<T>> spilling = new HashMap<>();
+    private final Set<Object> promoting = new HashSet<>();
+    private boolean spillScheduled;
+    private TimerWheel<Node<T>> timerWheel;
+    private long totalWeight;
+    private double capacityRatio = 1.0;
+    private double budgetRatio = 1.0;
 
     public InMemoryCache(String cacheName, CacheConfig cacheConfig) {
+        this(cacheName, cacheConfig, null, null);
+    }
+
+    /**
+     * @param scheduler executor periodically removing the expired entries, or null to only remove them on the cache
+     *                  operations
+     */
+    public InMemoryCache(String cacheName, CacheConfig cacheConfig, ScheduledExecutorService scheduler) {
+        this(cacheName, cacheConfig, null, scheduler);
+    }
+
+    /**
+     * @param overflow store receiving the entries evicted from the heap, or null to drop them
+     */
+    InMemoryCache(String cacheName, CacheConfig cacheConfig, DiskOverflowStore<T> overflow) {
+        this(cacheName, cacheConfig, overflow, null);
+    }
+
+    InMemoryCache(String cacheName, CacheConfig cacheConfig, DiskOverflowStore<T> overflow,
+            ScheduledExecutorService scheduler) {
         this.cacheName = cacheName;
         this.cacheConfig = cacheConfig;
         this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.overflow = overflow;
+        this.statistics = new CacheStatistics(cacheConfig.isMissRatioCurve());
+        this.timerWheel = new TimerWheel<>(CacheClock.currentTimeMillis());
+        this.scheduler = scheduler;
+        if (scheduler != null) {
+            ConcurrentInMemoryCache.MaintenanceTask.schedule(this, scheduler);
+        }
     }
 
     @Override
@@ -48,19 +118,69 @@ public class InMemoryCache<T> implements Cache<T> {
     }
 
     @Override
-    public synchronized CacheEntry<T> getEntry(String key) {
-        CacheEntry<T> entry = entries.get(key);
+    public CacheEntry<T> getEntry(String key) {
+        return getEntry((Object) key);
+    }
+
+    @Override
+    public CacheEntry<T> getEntry(Object key) {
+        CacheEntry<T> entry;
+        boolean fromDisk;
+        synchronized (this) {
+            expungeReclaimed();
+            expire();
+            fromDisk = !entries.containsKey(key) && !unspill(key) && overflow != null && promoting.add(key);
+            entry = fromDisk ? null : lookup(key);
+        }
+        if (fromDisk) {
+            CacheEntry<T> stored = overflow.take(key.toString());
+            synchronized (this) {
+                // A write or a delete of the key meanwhile wins over the stored entry
+                if (promoting.remove(key) && stored != null && !isExpired(stored) && !entries.containsKey(key)) {
+                    insert(key, newEntry(key, stored.value(), stored.created()),
+                            ConcurrentInMemoryCache.weigh(getConfig(), key, stored.value()));
+                }
+                entry = lookup(key);
+            }
+        }
+        scheduleSpill();
+        return entry;
+    }
+
+    private CacheEntry<T> lookup(Object key) {
+        Node<T> node = entries.get(key);
+        CacheEntry<T> entry = (node != null) ? node.entry : null;
         if (entry != null) {
-            if (System.currentTimeMillis() - entry.created() < getConfig().getTimeToLive() * 1000L) {
+            if (!isExpired(entry) && !ReferenceCacheEntry.isCleared(entry)) {
                 entry.touch();
+                statistics.recordHit(CacheStatistics.hash(key));
                 return entry;
-            } else {
-                entries.remove(key);
+            } else if (isOutOfGrace(entry) || ReferenceCacheEntry.isCleared(entry)) {
+                remove(key);
             }
         }
+        statistics.recordMiss(CacheStatistics.hash(key));
         return null;
     }
 
+    @Override
+    public CacheEntry<T> getStaleEntry(String key) {
+        return getStaleEntry((Object) key);
+    }
+
+    @Override
+    public synchronized CacheEntry<T> getStaleEntry(Object key) {
+        Node<T> node = entries.get(key);
+        if (node == null || !isExpired(node.entry)) {
+            return null;
+        }
+        if (isOutOfGrace(node.entry) || ReferenceCacheEntry.isCleared(node.entry)) {
+            remove(key);
+            return null;
+        }
+        return node.entry;
+    }
+
     @Override
     public T get(String key) {
         CacheEntry<T> entry = getEntry(key);
@@ -68,28 +188,340 @@ public class InMemoryCache<T> implements Cache<T> {
     }
 
     @Override
-    public synchronized CacheEntry<T> put(String key, T value) {
-        CacheEntry<T> entry = new CacheEntry<>(key, value);
-        CacheEntry<T> old = entries.put(entry.key(), entry);
-        if (getConfig().getMaxEntries() > 0 && entries.size() >= (getConfig().getMaxEntries() + 1)) {
-            CacheEntry<T> eldest = entries.values().iterator().next();
-            entries.remove(eldest.key());
+    public CacheEntry<T> put(String key, T value) {
+        return put((Object) key, value);
+    }
+
+    @Override
+    public CacheEntry<T> put(Object key, T value) {
+        CacheEntry<T> old;
+        synchronized (this) {
+            expungeReclaimed();
+            expire();
+            int weight = ConcurrentInMemoryCache.weigh(getConfig(), key, value);
+            if (ConcurrentInMemoryCache.isOverweight(getConfig(), weight)) {
+                return remove(key);
+            }
+            old = remove(key);
+            insert(key, newEntry(key, value, CacheClock.currentTimeMillis()), weight);
         }
+        scheduleSpill();
         return old;
     }
 
     @Override
     public synchronized void clear() {
         entries.clear();
+        timerWheel = new TimerWheel<>(CacheClock.currentTimeMillis());
+        totalWeight = 0;
+        pendingSpills.clear();
+        spilling.clear();
+        promoting.clear();
+        if (overflow != null) {
+            overflow.clear();
+        }
+    }
+
+    @Override
+    public CacheEntry<T> delete(String key) {
+        return delete((Object) key);
     }
 
     @Override
-    public synchronized CacheEntry<T> delete(String key) {
-        return entries.remove(key);
+    public synchronized CacheEntry<T> delete(Object key) {
+        return remove(key);
+    }
+
+    /**
+     * Entries of keys that are not String, only meaningful to the running services, are left out.
+     */
+    @Override
+    public void forEach(BiConsumer<String, CacheEntry<T>> action) {
+        List<Map.Entry<String, CacheEntry<T>>> copy = new ArrayList<>();
+        synchronized (this) {
+            entries.forEach((key, node) -> {
+                if (key instanceof String name) {
+                    copy.add(Map.entry(name, node.entry));
+                }
+            });
+        }
+        for (Map.Entry<String, CacheEntry<T>> entry : copy) {
+            if (!isExpired(entry.getValue()) && !ReferenceCacheEntry.isCleared(entry.getValue())) {
+                action.accept(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public boolean restore(String key, CacheEntry<T> entry) {
+        synchronized (this) {
+            if (isExpired(entry) || entries.containsKey(key) || isOverflowing(key)) {
+                return false;
+            }
+            int weight = ConcurrentInMemoryCache.weigh(getConfig(), key, entry.value());
+            if (ConcurrentInMemoryCache.isOverweight(getConfig(), weight)) {
+                return false;
+            }
+            insert(key, newEntry(key, entry.value(), entry.created()), weight);
+        }
+        scheduleSpill();
+        return true;
+    }
+
+    /**
+     * Removes the entries whose value was reclaimed and the entries out of their grace period.
+     */
+    @Override
+    public synchronized void cleanUp() {
+        expungeReclaimed();
+        expire();
+    }
+
+    @Override
+    public synchronized CacheStats getStats() {
+        return statistics.snapshot(CacheStatistics.estimatedCapacity(getConfig(), capacityRatio, budgetRatio, entries.size()));
+    }
+
+    @Override
+    public CacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public synchronized double getCapacityRatio() {
+        return capacityRatio;
+    }
+
+    @Override
+    public void setCapacityRatio(double ratio) {
+        synchronized (this) {
+            capacityRatio = ratio;
+            evictExceeding();
+        }
+        scheduleSpill();
+    }
+
+    @Override
+    public synchronized double getBudgetRatio() {
+        return budgetRatio;
+    }
+
+    @Override
+    public void setBudgetRatio(double ratio) {
+        synchronized (this) {
+            budgetRatio = ratio;
+            evictExceeding();
+        }
+        scheduleSpill();
+    }
+
+    @Override
+    public synchronized long weightedSize() {
+        return getConfig().isWeighted() ? totalWeight : entries.size();
+    }
+
+    /**
+     * @return the number of entries held by the disk overflow, zero without overflow
+     */
+    public int overflowSize() {
+        return (overflow != null) ? overflow.size() : 0;
+    }
+
+    private boolean isExpired(CacheEntry<T> entry) {
+        return CacheClock.currentTimeMillis() - entry.created() >= ConcurrentInMemoryCache.timeToLiveMillis(getConfig());
+    }
+
+    /**
+     * @return true when the entry expired for longer than the grace period, during which it is kept to be served stale
+     */
+    private boolean isOutOfGrace(CacheEntry<T> entry) {
+        return CacheClock.currentTimeMillis() >= outOfGrace(entry);
+    }
+
+    private long outOfGrace(CacheEntry<T> entry) {
+        return ConcurrentInMemoryCache.expiration(entry.created(), ConcurrentInMemoryCache.timeToLiveMillis(getConfig()),
+                getConfig().getGracePeriod() * 1000L);
+    }
+
+    private CacheEntry<T> newEntry(Object key, T value, long created) {
+        return ReferenceCacheEntry.create(getConfig(), key, value, created, reclaimed);
+    }
+
+    private void insert(Object key, CacheEntry<T> entry, int weight) {
+        Node<T> node = new Node<>(key, entry, weight);
+        node.expiresAt = outOfGrace(entry);
+        entries.put(key, node);
+        timerWheel.schedule(node);
+        if (getConfig().isWeighted()) {
+            totalWeight += weight;
+        }
+        evictExceeding();
+    }
+
+    private void evictExceeding() {
+        if (getConfig().isWeighted()) {
+            long maxWeight = (long) (getConfig().getMaxWeight() * capacityRatio * budgetRatio);
+            while (totalWeight > maxWeight && !entries.isEmpty()) {
+                evictEldest();
+            }
+        } else if (getConfig().getMaxEntries() > 0) {
+            long maxEntries = Math.max(1, (long) (getConfig().getMaxEntries() * capacityRatio * budgetRatio));
+            while (entries.size() > maxEntries) {
+                evictEldest();
+            }
+        }
+    }
+
+    private void expungeReclaimed() {
+        Reference<? extends T> reference;
+        while ((reference = reclaimed.poll()) != null) {
+            Object key = ReferenceCacheEntry.keyOf(reference);
+            Node<T> node = entries.get(key);
+            // A newer entry may have been put since, only the one that held the reclaimed value is removed
+            if (node != null && ReferenceCacheEntry.holds(node.entry, reference)) {
+                remove(key);
+            }
+        }
+    }
+
+    private void expire() {
+        timerWheel.advance(CacheClock.currentTimeMillis(), node -> unlink(node.key));
+    }
+
+    private void evictEldest() {
+        Map.Entry<Object, Node<T>> eldest = entries.entrySet().iterator().next();
+        Object key = eldest.getKey();
+        CacheEntry<T> entry = unlink(key);
+        statistics.recordEviction(CacheStatistics.hash(key));
+        if (overflow != null && !isExpired(entry) && !ReferenceCacheEntry.isCleared(entry)) {
+            pendingSpills.put(key, entry);
+            if (pendingSpills.size() > MAX_PENDING_SPILLS) {
+                // The disk does not keep up, the oldest evicted entries are dropped
+                Iterator<Object> iterator = pendingSpills.keySet().iterator();
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    private CacheEntry<T> remove(Object key) {
+        if (overflow != null) {
+            pendingSpills.remove(key);
+            spilling.remove(key);
+            promoting.remove(key);
+            overflow.remove(key.toString());
+        }
+        return unlink(key);
+    }
+
+    private boolean isOverflowing(Object key) {
+        return overflow != null && (pendingSpills.containsKey(key) || spilling.containsKey(key)
+                || promoting.contains(key) || overflow.contains(key.toString()));
+    }
+
+    /**
+     * Moves the entry of the key back to the heap if it is waiting to be spilled, or being spilled.
+     *
+     * @return true if the entry was moved back
+     */
+    private boolean unspill(Object key) {
+        if (overflow == null) {
+            return false;
+        }
+        CacheEntry<T> entry = pendingSpills.remove(key);
+        if (entry == null) {
+            // The spill in progress is discarded once written
+            entry = spilling.remove(key);
+        }
+        if (entry == null) {
+            return false;
+        }
+        insert(key, entry, ConcurrentInMemoryCache.weigh(getConfig(), key, entry.value()));
+        return true;
+    }
+
+    /**
+     * Writes the pending spills to the overflow, on the scheduler or on the calling thread, outside of the monitor.
+     */
+    private void scheduleSpill() {
+        if (overflow == null) {
+            return;
+        }
+        synchronized (this) {
+            if (pendingSpills.isEmpty() || spillScheduled) {
+                return;
+            }
+            spillScheduled = true;
+        }
+        if (scheduler != null) {
+            try {
+                scheduler.execute(this::spill);
+                return;
+            } catch (RejectedExecutionException e) {
+                // The scheduler is shut down, spill on the calling thread
+            }
+        }
+        spill();
+    }
+
+    private void spill() {
+        while (true) {
+            Map.Entry<Object, CacheEntry<T>> next;
+            synchronized (this) {
+                Iterator<Map.Entry<Object, CacheEntry<T>>> iterator = pendingSpills.entrySet().iterator();
+                if (!iterator.hasNext()) {
+                    spillScheduled = false;
+                    return;
+                }
+                next = iterator.next();
+                iterator.remove();
+                spilling.put(next.getKey(), next.getValue());
+            }
+            String key = next.getKey().toString();
+            overflow.put(key, next.getValue());
+            synchronized (this) {
+                if (spilling.get(next.getKey()) == next.getValue()) {
+                    spilling.remove(next.getKey());
+                } else {
+                    // Read back, written or deleted while being written
+                    overflow.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the entry of the key from the heap only.
+     */
+    private CacheEntry<T> unlink(Object key) {
+        Node<T> node = entries.remove(key);
+        if (node == null) {
+            return null;
+        }
+        timerWheel.deschedule(node);
+        if (getConfig().isWeighted()) {
+            totalWeight -= node.weight;
+        }
+        return node.entry;
     }
 
     @Override
     public int size() {
         return entries.size();
     }
+
+    /**
+     * Map value holding the entry with its weight and its expiration schedule.
+     */
+    static final class Node<T> extends TimerWheel.Timer {
+        final Object key;
+        final CacheEntry<T> entry;
+        final int weight;
+
+        Node(Object key, CacheEntry<T> entry, int weight) {
+            this.key = key;
+            this.entry = entry;
+            this.weight = weight;
+        }
+    }
 }
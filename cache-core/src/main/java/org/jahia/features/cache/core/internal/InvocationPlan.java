@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.BinaryKey;
+import org.jahia.features.cache.api.Cache;
+import org.jahia.features.cache.api.CacheInvalidate;
+import org.jahia.features.cache.api.CacheInvalidateAll;
+import org.jahia.features.cache.api.CacheResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * What {@link CacheInterceptor} does on the invocations of a method, resolved once from its annotations and the ones
+ * of the implementation method: the cache operation, the cache name, the parameters making the keys and, once looked
+ * up, the cache itself. The cache is looked up again when the cache manager recreated its caches for a new provider.
+ * The keys are built as selected by the {@link KeyMode}, from the values of the {@link KeyExpression key expressions}
+ * when the method has some.
+ * <p>
+ * The target method is called through a method handle bound to the target and spreading the arguments array, which
+ * the JIT compiles to a direct call, and which throws the exceptions of the method without reflection wrapper.
+ *
+ * @author Jerome Blanchard
+ */
+final class InvocationPlan {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InvocationPlan.class);
+
+    enum Operation {
+        /**
+         * Invoke the method without caching.
+         */
+        NONE,
+        /**
+         * Delete the entry of the key then invoke the method.
+         */
+        INVALIDATE,
+        /**
+         * Clear the cache then invoke the method.
+         */
+        INVALIDATE_ALL,
+        /**
+         * Return the cached value of the key, invoking the method on a miss.
+         */
+        RESULT
+    }
+
+    /**
+     * Type of the keys of the invocations.
+     */
+    enum KeyMode {
+        /**
+         * SHA-256 digest of the key components, see {@link CacheKeyGenerator}.
+         */
+        HASH,
+        /**
+         * {@link StructuredKey} holding the key components.
+         */
+        STRUCTURED,
+        /**
+         * {@link BinaryKey} made of the 128-bit {@link Murmur3Hasher} hash of the key components.
+         */
+        BINARY
+    }
+
+    private final Method method;
+    private final MethodHandle invoker;
+    private final Operation operation;
+    private final String cacheName;
+    private final CacheResult result;
+    private final String keyPrefix;
+    private final int[] keyParameters;
+    private final KeyExpression[] keyExpressions;
+    private final KeyMode keyMode;
+    private final Murmur3Hasher keyHasher;
+    private volatile ResolvedCache resolvedCache;
+
+    private InvocationPlan(Method method, Object target, Operation operation, String cacheName, CacheResult result,
+            int[] keyParameters, KeyExpression[] keyExpressions, KeyMode keyMode) {
+        this.method = method;
+        this.invoker = invoker(method, target);
+        this.operation = operation;
+        this.cacheName = cacheName;
+        this.result = result;
+        this.keyPrefix = method.getDeclaringClass().getName();
+        // The values of the key expressions replace the arguments of the key parameters
+        this.keyParameters = (keyExpressions != null) ? CacheKeyGenerator.allParameters(keyExpressions.length)
+                : keyParameters;
+        this.keyExpressions = keyExpressions;
+        this.keyMode = keyMode;
+        // The hash of the prefix is only computed once, each key goes on from a copy of its state
+        this.keyHasher = (keyMode == KeyMode.BINARY) ? new Murmur3Hasher().putString(keyPrefix) : null;
+    }
+
+    /**
+     * Resolves the plan of a method, cache invalidations taking precedence over cached results.
+     *
+     * @param target the service called by the plan, whose implementation method annotations are also checked
+     */
+    static InvocationPlan compile(Method method, Object target) {
+        return compile(method, target, KeyMode.HASH);
+    }
+
+    /**
+     * @param keyMode the type of the keys built by the plan
+     * @return the plan of the method, a {@link Operation#NONE} plan invoking the target directly if its key
+     * expressions can not be resolved
+     */
+    static InvocationPlan compile(Method method, Object target, KeyMode keyMode) {
+        try {
+            return compileOperation(method, target, keyMode);
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Invalid cache key of method: {}.{}, its invocations are not cached", target.getClass().getName(),
+                    method.getName(), e);
+            return new InvocationPlan(method, target, Operation.NONE, null, null, new int[0], null, keyMode);
+        }
+    }
+
+    private static InvocationPlan compileOperation(Method method, Object target, KeyMode keyMode) {
+        Class<?> targetClass = target.getClass();
+        Method implMethod = null;
+        try {
+            implMethod = targetClass.getMethod(method.getName(), method.getParameterTypes());
+        } catch (NoSuchMethodException e) {
+            LOGGER.debug("Method {} not found in the implementation.", method.getName());
+        }
+        CacheInvalidate invalidate = getAnnotation(method, implMethod, CacheInvalidate.class);
+        if (invalidate != null) {
+            return new InvocationPlan(method, target, Operation.INVALIDATE, invalidate.cacheName(), null,
+                    CacheKeyGenerator.keyParameters(method, targetClass),
+                    CacheKeyGenerator.keyExpressions(method, targetClass, invalidate.key()), keyMode);
+        }
+        CacheInvalidateAll invalidateAll = getAnnotation(method, implMethod, CacheInvalidateAll.class);
+        if (invalidateAll != null) {
+            return new InvocationPlan(method, target, Operation.INVALIDATE_ALL, invalidateAll.cacheName(), null, new int[0],
+                    null, keyMode);
+        }
+        CacheResult result = getAnnotation(method, implMethod, CacheResult.class);
+        if (result != null) {
+            return new InvocationPlan(method, target, Operation.RESULT, result.cacheName(), result,
+                    CacheKeyGenerator.keyParameters(method, targetClass),
+                    CacheKeyGenerator.keyExpressions(method, targetClass, result.key()), keyMode);
+        }
+        return new InvocationPlan(method, target, Operation.NONE, null, null, new int[0], null, keyMode);
+    }
+
+    Method getMethod() {
+        return method;
+    }
+
+    Operation getOperation() {
+        return operation;
+    }
+
+    String getCacheName() {
+        return cacheName;
+    }
+
+    /**
+     * @return the annotation of a {@link Operation#RESULT} plan, null otherwise
+     */
+    CacheResult getResult() {
+        return result;
+    }
+
+    /**
+     * Calls the method on the target.
+     *
+     * @param args the arguments, null when the method has no parameter
+     */
+    Object invoke(Object[] args) throws Throwable {
+        return (Object) invoker.invokeExact(args);
+    }
+
+    /**
+     * @return the key of the invocation, a String digest, a {@link StructuredKey} or a {@link BinaryKey}
+     */
+    Object key(Object[] args) {
+        Object[] values = (keyExpressions != null) ? KeyExpression.evaluate(keyExpressions, args) : args;
+        switch (keyMode) {
+            case STRUCTURED:
+                return StructuredKey.of(keyPrefix, keyParameters, values);
+            case BINARY:
+                return Murmur3Hasher.key(keyHasher, keyParameters, values);
+            default:
+                return CacheKeyGenerator.generate(keyPrefix, keyParameters, values);
+        }
+    }
+
+    /**
+     * @param generation the current generation of the caches of the cache manager, negative when unknown
+     * @return the cache resolved for this generation, or null when it has to be looked up
+     */
+    Cache<Object> getCache(long generation) {
+        ResolvedCache resolved = resolvedCache;
+        return (generation >= 0 && resolved != null && resolved.generation() == generation) ? resolved.cache() : null;
+    }
+
+    void setCache(Cache<Object> cache, long generation) {
+        if (generation >= 0) {
+            resolvedCache = new ResolvedCache(cache, generation);
+        }
+    }
+
+    /**
+     * @return a handle of type (Object[])Object calling the method on the target
+     */
+    private static MethodHandle invoker(Method method, Object target) {
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.publicLookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            // Non public service interface, only reachable once made accessible
+            try {
+                method.setAccessible(true);
+                handle = MethodHandles.lookup().unreflect(method);
+            } catch (IllegalAccessException | RuntimeException ex) {
+                throw new IllegalStateException("Unable to access method " + method, ex);
+            }
+        }
+        return handle.bindTo(target)
+                .asSpreader(Object[].class, method.getParameterCount())
+                .asType(MethodType.methodType(Object.class, Object[].class));
+    }
+
+    private static <T extends Annotation> T getAnnotation(Method method, Method implMethod, Class<T> annotationClass) {
+        T ann = method.getAnnotation(annotationClass);
+        if (ann == null && implMethod != null) {
+            ann = implMethod.getAnnotation(annotationClass);
+        }
+        return ann;
+    }
+
+    private record ResolvedCache(Cache<Object> cache, long generation) {
+    }
+}
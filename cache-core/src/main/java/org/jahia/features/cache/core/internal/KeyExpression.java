@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Objects;
+
+/**
+ * Component of a cache key read from a method parameter, either the whole parameter or a path of its properties as
+ * written in {@link org.jahia.features.cache.api.CacheKey#value()} and
+ * {@link org.jahia.features.cache.api.CacheResult#key()}.
+ * <p>
+ * The path is resolved once against the declared types of the parameter and of each property, and compiled into a
+ * single method handle chaining the getters, which returns null as soon as a property on the path is null. Only the
+ * value at the end of the path is then part of the key, instead of the whole parameter.
+ *
+ * @author Jerome Blanchard
+ */
+final class KeyExpression {
+
+    private static final MethodHandle IS_NULL;
+    private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    static {
+        try {
+            IS_NULL = MethodHandles.lookup().findStatic(Objects.class, "isNull",
+                    MethodType.methodType(boolean.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int parameter;
+    private final MethodHandle accessor;
+
+    private KeyExpression(int parameter, MethodHandle accessor) {
+        this.parameter = parameter;
+        this.accessor = accessor;
+    }
+
+    /**
+     * @param expression an expression starting with <code>#</code> and the index of a parameter, or with its name,
+     *                   followed by an optional path of properties, such as <code>#0.locale</code>
+     * @throws IllegalArgumentException if the parameter or a property can not be resolved
+     */
+    static KeyExpression parse(Method method, String expression) {
+        String[] segments = expression.trim().split("\\.", -1);
+        String root = segments[0];
+        Parameter[] parameters = method.getParameters();
+        int parameter = -1;
+        if (root.startsWith("#")) {
+            try {
+                parameter = Integer.parseInt(root.substring(1));
+            } catch (NumberFormatException e) {
+                parameter = -1;
+            }
+        } else {
+            for (int i = 0; i < parameters.length; i++) {
+                if (parameters[i].isNamePresent() && parameters[i].getName().equals(root)) {
+                    parameter = i;
+                }
+            }
+        }
+        if (parameter < 0 || parameter >= parameters.length) {
+            throw new IllegalArgumentException("Unknown parameter " + root + " in key expression: " + expression
+                    + " of method " + method + ", use #index or compile the interface with -parameters");
+        }
+        return new KeyExpression(parameter, accessor(method.getParameterTypes()[parameter], segments, 1, expression));
+    }
+
+    /**
+     * @param path the path of properties of the parameter, empty for the whole parameter
+     * @throws IllegalArgumentException if a property can not be resolved
+     */
+    static KeyExpression of(Method method, int parameter, String path) {
+        if (path.isEmpty()) {
+            return new KeyExpression(parameter, null);
+        }
+        String[] segments = path.split("\\.", -1);
+        return new KeyExpression(parameter, accessor(method.getParameterTypes()[parameter], segments, 0, path));
+    }
+
+    /**
+     * @param args the method arguments, null when the method has no parameter
+     * @return the values of the expressions
+     */
+    static Object[] evaluate(KeyExpression[] expressions, Object[] args) {
+        Object[] values = new Object[expressions.length];
+        for (int i = 0; i < expressions.length; i++) {
+            values[i] = expressions[i].evaluate(args);
+        }
+        return values;
+    }
+
+    Object evaluate(Object[] args) {
+        Object argument = (args != null && parameter < args.length) ? args[parameter] : null;
+        if (accessor == null) {
+            return argument;
+        }
+        try {
+            return (Object) accessor.invokeExact(argument);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new UndeclaredThrowableException(t);
+        }
+    }
+
+    /**
+     * @return a handle of type (Object)Object reading the properties of the segments from the given one, or null
+     * when there is no segment
+     */
+    private static MethodHandle accessor(Class<?> type, String[] segments, int from, String expression) {
+        if (from == segments.length) {
+            return null;
+        }
+        MethodHandle chain = MethodHandles.identity(Object.class);
+        for (int i = from; i < segments.length; i++) {
+            String name = segments[i].trim();
+            MethodHandle getter = getter(type, name, expression);
+            type = getter.type().returnType();
+            // Null properties end the path with null instead of dereferencing them
+            MethodHandle step = MethodHandles.guardWithTest(IS_NULL, MethodHandles.identity(Object.class),
+                    getter.asType(ACCESSOR_TYPE));
+            chain = MethodHandles.filterReturnValue(chain, step);
+        }
+        return chain;
+    }
+
+    private static MethodHandle getter(Class<?> type, String name, String expression) {
+        if (!name.isEmpty() && !type.isPrimitive() && !type.isArray()) {
+            String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            Method method = findMethod(type, "get" + capitalized);
+            if (method == null) {
+                method = findMethod(type, "is" + capitalized);
+                if (method != null && method.getReturnType() != boolean.class) {
+                    method = null;
+                }
+            }
+            if (method == null) {
+                method = findMethod(type, name);
+            }
+            if (method != null) {
+                return unreflect(method, null);
+            }
+            try {
+                Field field = type.getField(name);
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    return unreflect(null, field);
+                }
+            } catch (NoSuchFieldException e) {
+                // Reported below
+            }
+        }
+        throw new IllegalArgumentException("Property " + name + " not found in type " + type.getName()
+                + " of key expression: " + expression);
+    }
+
+    private static Method findMethod(Class<?> type, String name) {
+        try {
+            Method method = type.getMethod(name);
+            return (method.getReturnType() != void.class && !Modifier.isStatic(method.getModifiers())) ? method : null;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static MethodHandle unreflect(Method method, Field field) {
+        try {
+            return (method != null) ? MethodHandles.publicLookup().unreflect(method)
+                    : MethodHandles.publicLookup().unreflectGetter(field);
+        } catch (IllegalAccessException e) {
+            // Public member of a non public type, only reachable once made accessible
+            try {
+                if (method != null) {
+                    method.setAccessible(true);
+                    return MethodHandles.lookup().unreflect(method);
+                }
+                field.setAccessible(true);
+                return MethodHandles.lookup().unreflectGetter(field);
+            } catch (IllegalAccessException | RuntimeException ex) {
+                throw new IllegalStateException("Unable to access " + ((method != null) ? method : field), ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.Cache;
+import org.jahia.features.cache.api.CacheEntry;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Cache of the default provider holding its entries in the local JVM, which gives access to them for snapshots.
+ *
+ * @author Jerome Blanchard
+ */
+public interface LocalCache<T> extends Cache<T> {
+
+    /**
+     * Calls the action for every entry that is not expired, without changing its recency. The iteration is weakly
+     * consistent: entries added or removed meanwhile may or may not be seen.
+     */
+    void forEach(BiConsumer<String, CacheEntry<T>> action);
+
+    /**
+     * Adds the entry under the key, keeping its creation time, unless it is expired or the cache already holds the key.
+     *
+     * @return true if the entry was added
+     */
+    boolean restore(String key, CacheEntry<T> entry);
+
+    /**
+     * Runs the pending maintenance of the cache, such as removing its expired entries. Called periodically by the
+     * maintenance scheduler of the provider, so that idle caches also release their expired entries.
+     */
+    default void cleanUp() {
+    }
+
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.CacheClock;
+import org.jahia.features.cache.api.CacheConfig;
+import org.jahia.features.cache.api.CacheStats;
+import org.jahia.features.cache.api.LongKeyCache;
+
+import java.util.Arrays;
+
+/**
+ * Synchronized long keyed cache engine, an open addressing hash table with linear probing over parallel primitive
+ * arrays: keys are never boxed and no object is allocated per entry besides the value itself.
+ * <p>
+ * The table is bounded by maxEntries or, when configured, by the total weight of its entries. Evictions follow the
+ * CLOCK approximation of LRU: every read sets the reference bit of the slot, and the clock hand sweeping the table
+ * evicts the first slot whose bit is clear, clearing the bits it passes. Removals shift the following entries of the
+ * probe sequence back so that no tombstone is needed.
+ *
+ * @author Jerome Blanchard
+ */
+public class LongKeyInMemoryCache<T> implements LongKeyCache<T>, ResizableCache {
+
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int MIN_CAPACITY = 16;
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    private final String cacheName;
+    private final CacheConfig cacheConfig;
+    private final long timeToLive;
+    private long[] keys;
+    private Object[] values;
+    private long[] expiresAt;
+    private int[] weights;
+    private boolean[] referenced;
+    private int mask;
+    private int shift;
+    private int size;
+    private int hand;
+    private long totalWeight;
+    private double capacityRatio = 1.0;
+    private double budgetRatio = 1.0;
+    private final CacheStatistics statistics;
+
+    public LongKeyInMemoryCache(String cacheName, CacheConfig cacheConfig) {
+        this.cacheName = cacheName;
+        this.cacheConfig = cacheConfig;
+        this.timeToLive = ConcurrentInMemoryCache.timeToLiveMillis(cacheConfig);
+        this.statistics = new CacheStatistics(cacheConfig.isMissRatioCurve());
+        boolean bounded = !cacheConfig.isWeighted() && cacheConfig.getMaxEntries() > 0;
+        // A table bounded by entries never needs to grow beyond its load factor
+        allocate(bounded ? tableSize(cacheConfig.getMaxEntries()) : MIN_CAPACITY);
+    }
+
+    @Override
+    public String getName() {
+        return cacheName;
+    }
+
+    @Override
+    public CacheConfig getConfig() {
+        return cacheConfig;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized T get(long key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            statistics.recordMiss(CacheStatistics.hash(key));
+            return null;
+        }
+        if (expiresAt[index] <= CacheClock.currentTimeMillis()) {
+            removeAt(index);
+            statistics.recordMiss(CacheStatistics.hash(key));
+            return null;
+        }
+        referenced[index] = true;
+        statistics.recordHit(CacheStatistics.hash(key));
+        return (T) values[index];
+    }
+
+    @Override
+    public synchronized T put(long key, T value) {
+        if (value == null) {
+            return delete(key);
+        }
+        int weight = (cacheConfig.getWeigher() != null) ? ConcurrentInMemoryCache.weigh(cacheConfig, Long.toString(key), value) : 1;
+        if (ConcurrentInMemoryCache.isOverweight(cacheConfig, weight)) {
+            return delete(key);
+        }
+        long expiration = ConcurrentInMemoryCache.expiration(CacheClock.currentTimeMillis(), timeToLive, 0);
+        int index = indexOf(key);
+        if (index >= 0) {
+            T old = liveValue(index);
+            values[index] = value;
+            expiresAt[index] = expiration;
+            totalWeight += weight - weights[index];
+            weights[index] = weight;
+            evictOverweight(key);
+            return old;
+        }
+        if (isFull()) {
+            evict();
+        }
+        if (size + 1 > (keys.length * LOAD_FACTOR)) {
+            resize(keys.length << 1);
+        }
+        insert(key, value, expiration, weight);
+        evictOverweight(key);
+        return null;
+    }
+
+    @Override
+    public synchronized T delete(long key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        T old = liveValue(index);
+        removeAt(index);
+        return old;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+        hand = 0;
+        totalWeight = 0;
+    }
+
+    @Override
+    public synchronized CacheStats getStats() {
+        return statistics.snapshot(CacheStatistics.estimatedCapacity(cacheConfig, capacityRatio, budgetRatio, size));
+    }
+
+    @Override
+    public CacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public synchronized double getCapacityRatio() {
+        return capacityRatio;
+    }
+
+    @Override
+    public synchronized void setCapacityRatio(double ratio) {
+        capacityRatio = ratio;
+        evictExceeding();
+    }
+
+    @Override
+    public synchronized double getBudgetRatio() {
+        return budgetRatio;
+    }
+
+    @Override
+    public synchronized void setBudgetRatio(double ratio) {
+        budgetRatio = ratio;
+        evictExceeding();
+    }
+
+    private void evictExceeding() {
+        if (cacheConfig.isWeighted()) {
+            while (totalWeight > maxWeight() && size > 0) {
+                evict();
+            }
+        } else if (cacheConfig.getMaxEntries() > 0) {
+            while (size > maxEntries()) {
+                evict();
+            }
+        }
+    }
+
+    @Override
+    public synchronized long weightedSize() {
+        return cacheConfig.isWeighted() ? totalWeight : size;
+    }
+
+    private boolean isFull() {
+        return !cacheConfig.isWeighted() && cacheConfig.getMaxEntries() > 0 && size >= maxEntries();
+    }
+
+    private long maxEntries() {
+        return Math.max(1, (long) (cacheConfig.getMaxEntries() * capacityRatio * budgetRatio));
+    }
+
+    private long maxWeight() {
+        return (long) (cacheConfig.getMaxWeight() * capacityRatio * budgetRatio);
+    }
+
+    private void evictOverweight(long written) {
+        while (cacheConfig.isWeighted() && totalWeight > maxWeight() && size > 0) {
+            // The entry just written is referenced, the clock hand only takes it once all the others are gone. Its
+            // slot is looked up again as evictions may shift it back.
+            int index = indexOf(written);
+            if (index >= 0) {
+                referenced[index] = true;
+            }
+            evict();
+        }
+    }
+
+    /**
+     * Advances the clock hand to the first occupied slot that was not read since the last sweep, and evicts it.
+     */
+    private void evict() {
+        while (true) {
+            int index = hand;
+            hand = (hand + 1) & mask;
+            if (values[index] == null) {
+                continue;
+            }
+            if (referenced[index] && expiresAt[index] > CacheClock.currentTimeMillis()) {
+                referenced[index] = false;
+                continue;
+            }
+            statistics.recordEviction(CacheStatistics.hash(keys[index]));
+            removeAt(index);
+            return;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T liveValue(int index) {
+        return (expiresAt[index] > CacheClock.currentTimeMillis()) ? (T) values[index] : null;
+    }
+
+    private int indexOf(long key) {
+        int index = hash(key);
+        while (values[index] != null) {
+            if (keys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void insert(long key, Object value, long expiration, int weight) {
+        int index = hash(key);
+        while (values[index] != null) {
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        expiresAt[index] = expiration;
+        weights[index] = weight;
+        referenced[index] = false;
+        totalWeight += weight;
+        size++;
+    }
+
+    /**
+     * Empties the slot, then moves back the following entries of the probe sequence that would not be found anymore.
+     */
+    private void removeAt(int index) {
+        totalWeight -= weights[index];
+        size--;
+        int hole = index;
+        int next = (hole + 1) & mask;
+        while (values[next] != null) {
+            int home = hash(keys[next]);
+            // Move the entry if its home slot is not within the cyclic range (hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                expiresAt[hole] = expiresAt[next];
+                weights[hole] = weights[next];
+                referenced[hole] = referenced[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[hole] = null;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        long[] oldExpiresAt = expiresAt;
+        int[] oldWeights = weights;
+        allocate(capacity);
+        size = 0;
+        totalWeight = 0;
+        hand = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                insert(oldKeys[i], oldValues[i], oldExpiresAt[i], oldWeights[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        expiresAt = new long[capacity];
+        weights = new int[capacity];
+        referenced = new boolean[capacity];
+        mask = capacity - 1;
+        shift = Long.SIZE - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    private int hash(long key) {
+        // Fibonacci hashing spreads sequential identifiers over the whole table
+        return (int) ((key * GOLDEN_RATIO) >>> shift);
+    }
+
+    static int tableSize(int maxEntries) {
+        int capacity = (int) Math.min(Math.ceil(maxEntries / LOAD_FACTOR), 1 << 30);
+        return Math.max(MIN_CAPACITY, Integer.highestOneBit(capacity - 1) << 1);
+    }
+}
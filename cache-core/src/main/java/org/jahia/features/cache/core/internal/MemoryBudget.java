@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Global capacity budget shared by the local caches, moving capacity to the caches where it buys the most hits.
+ * <p>
+ * The budget is expressed in a single capacity unit, entries or weight, and only shares capacity between the caches
+ * bounded in that unit: the others are left out, as an entry and a unit of weight cannot be traded. A budget in bytes
+ * is obtained by giving every cache a weigher in bytes. A cache starts with its configured maximum, all
+ * the caches being scaled down proportionally when their maximums exceed the budget. Then every reallocation moves a
+ * step of the budget (5%) from the cache with the lowest marginal gain to the cache with the highest one.
+ * <p>
+ * The marginal gain of a cache is estimated from its ghost: the statistics of each cache remember about a step worth of
+ * its last evicted keys, a miss on one of them would have been a hit with a step more of capacity. The number of these
+ * ghost hits since the previous reallocation, per unit of capacity, is the gain of growing the cache by a step, and
+ * also approximates the loss of shrinking it. The unallocated part of the budget is a donor without loss. Each cache
+ * stays between 1/16 and 4 times its configured maximum.
+ *
+ * @author Jerome Blanchard
+ */
+class MemoryBudget {
+
+    static final double STEP = 0.05;
+    static final double MIN_RATIO = 1.0 / 16;
+    static final double MAX_RATIO = 4.0;
+    static final int MAX_GHOST_CAPACITY = 1 << 20;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MemoryBudget.class);
+
+    private final long budget;
+    private final boolean weighted;
+    private final long step;
+    private final Map<ResizableCache, Member> members = new IdentityHashMap<>();
+
+    /**
+     * @param budget   capacity shared by the caches
+     * @param weighted true for a budget in weight, shared by the caches bounded by weight, false for a budget in
+     *                 entries, shared by the caches bounded by entries
+     */
+    MemoryBudget(long budget, boolean weighted) {
+        this.budget = budget;
+        this.weighted = weighted;
+        this.step = Math.max(1, (long) (budget * STEP));
+    }
+
+    long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Adds a cache to the budget, caches without maximum or bounded in another unit than the budget are ignored.
+     */
+    synchronized void register(ResizableCache cache) {
+        long maximum = cache.getConfig().isWeighted() ? cache.getConfig().getMaxWeight() : cache.getConfig().getMaxEntries();
+        if (maximum <= 0 || members.containsKey(cache)) {
+            return;
+        }
+        if (cache.getConfig().isWeighted() != weighted) {
+            LOGGER.warn("Cache {} is bounded by {}, it is left out of the budget in {}", cache.getName(),
+                    weighted ? "entries" : "weight", weighted ? "weight" : "entries");
+            return;
+        }
+        Member member = new Member(cache, maximum);
+        long allocated = allocated();
+        if (allocated + maximum > budget) {
+            // Make room for the new cache by scaling every cache down in the same proportion
+            double factor = (double) budget / (allocated + maximum);
+            for (Member other : members.values()) {
+                other.allocate(Math.max(other.minimum(), (long) (other.allocation * factor)));
+            }
+            member.allocation = Math.max(member.minimum(), (long) (maximum * factor));
+        }
+        members.put(cache, member);
+        member.allocate(member.allocation);
+        member.watch(step);
+    }
+
+    synchronized void unregister(ResizableCache cache) {
+        Member member = members.remove(cache);
+        if (member != null) {
+            cache.getStatistics().setGhostCapacity(0);
+            cache.setBudgetRatio(1.0);
+        }
+    }
+
+    /**
+     * Moves a step of capacity from the cache with the lowest marginal gain to the one with the highest.
+     */
+    synchronized void reallocate() {
+        Member receiver = null;
+        Member donor = null;
+        for (Member member : members.values()) {
+            member.gain = member.drainGain();
+            if (member.allocation < member.maximum() && (receiver == null || member.gain > receiver.gain)) {
+                receiver = member;
+            }
+        }
+        if (receiver == null || receiver.gain <= 0) {
+            watchAll();
+            return;
+        }
+        long amount = Math.min(step, receiver.maximum() - receiver.allocation);
+        long free = budget - allocated();
+        if (free > 0) {
+            amount = Math.min(amount, free);
+        } else {
+            for (Member member : members.values()) {
+                if (member != receiver && member.allocation > member.minimum() && (donor == null || member.gain < donor.gain)) {
+                    donor = member;
+                }
+            }
+            if (donor == null || donor.gain >= receiver.gain) {
+                watchAll();
+                return;
+            }
+            amount = Math.min(amount, donor.allocation - donor.minimum());
+            donor.allocate(donor.allocation - amount);
+        }
+        receiver.allocate(receiver.allocation + amount);
+        LOGGER.debug("Moved {} of capacity to cache {} from {}", amount, receiver.cache.getName(),
+                (donor != null) ? "cache " + donor.cache.getName() : "the unallocated budget");
+        watchAll();
+    }
+
+    synchronized long getAllocation(ResizableCache cache) {
+        Member member = members.get(cache);
+        return (member != null) ? member.allocation : 0;
+    }
+
+    private long allocated() {
+        long allocated = 0;
+        for (Member member : members.values()) {
+            allocated += member.allocation;
+        }
+        return allocated;
+    }
+
+    private void watchAll() {
+        for (Member member : members.values()) {
+            member.watch(step);
+        }
+    }
+
+    private static final class Member {
+        private final ResizableCache cache;
+        private final long configured;
+        private long allocation;
+        private double gain;
+
+        Member(ResizableCache cache, long configured) {
+            this.cache = cache;
+            this.configured = configured;
+            this.allocation = configured;
+        }
+
+        long minimum() {
+            return Math.max(1, (long) (configured * MIN_RATIO));
+        }
+
+        long maximum() {
+            return (long) (configured * MAX_RATIO);
+        }
+
+        void allocate(long allocation) {
+            this.allocation = allocation;
+            cache.setBudgetRatio((double) allocation / configured);
+        }
+
+        /**
+         * Sizes the ghost to the number of entries a step of capacity holds.
+         */
+        void watch(long step) {
+            int capacity = (int) Math.min(MAX_GHOST_CAPACITY, Math.max(1, step / averageWeight()));
+            cache.getStatistics().setGhostCapacity(capacity);
+        }
+
+        /**
+         * @return the ghost hits since the previous call per unit of capacity
+         */
+        double drainGain() {
+            CacheStatistics statistics = cache.getStatistics();
+            long ghostHits = statistics.drainGhostHits();
+            int ghostCapacity = statistics.getGhostCapacity();
+            return (ghostCapacity > 0) ? ghostHits / (ghostCapacity * averageWeight()) : 0;
+        }
+
+        private double averageWeight() {
+            int size = cache.size();
+            return (cache.getConfig().isWeighted() && size > 0) ? Math.max(1.0, (double) cache.weightedSize() / size) : 1.0;
+        }
+    }
+}
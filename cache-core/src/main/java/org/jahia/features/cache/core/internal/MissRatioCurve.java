@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Online estimation of the miss ratio curve of a cache, the hit ratio an LRU cache would reach for any capacity, from
+ * spatially hashed samples of its key stream (fixed-size SHARDS).
+ * <p>
+ * A key is sampled when its spatial hash, uniform over [0, 2^24), is below the threshold, so that a sampled key is
+ * sampled at every reference and the sampling rate is threshold / 2^24. The reuse distance of a sampled reference,
+ * the number of distinct sampled keys referenced since the previous reference of the same key, is counted with a
+ * Fenwick tree over the last reference times, then divided by the sampling rate to estimate the distance in the full
+ * stream. A reference with a reuse distance below the capacity of an LRU cache is a hit. The distances are counted in
+ * a histogram of 8 buckets per power of two, halved periodically so that the curve follows the workload.
+ * <p>
+ * At most maxSamples keys are tracked: beyond, the key with the highest spatial hash is dropped and the threshold
+ * lowered to its hash, so that the sampling rate adapts to the number of distinct keys. The counts recorded so far are
+ * then scaled down by the ratio of the new rate to the old one, as if they had been sampled at the new rate.
+ *
+ * @author Jerome Blanchard
+ */
+class MissRatioCurve {
+
+    static final int MODULUS = 1 << 24;
+    static final int DEFAULT_MAX_SAMPLES = 8192;
+    private static final int SUB_BUCKETS = 8;
+    private static final int AGING_PERIOD = 32;
+
+    private final int maxSamples;
+    private final TreeMap<Integer, Integer> lastReferences = new TreeMap<>();
+    private final double[] histogram = new double[SUB_BUCKETS * 62];
+    private int[] tree;
+    private int time;
+    private double coldMisses;
+    private long sampled;
+    private volatile int threshold = MODULUS;
+
+    MissRatioCurve() {
+        this(DEFAULT_MAX_SAMPLES);
+    }
+
+    MissRatioCurve(int maxSamples) {
+        this.maxSamples = maxSamples;
+        this.tree = new int[maxSamples * 2 + 1];
+    }
+
+    /**
+     * Records a reference to the key of the given hash, only the sampled keys take the lock.
+     */
+    void record(int hash) {
+        int spatial = spatialHash(hash);
+        if (spatial < threshold) {
+            sample(spatial);
+        }
+    }
+
+    /**
+     * @return the estimated hit ratio of an LRU cache of the given number of entries, NaN before any sample
+     */
+    synchronized double hitRatio(double capacity) {
+        double total = coldMisses;
+        double hits = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] == 0) {
+                continue;
+            }
+            total += histogram[i];
+            double lower = lowerBound(i);
+            double upper = lowerBound(i + 1);
+            if (upper <= capacity) {
+                hits += histogram[i];
+            } else if (lower < capacity) {
+                hits += histogram[i] * (capacity - lower) / (upper - lower);
+            }
+        }
+        return (total > 0) ? hits / total : Double.NaN;
+    }
+
+    /**
+     * @return the estimated hit ratios at each given multiple of the capacity, empty before any sample or without
+     * capacity
+     */
+    Map<Double, Double> hitRatios(long capacity, double... scales) {
+        Map<Double, Double> ratios = new TreeMap<>();
+        if (capacity <= 0) {
+            return ratios;
+        }
+        for (double scale : scales) {
+            double ratio = hitRatio(capacity * scale);
+            if (Double.isNaN(ratio)) {
+                return new TreeMap<>();
+            }
+            ratios.put(scale, ratio);
+        }
+        return ratios;
+    }
+
+    double samplingRate() {
+        return (double) threshold / MODULUS;
+    }
+
+    private synchronized void sample(int spatial) {
+        if (spatial >= threshold) {
+            return;
+        }
+        if (time + 1 >= tree.length) {
+            compact();
+        }
+        int now = ++time;
+        Integer previous = lastReferences.put(spatial, now);
+        if (previous == null) {
+            coldMisses++;
+        } else {
+            int distance = prefixSum(now - 1) - prefixSum(previous);
+            add(previous, -1);
+            histogram[bucket(distance / samplingRate())]++;
+        }
+        add(now, 1);
+        if (lastReferences.size() > maxSamples) {
+            Map.Entry<Integer, Integer> dropped = lastReferences.pollLastEntry();
+            add(dropped.getValue(), -1);
+            scale((double) dropped.getKey() / threshold);
+            threshold = dropped.getKey();
+        }
+        if (++sampled % ((long) maxSamples * AGING_PERIOD) == 0) {
+            age();
+        }
+    }
+
+    /**
+     * Renumbers the last reference times from 1 once the tree is full, preserving their order.
+     */
+    private void compact() {
+        List<Map.Entry<Integer, Integer>> entries = new ArrayList<>(lastReferences.entrySet());
+        entries.sort(Map.Entry.comparingByValue());
+        Arrays.fill(tree, 0);
+        time = 0;
+        for (Map.Entry<Integer, Integer> entry : entries) {
+            lastReferences.put(entry.getKey(), ++time);
+            add(time, 1);
+        }
+    }
+
+    private void age() {
+        scale(0.5);
+    }
+
+    private void scale(double factor) {
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] *= factor;
+        }
+        coldMisses *= factor;
+    }
+
+    private void add(int index, int delta) {
+        for (int i = index; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    private int prefixSum(int index) {
+        int sum = 0;
+        for (int i = index; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Index of the histogram bucket of the distance: distances under 8 have their own bucket, then each power of two
+     * is split in 8 buckets.
+     */
+    static int bucket(double distance) {
+        long value = (long) distance;
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) ((value >>> (exponent - 3)) & (SUB_BUCKETS - 1));
+        return (exponent - 2) * SUB_BUCKETS + sub;
+    }
+
+    static double lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + 2;
+        return (double) (SUB_BUCKETS + bucket % SUB_BUCKETS) * (1L << (exponent - 3));
+    }
+
+    private static int spatialHash(int hash) {
+        int x = hash * 0x85EBCA6B;
+        x ^= x >>> 13;
+        x *= 0xC2B2AE35;
+        x ^= x >>> 16;
+        return x & (MODULUS - 1);
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.BinaryKey;
+
+import java.lang.reflect.Array;
+import java.util.UUID;
+
+/**
+ * Streaming MurmurHash3 x64 128-bit hash, computing the {@link BinaryKey} of an invocation from the name of the class
+ * declaring the method and the arguments of its key parameters.
+ * <p>
+ * The bytes are accumulated little-endian in a pending 16 bytes block, mixed into the state once full. Each argument is
+ * written as a type tag followed by its content: strings as their length and UTF-16 chars, boxed primitives, enums and
+ * UUIDs as their value, arrays as their length and elements, so that distinct arguments never write the same bytes.
+ * Other arguments are written as their {@link String#valueOf(Object) string form}, like the digest keys.
+ * <p>
+ * This class is not thread safe, a hasher is copied from the state of the prefix for each key.
+ *
+ * @author Jerome Blanchard
+ */
+final class Murmur3Hasher {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int INTEGER = 2;
+    private static final int LONG = 3;
+    private static final int BOOLEAN = 4;
+    private static final int CHARACTER = 5;
+    private static final int DOUBLE = 6;
+    private static final int FLOAT = 7;
+    private static final int SHORT = 8;
+    private static final int BYTE = 9;
+    private static final int ENUM = 10;
+    private static final int UUID_VALUE = 11;
+    private static final int ARRAY = 12;
+    private static final int OTHER = 13;
+
+    private long h1;
+    private long h2;
+    private long k1;
+    private long k2;
+    private int position;
+    private long length;
+
+    Murmur3Hasher() {
+    }
+
+    private Murmur3Hasher(Murmur3Hasher state) {
+        this.h1 = state.h1;
+        this.h2 = state.h2;
+        this.k1 = state.k1;
+        this.k2 = state.k2;
+        this.position = state.position;
+        this.length = state.length;
+    }
+
+    /**
+     * @param prefix        the state after writing the name of the class declaring the method
+     * @param keyParameters the indexes of the parameters making the key, see
+     *                      {@link CacheKeyGenerator#keyParameters(java.lang.reflect.Method, Class)}
+     * @param args          the method arguments
+     */
+    static BinaryKey key(Murmur3Hasher prefix, int[] keyParameters, Object[] args) {
+        Murmur3Hasher hasher = new Murmur3Hasher(prefix);
+        for (int index : keyParameters) {
+            if (args != null && index < args.length) {
+                hasher.putObject(args[index]);
+            }
+        }
+        return hasher.hash();
+    }
+
+    Murmur3Hasher putObject(Object value) {
+        if (value == null) {
+            putByte(NULL);
+        } else if (value instanceof String string) {
+            putByte(STRING);
+            putString(string);
+        } else if (value instanceof Integer integer) {
+            putByte(INTEGER);
+            putInt(integer);
+        } else if (value instanceof Long number) {
+            putByte(LONG);
+            putLong(number);
+        } else if (value instanceof Boolean bool) {
+            putByte(BOOLEAN);
+            putByte(bool ? 1 : 0);
+        } else if (value instanceof Character character) {
+            putByte(CHARACTER);
+            putChar(character);
+        } else if (value instanceof Double number) {
+            putByte(DOUBLE);
+            putLong(Double.doubleToLongBits(number));
+        } else if (value instanceof Float number) {
+            putByte(FLOAT);
+            putInt(Float.floatToIntBits(number));
+        } else if (value instanceof Short number) {
+            putByte(SHORT);
+            putChar((char) (short) number);
+        } else if (value instanceof Byte number) {
+            putByte(BYTE);
+            putByte(number);
+        } else if (value instanceof Enum<?> constant) {
+            putByte(ENUM);
+            putString(constant.getDeclaringClass().getName());
+            putString(constant.name());
+        } else if (value instanceof UUID uuid) {
+            putByte(UUID_VALUE);
+            putLong(uuid.getMostSignificantBits());
+            putLong(uuid.getLeastSignificantBits());
+        } else if (value.getClass().isArray()) {
+            putByte(ARRAY);
+            int size = Array.getLength(value);
+            putInt(size);
+            for (int i = 0; i < size; i++) {
+                putObject(Array.get(value, i));
+            }
+        } else {
+            putByte(OTHER);
+            putString(String.valueOf(value));
+        }
+        return this;
+    }
+
+    Murmur3Hasher putString(String value) {
+        int size = value.length();
+        putInt(size);
+        int i = 0;
+        for (; i + 4 <= size; i += 4) {
+            putLong(value.charAt(i) | (long) value.charAt(i + 1) << 16 | (long) value.charAt(i + 2) << 32
+                    | (long) value.charAt(i + 3) << 48);
+        }
+        for (; i < size; i++) {
+            putChar(value.charAt(i));
+        }
+        return this;
+    }
+
+    Murmur3Hasher putByte(int value) {
+        long bits = value & 0xffL;
+        if (position < 8) {
+            k1 |= bits << (position << 3);
+        } else {
+            k2 |= bits << ((position - 8) << 3);
+        }
+        length++;
+        if (++position == 16) {
+            mix();
+        }
+        return this;
+    }
+
+    Murmur3Hasher putChar(char value) {
+        putByte(value);
+        return putByte(value >>> 8);
+    }
+
+    Murmur3Hasher putInt(int value) {
+        putChar((char) value);
+        return putChar((char) (value >>> 16));
+    }
+
+    Murmur3Hasher putLong(long value) {
+        int shift = (position & 7) << 3;
+        length += 8;
+        if (position == 0) {
+            k1 = value;
+            position = 8;
+        } else if (position == 8) {
+            k2 = value;
+            mix();
+        } else if (position < 8) {
+            // The long spans the end of k1 and the start of k2
+            k1 |= value << shift;
+            k2 = value >>> (64 - shift);
+            position += 8;
+        } else {
+            // The long spans the end of k2 and the start of the next block
+            k2 |= value << shift;
+            int next = position - 8;
+            mix();
+            k1 = value >>> (64 - shift);
+            position = next;
+        }
+        return this;
+    }
+
+    /**
+     * @return the hash of the bytes written so far, the hasher must not be used anymore
+     */
+    BinaryKey hash() {
+        if (position > 8) {
+            h2 ^= Long.rotateLeft(k2 * C2, 33) * C1;
+        }
+        if (position > 0) {
+            h1 ^= Long.rotateLeft(k1 * C1, 31) * C2;
+        }
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        return new BinaryKey(h1, h2);
+    }
+
+    private void mix() {
+        h1 ^= Long.rotateLeft(k1 * C1, 31) * C2;
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+        h2 ^= Long.rotateLeft(k2 * C2, 33) * C1;
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+        k1 = 0;
+        k2 = 0;
+        position = 0;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
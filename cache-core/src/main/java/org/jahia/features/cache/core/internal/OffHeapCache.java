@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.CacheClock;
+import org.jahia.features.cache.api.CacheConfig;
+import org.jahia.features.cache.api.CacheEntry;
+import org.jahia.features.cache.api.CacheSerializer;
+import org.jahia.features.cache.api.CacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Off-heap cache engine, values are serialized and stored in the native memory of an {@link OffHeapStore} so that
+ * large caches do not weigh on the garbage collector. Only a compact index (key, block address, length and creation
+ * time) stays on the heap, ordered as a strict LRU bounded by maxEntries or, when configured, by the total weight of
+ * its entries. Without weigher, the weight of an entry is the size in bytes of its serialized value.
+ * <p>
+ * When the shared store is full, the cache evicts its own least recently used entries to make room, a value that
+ * still does not fit is not cached. Values are serialized with the serializer of the cache configuration, or the
+ * provider default one. Values are copied from native memory under the lock of the cache and deserialized outside of
+ * it; the previous entry returned by a write or a delete is only deserialized if its value is read.
+ *
+ * @author Jerome Blanchard
+ */
+public class OffHeapCache<T> implements LocalCache<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OffHeapCache.class);
+
+    private final String cacheName;
+    private final CacheConfig cacheConfig;
+    private final Class<T> type;
+    private final CacheSerializer serializer;
+    private OffHeapStore store;
+    private final Map<String, Slot> index;
+    private long totalWeight;
+    private final CacheStatistics statistics;
+
+    OffHeapCache(String cacheName, CacheConfig cacheConfig, Class<T> type, OffHeapStore store, CacheSerializer defaultSerializer) {
+        this.cacheName = cacheName;
+        this.cacheConfig = cacheConfig;
+        this.type = type;
+        this.serializer = (cacheConfig.getSerializer() != null) ? cacheConfig.getSerializer() : defaultSerializer;
+        this.store = store;
+        this.index = new LinkedHashMap<>(16, 0.75f, true);
+        this.statistics = new CacheStatistics(cacheConfig.isMissRatioCurve());
+    }
+
+    @Override
+    public String getName() {
+        return cacheName;
+    }
+
+    @Override
+    public CacheConfig getConfig() {
+        return cacheConfig;
+    }
+
+    @Override
+    public CacheEntry<T> getEntry(String key) {
+        Slot slot;
+        byte[] data;
+        synchronized (this) {
+            slot = index.get(key);
+            if (slot == null) {
+                statistics.recordMiss(CacheStatistics.hash(key));
+                return null;
+            }
+            if (CacheClock.currentTimeMillis() - slot.created >= ConcurrentInMemoryCache.timeToLiveMillis(getConfig())) {
+                discard(key);
+                statistics.recordMiss(CacheStatistics.hash(key));
+                return null;
+            }
+            data = store.read(slot.address, slot.length);
+        }
+        CacheEntry<T> entry;
+        try {
+            entry = new CacheEntry<>(deserialize(data), slot.created);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to deserialize value of key: {} in cache: {}, entry removed", key, cacheName, e);
+            synchronized (this) {
+                if (index.get(key) == slot) {
+                    discard(key);
+                }
+            }
+            statistics.recordMiss(CacheStatistics.hash(key));
+            return null;
+        }
+        statistics.recordHit(CacheStatistics.hash(key));
+        return entry;
+    }
+
+    @Override
+    public synchronized CacheStats getStats() {
+        // Off-heap caches are not resized, their capacity is the configured one
+        return statistics.snapshot(CacheStatistics.estimatedCapacity(cacheConfig, 1.0, 1.0, index.size()));
+    }
+
+    @Override
+    public T get(String key) {
+        CacheEntry<T> entry = getEntry(key);
+        return (entry != null) ? entry.value() : null;
+    }
+
+    @Override
+    public CacheEntry<T> put(String key, T value) {
+        byte[] data;
+        try {
+            data = serializer.serialize(value);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to serialize value of key: {} in cache: {}, value not cached", key, cacheName, e);
+            return delete(key);
+        }
+        int weight = weigh(key, value, data);
+        if (ConcurrentInMemoryCache.isOverweight(getConfig(), weight)) {
+            return delete(key);
+        }
+        synchronized (this) {
+            CacheEntry<T> old = remove(key);
+            insert(key, data, weight, CacheClock.currentTimeMillis());
+            return old;
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, CacheEntry<T>> action) {
+        List<Map.Entry<String, Slot>> copy = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<String, Slot> entry : index.entrySet()) {
+                copy.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+        long expiredBefore = CacheClock.currentTimeMillis() - ConcurrentInMemoryCache.timeToLiveMillis(getConfig());
+        for (Map.Entry<String, Slot> entry : copy) {
+            Slot slot = entry.getValue();
+            if (slot.created > expiredBefore) {
+                byte[] data;
+                synchronized (this) {
+                    // The blocks of a released slot may already hold another value
+                    data = slot.released ? null : store.read(slot.address, slot.length);
+                }
+                if (data != null) {
+                    try {
+                        action.accept(entry.getKey(), new CacheEntry<>(deserialize(data), slot.created));
+                    } catch (IOException e) {
+                        LOGGER.debug("Unable to deserialize value of key: {} in cache: {}", entry.getKey(), cacheName, e);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean restore(String key, CacheEntry<T> entry) {
+        if (CacheClock.currentTimeMillis() - entry.created() >= ConcurrentInMemoryCache.timeToLiveMillis(getConfig())) {
+            return false;
+        }
+        byte[] data;
+        try {
+            data = serializer.serialize(entry.value());
+        } catch (IOException e) {
+            LOGGER.debug("Unable to serialize value of key: {} in cache: {}", key, cacheName, e);
+            return false;
+        }
+        int weight = weigh(key, entry.value(), data);
+        if (ConcurrentInMemoryCache.isOverweight(getConfig(), weight)) {
+            return false;
+        }
+        synchronized (this) {
+            return !index.containsKey(key) && insert(key, data, weight, entry.created());
+        }
+    }
+
+    @Override
+    public synchronized CacheEntry<T> delete(String key) {
+        return remove(key);
+    }
+
+    @Override
+    public synchronized int size() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (Slot slot : index.values()) {
+            slot.released = true;
+            store.free(slot.address);
+        }
+        index.clear();
+        totalWeight = 0;
+    }
+
+    /**
+     * Drops all the entries and stores the next ones in the given store, so that the former one can be released.
+     *
+     * @param store the new store, or null to release the current one, values being no longer cached
+     */
+    synchronized void moveTo(OffHeapStore store) {
+        for (Slot slot : index.values()) {
+            slot.released = true;
+        }
+        index.clear();
+        totalWeight = 0;
+        this.store = store;
+    }
+
+    public synchronized long weightedSize() {
+        return getConfig().isWeighted() ? totalWeight : index.size();
+    }
+
+    private int weigh(String key, T value, byte[] data) {
+        if (getConfig().getWeigher() != null) {
+            return ConcurrentInMemoryCache.weigh(getConfig(), key, value);
+        }
+        return getConfig().isWeighted() ? data.length : 1;
+    }
+
+    /**
+     * @return false if the store is full, the value is then not cached
+     */
+    private boolean insert(String key, byte[] data, int weight, long created) {
+        if (store == null) {
+            return false;
+        }
+        int address;
+        while ((address = store.allocate(data.length)) < 0) {
+            if (index.isEmpty()) {
+                LOGGER.debug("Off-heap store full, value of key: {} not cached in cache: {}", key, cacheName);
+                return false;
+            }
+            evictEldest();
+        }
+        store.write(address, data);
+        index.put(key, new Slot(address, data.length, weight, created));
+        totalWeight += weight;
+        if (getConfig().isWeighted()) {
+            while (totalWeight > getConfig().getMaxWeight()) {
+                evictEldest();
+            }
+        } else if (getConfig().getMaxEntries() > 0) {
+            while (index.size() > getConfig().getMaxEntries()) {
+                evictEldest();
+            }
+        }
+        return true;
+    }
+
+    private T deserialize(byte[] data) throws IOException {
+        return serializer.deserialize(data, type, getConfig().getClassLoader());
+    }
+
+    /**
+     * @return the removed entry, whose value is only deserialized when read
+     */
+    private CacheEntry<T> remove(String key) {
+        Slot slot = index.remove(key);
+        if (slot == null) {
+            return null;
+        }
+        CacheEntry<T> entry = new SerializedEntry(key, store.read(slot.address, slot.length), slot.created);
+        release(slot);
+        return entry;
+    }
+
+    private void discard(String key) {
+        Slot slot = index.remove(key);
+        if (slot != null) {
+            release(slot);
+        }
+    }
+
+    private void evictEldest() {
+        Iterator<Map.Entry<String, Slot>> iterator = index.entrySet().iterator();
+        Map.Entry<String, Slot> eldest = iterator.next();
+        iterator.remove();
+        statistics.recordEviction(CacheStatistics.hash(eldest.getKey()));
+        release(eldest.getValue());
+    }
+
+    private void release(Slot slot) {
+        slot.released = true;
+        store.free(slot.address);
+        totalWeight -= slot.weight;
+    }
+
+    /**
+     * Entry removed from the cache, holding a copy of its serialized value until the value is read.
+     */
+    @SuppressWarnings("serial")
+    private final class SerializedEntry extends CacheEntry<T> {
+        private final String key;
+        private byte[] data;
+        private T value;
+
+        private SerializedEntry(String key, byte[] data, long created) {
+            super(null, created);
+            this.key = key;
+            this.data = data;
+        }
+
+        @Override
+        public synchronized T value() {
+            if (data != null) {
+                try {
+                    value = deserialize(data);
+                } catch (IOException e) {
+                    LOGGER.debug("Unable to deserialize previous value of key: {} in cache: {}", key, cacheName, e);
+                }
+                data = null;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * On-heap index record of an entry stored off-heap.
+     */
+    private static final class Slot {
+        private final int address;
+        private final int length;
+        private final int weight;
+        private final long created;
+        private boolean released;
+
+        private Slot(int address, int length, int weight, long created) {
+            this.address = address;
+            this.length = length;
+            this.weight = weight;
+            this.created = created;
+        }
+    }
+}
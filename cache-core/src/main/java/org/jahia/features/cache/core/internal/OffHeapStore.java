@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Native memory shared by the off-heap caches of the default provider.
+ * Memory is reserved lazily by slabs of 4MB allocated with {@link ByteBuffer#allocateDirect(int)}, up to the
+ * configured maximum, and split in blocks of 128 bytes. A value is stored in a chain of blocks, each block starting
+ * with the identifier of the next one, so that any freed block can be reused by a value of any size without
+ * fragmentation. Freed blocks are chained the same way in a free list, no heap memory is needed to track them.
+ * <p>
+ * Allocation and release are synchronized. Reading and writing the blocks of a chain is not: the chain belongs to
+ * a single cache entry and callers are expected to hold the lock of the owning cache.
+ *
+ * @author Jerome Blanchard
+ */
+class OffHeapStore {
+
+    static final int BLOCK_SHIFT = 7;
+    static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    static final int SLAB_SHIFT = 22;
+    static final int SLAB_SIZE = 1 << SLAB_SHIFT;
+    // Block identifiers are ints, limiting the store to 2^31 blocks (256GB)
+    static final int MAX_SLABS = 1 << (31 - SLAB_SHIFT + BLOCK_SHIFT);
+
+    private static final int HEADER_SIZE = Integer.BYTES;
+    private static final int PAYLOAD_SIZE = BLOCK_SIZE - HEADER_SIZE;
+    private static final int BLOCKS_PER_SLAB_SHIFT = SLAB_SHIFT - BLOCK_SHIFT;
+    private static final int BLOCKS_PER_SLAB = 1 << BLOCKS_PER_SLAB_SHIFT;
+    private static final int NONE = -1;
+
+    private final ByteBuffer[] slabs;
+    private int slabCount;
+    private int nextBlock;
+    private int freshBlocks;
+    private int freeHead = NONE;
+    private long freeBlocks;
+    private long usedBlocks;
+
+    OffHeapStore(long maxMemory) {
+        long count = Math.max(1, Math.min(maxMemory >> SLAB_SHIFT, MAX_SLABS));
+        this.slabs = new ByteBuffer[(int) count];
+    }
+
+    /**
+     * @return the number of blocks needed to store the given number of bytes
+     */
+    static int blocksFor(int length) {
+        return Math.max(1, (length + PAYLOAD_SIZE - 1) / PAYLOAD_SIZE);
+    }
+
+    /**
+     * Reserves a chain of blocks large enough for the given number of bytes.
+     *
+     * @return the identifier of the first block of the chain, or -1 if the store is full
+     */
+    synchronized int allocate(int length) {
+        int blocks = blocksFor(length);
+        long available = freeBlocks + freshBlocks + ((long) (slabs.length - slabCount) << BLOCKS_PER_SLAB_SHIFT);
+        if (available < blocks) {
+            return NONE;
+        }
+        int first = NONE;
+        int previous = NONE;
+        for (int i = 0; i < blocks; i++) {
+            int block = takeBlock();
+            if (previous == NONE) {
+                first = block;
+            } else {
+                setNext(previous, block);
+            }
+            previous = block;
+        }
+        setNext(previous, NONE);
+        usedBlocks += blocks;
+        return first;
+    }
+
+    /**
+     * Releases the chain starting at the given block.
+     */
+    synchronized void free(int first) {
+        int block = first;
+        int count = 1;
+        int next;
+        while ((next = getNext(block)) != NONE) {
+            block = next;
+            count++;
+        }
+        setNext(block, freeHead);
+        freeHead = first;
+        freeBlocks += count;
+        usedBlocks -= count;
+    }
+
+    void write(int first, byte[] data) {
+        int block = first;
+        int position = 0;
+        do {
+            int length = Math.min(PAYLOAD_SIZE, data.length - position);
+            slab(block).put(offset(block) + HEADER_SIZE, data, position, length);
+            position += length;
+            block = getNext(block);
+        } while (position < data.length);
+    }
+
+    byte[] read(int first, int length) {
+        byte[] data = new byte[length];
+        int block = first;
+        int position = 0;
+        while (position < length) {
+            int chunk = Math.min(PAYLOAD_SIZE, length - position);
+            slab(block).get(offset(block) + HEADER_SIZE, data, position, chunk);
+            position += chunk;
+            block = getNext(block);
+        }
+        return data;
+    }
+
+    /**
+     * @return the native memory reserved by the store, in bytes
+     */
+    synchronized long getReservedMemory() {
+        return (long) slabCount << SLAB_SHIFT;
+    }
+
+    /**
+     * @return the memory of the blocks currently holding values, in bytes
+     */
+    synchronized long getUsedMemory() {
+        return usedBlocks << BLOCK_SHIFT;
+    }
+
+    long getMaxMemory() {
+        return (long) slabs.length << SLAB_SHIFT;
+    }
+
+    private int takeBlock() {
+        if (freeHead != NONE) {
+            int block = freeHead;
+            freeHead = getNext(block);
+            freeBlocks--;
+            return block;
+        }
+        if (freshBlocks == 0) {
+            slabs[slabCount] = ByteBuffer.allocateDirect(SLAB_SIZE);
+            nextBlock = slabCount << BLOCKS_PER_SLAB_SHIFT;
+            freshBlocks = BLOCKS_PER_SLAB;
+            slabCount++;
+        }
+        freshBlocks--;
+        return nextBlock++;
+    }
+
+    private ByteBuffer slab(int block) {
+        return slabs[block >>> BLOCKS_PER_SLAB_SHIFT];
+    }
+
+    private static int offset(int block) {
+        return (block & (BLOCKS_PER_SLAB - 1)) << BLOCK_SHIFT;
+    }
+
+    private int getNext(int block) {
+        return slab(block).getInt(offset(block));
+    }
+
+    private void setNext(int block, int next) {
+        slab(block).putInt(offset(block), next);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.CacheConfig;
+import org.jahia.features.cache.api.CacheEntry;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+
+/**
+ * Cache entry holding its value through a soft or weak reference, so that the garbage collector can reclaim it.
+ * The reference remembers the key of the entry: once enqueued, the cache removes the entry whose value was reclaimed.
+ *
+ * @author Jerome Blanchard
+ */
+@SuppressWarnings("serial")
+final class ReferenceCacheEntry<T> extends CacheEntry<T> {
+
+    private final Reference<T> reference;
+
+    private ReferenceCacheEntry(Object key, T value, long created, CacheConfig.ValueReference type, ReferenceQueue<T> queue) {
+        super(null, created);
+        this.reference = (type == CacheConfig.ValueReference.SOFT) ?
+                new KeyedSoftReference<>(key, value, queue) : new KeyedWeakReference<>(key, value, queue);
+    }
+
+    /**
+     * @return an entry referencing the value as configured, a plain entry for strong references
+     */
+    static <T> CacheEntry<T> create(CacheConfig config, Object key, T value, long created, ReferenceQueue<T> queue) {
+        if (config.getValueReference() == null || config.getValueReference() == CacheConfig.ValueReference.STRONG) {
+            return new CacheEntry<>(value, created);
+        }
+        return new ReferenceCacheEntry<>(key, value, created, config.getValueReference(), queue);
+    }
+
+    /**
+     * @return true if the value of the entry was reclaimed by the garbage collector
+     */
+    static boolean isCleared(CacheEntry<?> entry) {
+        return entry instanceof ReferenceCacheEntry<?> referenceEntry && referenceEntry.reference.refersTo(null);
+    }
+
+    /**
+     * @return true if the entry holds its value through the reference
+     */
+    static boolean holds(CacheEntry<?> entry, Reference<?> reference) {
+        return entry instanceof ReferenceCacheEntry<?> referenceEntry && referenceEntry.reference == reference;
+    }
+
+    /**
+     * @return the key of the entry whose value was held by the enqueued reference
+     */
+    static Object keyOf(Reference<?> reference) {
+        return (reference instanceof KeyedSoftReference<?> soft) ? soft.key : ((KeyedWeakReference<?>) reference).key;
+    }
+
+    @Override
+    public T value() {
+        return reference.get();
+    }
+
+    private static final class KeyedSoftReference<T> extends SoftReference<T> {
+        private final Object key;
+
+        KeyedSoftReference(Object key, T value, ReferenceQueue<T> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+
+    private static final class KeyedWeakReference<T> extends WeakReference<T> {
+        private final Object key;
+
+        KeyedWeakReference(Object key, T value, ReferenceQueue<T> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+}
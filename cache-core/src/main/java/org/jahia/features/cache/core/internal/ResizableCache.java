@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.CacheConfig;
+
+/**
+ * Bounded local cache whose capacity can be set to a fraction of its configured maximum. The capacity is the product
+ * of two ratios: the capacity ratio, lowered to relieve the heap, and the budget ratio, granted by a shared memory
+ * budget.
+ *
+ * @author Jerome Blanchard
+ */
+interface ResizableCache {
+
+    String getName();
+
+    CacheConfig getConfig();
+
+    int size();
+
+    /**
+     * @return the total weight of the entries, or their number when the cache is not weighted
+     */
+    long weightedSize();
+
+    CacheStatistics getStatistics();
+
+    /**
+     * @return the fraction of the configured maximum currently allowed, 1 when the cache is not shrunk
+     */
+    double getCapacityRatio();
+
+    /**
+     * Sets the fraction of the configured maximum allowed, evicting the exceeding entries right away. Caches without
+     * maximum are not affected.
+     */
+    void setCapacityRatio(double ratio);
+
+    /**
+     * @return the fraction of the configured maximum granted by the memory budget, 1 without budget
+     */
+    double getBudgetRatio();
+
+    /**
+     * Sets the fraction of the configured maximum granted by the memory budget, possibly above 1, evicting the
+     * exceeding entries right away.
+     */
+    void setBudgetRatio(double ratio);
+
+}
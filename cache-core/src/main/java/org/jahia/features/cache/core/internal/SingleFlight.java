@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Coalesces the concurrent loads of the same key: the first caller runs the loader while the others wait for its
+ * result, or its exception, instead of running the loader again.
+ * <p>
+ * No lock is held while the loader runs: the callers only meet on a future registered in a concurrent map, and the
+ * future is unregistered as soon as the load completes, so that a later load of the same key starts afresh. A caller
+ * waiting longer than the timeout stops waiting and runs the loader itself, a caller interrupted while waiting does not
+ * run it.
+ *
+ * @author Jerome Blanchard
+ */
+class SingleFlight {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SingleFlight.class);
+
+    private final ConcurrentHashMap<Object, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+
+    @FunctionalInterface
+    interface Loader {
+        Object load() throws Throwable;
+    }
+
+    /**
+     * @param key           key of the load, equal keys are coalesced
+     * @param timeoutMillis maximum time to wait for the load of another caller before loading, zero to always load
+     * @return the value loaded by this caller or by a concurrent one
+     * @throws InterruptedException if interrupted while waiting for the load of another caller, the interrupted status
+     *                              being kept for the callers that wrap the exception
+     * @throws Throwable            the exception thrown by the loader
+     */
+    Object load(Object key, Loader loader, long timeoutMillis) throws Throwable {
+        if (timeoutMillis <= 0) {
+            return loader.load();
+        }
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> leader = flights.putIfAbsent(key, flight);
+        if (leader == null) {
+            try {
+                Object value = loader.load();
+                flight.complete(value);
+                return value;
+            } catch (Throwable t) {
+                flight.completeExceptionally(t);
+                throw t;
+            } finally {
+                flights.remove(key, flight);
+            }
+        }
+        try {
+            return leader.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } catch (TimeoutException e) {
+            LOGGER.warn("Concurrent load of key: {} still running after {}ms, loading it again", key, timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+        return loader.load();
+    }
+
+    /**
+     * @return the number of loads currently running
+     */
+    int inFlight() {
+        return flights.size();
+    }
+}
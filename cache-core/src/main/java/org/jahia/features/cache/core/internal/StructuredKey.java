@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import java.util.Arrays;
+
+/**
+ * Cache key of an invocation holding the name of the class declaring the method and the arguments of its key
+ * parameters, compared with their <code>equals</code> methods, arrays by content. The hash code is computed once, so
+ * the in-memory engines of the default provider find the entry without building, digesting nor comparing any string.
+ * <p>
+ * The string form is the digest {@link CacheKeyGenerator} computes from the same components, used as the key by the
+ * providers only storing String keys, by the disk overflow and by the cluster wide load locks. The arguments must not be
+ * modified once the key is built.
+ *
+ * @author Jerome Blanchard
+ */
+final class StructuredKey {
+
+    private static final Object[] NO_COMPONENTS = new Object[0];
+
+    private final String prefix;
+    private final Object[] components;
+    private final int hash;
+    private String digest;
+
+    private StructuredKey(String prefix, Object[] components) {
+        this.prefix = prefix;
+        this.components = components;
+        this.hash = 31 * prefix.hashCode() + Arrays.deepHashCode(components);
+    }
+
+    /**
+     * @param prefix        the name of the class declaring the method
+     * @param keyParameters the indexes of the parameters making the key, see
+     *                      {@link CacheKeyGenerator#keyParameters(java.lang.reflect.Method, Class)}
+     * @param args          the method arguments, held as is when every parameter is part of the key
+     */
+    static StructuredKey of(String prefix, int[] keyParameters, Object[] args) {
+        if (args == null || keyParameters.length == 0) {
+            return new StructuredKey(prefix, NO_COMPONENTS);
+        }
+        if (keyParameters.length == args.length) {
+            return new StructuredKey(prefix, args);
+        }
+        Object[] components = new Object[keyParameters.length];
+        for (int i = 0; i < keyParameters.length; i++) {
+            components[i] = args[keyParameters[i]];
+        }
+        return new StructuredKey(prefix, components);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof StructuredKey other && hash == other.hash && prefix.equals(other.prefix)
+                && Arrays.deepEquals(components, other.components);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        // Racy but idempotent, the digest is the same whichever thread computes it
+        String result = digest;
+        if (result == null) {
+            result = CacheKeyGenerator.hashKey(prefix, components);
+            digest = result;
+        }
+        return result;
+    }
+}
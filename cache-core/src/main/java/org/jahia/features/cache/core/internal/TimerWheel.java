@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel scheduling entry expirations in O(1).
+ * Each level is an array of buckets (circular doubly linked lists of nodes) covering a power of two span of time:
+ * about one second per bucket on the first level, then one minute, one hour, one day and finally a single
+ * overflow bucket. When the wheel advances, the buckets whose time elapsed are emptied: expired nodes are handed
+ * to the expiration callback and the others are rescheduled on a finer level.
+ * <p>
+ * This class is not thread safe, callers are expected to hold the lock of the owning cache or segment.
+ *
+ * @author Jerome Blanchard
+ */
+class TimerWheel<N extends TimerWheel.Timer> {
+
+    static final int[] BUCKETS = { 64, 64, 32, 4, 1 };
+    // Bucket spans in milliseconds: 2^10 (1.02s), 2^16 (1.09m), 2^22 (1.17h), 2^27 (1.55d), 2^29 (6.2d)
+    static final int[] SHIFT = { 10, 16, 22, 27, 29 };
+    static final long[] SPANS = { 1L << 10, 1L << 16, 1L << 22, 1L << 27, 1L << 29, 1L << 29 };
+
+    /**
+     * Node scheduled in the wheel, linked in the circular list of its bucket while scheduled.
+     */
+    static class Timer {
+        long expiresAt = Long.MAX_VALUE;
+        Timer prevInTimer;
+        Timer nextInTimer;
+    }
+
+    private final Timer[][] wheel;
+    private long time;
+
+    TimerWheel(long now) {
+        this.time = now;
+        this.wheel = new Timer[BUCKETS.length][];
+        for (int i = 0; i < BUCKETS.length; i++) {
+            wheel[i] = new Timer[BUCKETS[i]];
+            for (int j = 0; j < BUCKETS[i]; j++) {
+                Timer sentinel = new Timer();
+                sentinel.prevInTimer = sentinel;
+                sentinel.nextInTimer = sentinel;
+                wheel[i][j] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Schedules the node according to its expiration time, nodes that never expire are ignored.
+     */
+    void schedule(N node) {
+        link(node);
+    }
+
+    /**
+     * Removes the node from the wheel if it is scheduled.
+     */
+    void deschedule(N node) {
+        if (node.nextInTimer != null) {
+            node.nextInTimer.prevInTimer = node.prevInTimer;
+            node.prevInTimer.nextInTimer = node.nextInTimer;
+            node.nextInTimer = null;
+            node.prevInTimer = null;
+        }
+    }
+
+    private void link(Timer node) {
+        if (node.expiresAt == Long.MAX_VALUE) {
+            return;
+        }
+        Timer sentinel = findBucket(node.expiresAt);
+        node.nextInTimer = sentinel;
+        node.prevInTimer = sentinel.prevInTimer;
+        sentinel.prevInTimer.nextInTimer = node;
+        sentinel.prevInTimer = node;
+    }
+
+    /**
+     * Advances the wheel to the given time, handing every node expired in the meantime to the callback.
+     */
+    void advance(long now, Consumer<N> expired) {
+        long previous = time;
+        if (now <= previous) {
+            return;
+        }
+        time = now;
+        for (int i = 0; i < SHIFT.length; i++) {
+            long previousTicks = previous >>> SHIFT[i];
+            long currentTicks = now >>> SHIFT[i];
+            if (currentTicks - previousTicks <= 0L) {
+                break;
+            }
+            expire(i, previousTicks, currentTicks - previousTicks, now, expired);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void expire(int level, long previousTicks, long delta, long now, Consumer<N> expired) {
+        Timer[] buckets = wheel[level];
+        int mask = buckets.length - 1;
+        int steps = (int) Math.min(delta + 1, buckets.length);
+        int start = (int) (previousTicks & mask);
+        for (int i = start; i < start + steps; i++) {
+            Timer sentinel = buckets[i & mask];
+            Timer node = sentinel.nextInTimer;
+            sentinel.prevInTimer = sentinel;
+            sentinel.nextInTimer = sentinel;
+            while (node != sentinel) {
+                Timer next = node.nextInTimer;
+                node.prevInTimer = null;
+                node.nextInTimer = null;
+                if (node.expiresAt <= now) {
+                    expired.accept((N) node);
+                } else {
+                    link(node);
+                }
+                node = next;
+            }
+        }
+    }
+
+    private Timer findBucket(long expiresAt) {
+        // Already expired nodes go to the current bucket, to be collected on the next tick
+        long target = Math.max(expiresAt, time);
+        long duration = target - time;
+        int length = wheel.length - 1;
+        for (int i = 0; i < length; i++) {
+            if (duration < SPANS[i + 1]) {
+                long ticks = target >>> SHIFT[i];
+                return wheel[i][(int) (ticks & (wheel[i].length - 1))];
+            }
+        }
+        return wheel[length][0];
+    }
+}
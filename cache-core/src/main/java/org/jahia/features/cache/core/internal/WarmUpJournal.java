@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Journal of the hottest invocations of the <code>@CacheResult</code> methods, used to warm up the caches after a
+ * restart without having to serialize the cached values.
+ * For each cache, the interceptors record the invocations with their arguments and count their hits, only twice the
+ * number of kept keys are tracked: when full, the least used half is forgotten. The journal file holds the hottest
+ * invocations of each cache with their serialized arguments, invocations whose arguments are not serializable are
+ * not recorded, so that their arguments are not retained, or skipped when written. On startup the journal is loaded and its invocations are replayed, hottest first, through the caching
+ * proxy of the service declaring their method, which computes and caches the results with the original loaders.
+ *
+ * @author Jerome Blanchard
+ */
+class WarmUpJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WarmUpJournal.class);
+
+    private static final int MAGIC = 0x574a524e;
+    private static final int VERSION = 1;
+
+    private final Path file;
+    private final int keysPerCache;
+    private final Map<String, Map<Object, Hit>> caches = new ConcurrentHashMap<>();
+    private final List<Invocation> pending = new ArrayList<>();
+
+    WarmUpJournal(Path file, int keysPerCache) {
+        this.file = file;
+        this.keysPerCache = keysPerCache;
+    }
+
+    /**
+     * Records an invocation of a cached method, unless one of its arguments is not serializable.
+     */
+    void record(String cacheName, Object key, Method method, Object[] args) {
+        Map<Object, Hit> hits = caches.computeIfAbsent(cacheName, name -> new ConcurrentHashMap<>());
+        Hit hit = hits.get(key);
+        if (hit != null) {
+            hit.count.incrementAndGet();
+            return;
+        }
+        if (!isSerializable(args)) {
+            return;
+        }
+        if (hits.size() >= keysPerCache * 2) {
+            trim(hits);
+        }
+        hits.putIfAbsent(key, new Hit(method, (args != null) ? args.clone() : new Object[0]));
+    }
+
+    /**
+     * @return the hottest recorded invocations of the cache, hottest first
+     */
+    List<Invocation> hottest(String cacheName) {
+        Map<Object, Hit> hits = caches.getOrDefault(cacheName, Map.of());
+        return hits.values().stream()
+                .map(hit -> new Invocation(cacheName, hit))
+                .sorted(Comparator.comparingLong((Invocation invocation) -> invocation.hits).reversed())
+                .limit(keysPerCache)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Writes the hottest invocations of every cache to the journal file.
+     *
+     * @return the number of invocations written
+     */
+    int write() throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        int count = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (String cacheName : caches.keySet()) {
+                for (Invocation invocation : hottest(cacheName)) {
+                    byte[] args = invocation.serializeArguments();
+                    if (args == null) {
+                        continue;
+                    }
+                    out.writeBoolean(true);
+                    out.writeUTF(invocation.cacheName);
+                    out.writeUTF(invocation.className);
+                    out.writeUTF(invocation.methodName);
+                    out.writeInt(invocation.parameterTypes.length);
+                    for (String parameterType : invocation.parameterTypes) {
+                        out.writeUTF(parameterType);
+                    }
+                    out.writeLong(invocation.hits);
+                    out.writeInt(args.length);
+                    out.write(args);
+                    count++;
+                }
+            }
+            out.writeBoolean(false);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    /**
+     * Loads the journal file, its invocations are then pending until replayed.
+     *
+     * @return the number of invocations loaded
+     */
+    synchronized int load() throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return 0;
+        }
+        List<Invocation> loaded = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOGGER.warn("Ignoring warm-up journal {} of unknown format", file);
+                return 0;
+            }
+            while (in.readBoolean()) {
+                String cacheName = in.readUTF();
+                String className = in.readUTF();
+                String methodName = in.readUTF();
+                String[] parameterTypes = new String[in.readInt()];
+                for (int i = 0; i < parameterTypes.length; i++) {
+                    parameterTypes[i] = in.readUTF();
+                }
+                long hits = in.readLong();
+                byte[] args = new byte[in.readInt()];
+                in.readFully(args);
+                loaded.add(new Invocation(cacheName, className, methodName, parameterTypes, hits, args));
+            }
+        }
+        loaded.sort(Comparator.comparingLong((Invocation invocation) -> invocation.hits).reversed());
+        pending.addAll(loaded);
+        return loaded.size();
+    }
+
+    /**
+     * Replays, through the given proxy, the pending invocations of methods declared by the interfaces of the proxy.
+     * Invocations are submitted hottest first to the executor, which bounds the concurrency, and are only replayed
+     * once.
+     *
+     * @return the futures of the replayed invocations
+     */
+    List<Future<?>> replay(Object proxy, ClassLoader classLoader, ExecutorService executor) {
+        Map<String, Class<?>> interfaces = new HashMap<>();
+        collectInterfaces(proxy.getClass(), interfaces);
+        List<Invocation> matching = new ArrayList<>();
+        synchronized (this) {
+            for (Iterator<Invocation> iterator = pending.iterator(); iterator.hasNext(); ) {
+                Invocation invocation = iterator.next();
+                if (interfaces.containsKey(invocation.className)) {
+                    matching.add(invocation);
+                    iterator.remove();
+                }
+            }
+        }
+        List<Future<?>> futures = new ArrayList<>(matching.size());
+        for (Invocation invocation : matching) {
+            Class<?> type = interfaces.get(invocation.className);
+            futures.add(executor.submit(() -> invocation.replay(proxy, type, classLoader)));
+        }
+        return futures;
+    }
+
+    private static void collectInterfaces(Class<?> type, Map<String, Class<?>> interfaces) {
+        for (Class<?> iface : type.getInterfaces()) {
+            if (interfaces.putIfAbsent(iface.getName(), iface) == null) {
+                collectInterfaces(iface, interfaces);
+            }
+        }
+    }
+
+    synchronized int pendingSize() {
+        return pending.size();
+    }
+
+    private static boolean isSerializable(Object[] args) {
+        if (args != null) {
+            for (Object arg : args) {
+                if (arg != null && !(arg instanceof Serializable)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void trim(Map<Object, Hit> hits) {
+        synchronized (hits) {
+            if (hits.size() < keysPerCache * 2) {
+                return;
+            }
+            // Counts keep changing, sort a copy of them
+            List<Map.Entry<Object, Long>> counts = new ArrayList<>(hits.size());
+            hits.forEach((key, hit) -> counts.add(Map.entry(key, hit.count.get())));
+            counts.sort(Map.Entry.comparingByValue());
+            for (int i = 0; i < counts.size() - keysPerCache; i++) {
+                hits.remove(counts.get(i).getKey());
+            }
+        }
+    }
+
+    private static final class Hit {
+        private final Method method;
+        private final Object[] args;
+        private final AtomicLong count = new AtomicLong(1);
+
+        private Hit(Method method, Object[] args) {
+            this.method = method;
+            this.args = args;
+        }
+    }
+
+    /**
+     * Invocation of a cached method, either recorded (with its arguments) or loaded from the journal (with its
+     * serialized arguments).
+     */
+    static final class Invocation {
+        private final String cacheName;
+        private final String className;
+        private final String methodName;
+        private final String[] parameterTypes;
+        private final long hits;
+        private final Object[] args;
+        private final byte[] serializedArgs;
+
+        private Invocation(String cacheName, Hit hit) {
+            this.cacheName = cacheName;
+            this.className = hit.method.getDeclaringClass().getName();
+            this.methodName = hit.method.getName();
+            this.parameterTypes = Arrays.stream(hit.method.getParameterTypes()).map(Class::getName).toArray(String[]::new);
+            this.hits = hit.count.get();
+            this.args = hit.args;
+            this.serializedArgs = null;
+        }
+
+        private Invocation(String cacheName, String className, String methodName, String[] parameterTypes, long hits, byte[] serializedArgs) {
+            this.cacheName = cacheName;
+            this.className = className;
+            this.methodName = methodName;
+            this.parameterTypes = parameterTypes;
+            this.hits = hits;
+            this.args = null;
+            this.serializedArgs = serializedArgs;
+        }
+
+        String getCacheName() {
+            return cacheName;
+        }
+
+        String getMethodName() {
+            return methodName;
+        }
+
+        long getHits() {
+            return hits;
+        }
+
+        private byte[] serializeArguments() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(args);
+            } catch (IOException e) {
+                LOGGER.debug("Arguments of {}.{} are not serializable, invocation not journaled", className, methodName, e);
+                return null;
+            }
+            return bytes.toByteArray();
+        }
+
+        private void replay(Object proxy, Class<?> type, ClassLoader classLoader) {
+            try {
+                Method method = type.getMethod(methodName, resolveParameterTypes(classLoader));
+                Object[] arguments;
+                try (ObjectInputStream in = new JavaCacheSerializer.ClassLoaderObjectInputStream(new ByteArrayInputStream(serializedArgs), classLoader)) {
+                    arguments = (Object[]) in.readObject();
+                }
+                method.invoke(proxy, arguments);
+            } catch (InvocationTargetException e) {
+                LOGGER.debug("Replayed invocation of {}.{} failed", className, methodName, e.getCause());
+            } catch (ReflectiveOperationException | IOException | RuntimeException e) {
+                LOGGER.debug("Unable to replay invocation of {}.{}", className, methodName, e);
+            }
+        }
+
+        private Class<?>[] resolveParameterTypes(ClassLoader classLoader) throws ClassNotFoundException {
+            Class<?>[] types = new Class<?>[parameterTypes.length];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = resolve(parameterTypes[i], classLoader);
+            }
+            return types;
+        }
+    }
+
+    private static Class<?> resolve(String name, ClassLoader classLoader) throws ClassNotFoundException {
+        switch (name) {
+            case "boolean": return boolean.class;
+            case "byte": return byte.class;
+            case "char": return char.class;
+            case "short": return short.class;
+            case "int": return int.class;
+            case "long": return long.class;
+            case "float": return float.class;
+            case "double": return double.class;
+            default: return Class.forName(name, false, classLoader);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.Cache;
+import org.jahia.features.cache.api.CacheConfig;
+import org.jahia.features.cache.api.CacheResult;
+import org.jahia.features.cache.api.NegativeResult;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Jerome Blanchard
+ */
+public class CacheInterceptorNegativeResultTest {
+
+    public interface UserService {
+        @CacheResult(cacheName = "users", negativeTimeToLive = 1)
+        String findName(String login);
+
+        @CacheResult(cacheName = "users-optional", negativeTimeToLive = 1)
+        Optional<String> findEmail(String login);
+
+        @CacheResult(cacheName = "users-uncached")
+        String findPhone(String login);
+    }
+
+    public static class UserServiceImpl implements UserService {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public String findName(String login) {
+            calls.incrementAndGet();
+            return null;
+        }
+
+        @Override
+        public Optional<String> findEmail(String login) {
+            calls.incrementAndGet();
+            return Optional.empty();
+        }
+
+        @Override
+        public String findPhone(String login) {
+            calls.incrementAndGet();
+            return null;
+        }
+    }
+
+    private final CacheManagerImpl manager = new CacheManagerImpl();
+
+    private UserService proxy(UserServiceImpl target) {
+        manager.addProvider(new DefaultCacheProvider());
+        return (UserService) Proxy.newProxyInstance(UserService.class.getClassLoader(),
+                new Class[]{ UserService.class }, new CacheInterceptor(target, manager, null, null));
+    }
+
+    @Test
+    void testNullResultCachedUntilNegativeTimeToLive() throws Exception {
+        UserServiceImpl target = new UserServiceImpl();
+        UserService service = proxy(target);
+        assertNull(service.findName("unknown"));
+        assertNull(service.findName("unknown"));
+        assertEquals(1, target.calls.get());
+        Cache<Object> cache = manager.getCache("users", Object.class);
+        String key = CacheKeyGenerator.generate(UserService.class.getMethod("findName", String.class),
+                new Object[]{ "unknown" }, target);
+        assertSame(NegativeResult.INSTANCE, cache.get(key));
+
+        Thread.sleep(1100);
+        assertNull(service.findName("unknown"));
+        assertEquals(2, target.calls.get());
+    }
+
+    @Test
+    void testEmptyOptionalCached() {
+        UserServiceImpl target = new UserServiceImpl();
+        UserService service = proxy(target);
+        assertEquals(Optional.empty(), service.findEmail("unknown"));
+        assertEquals(Optional.empty(), service.findEmail("unknown"));
+        assertEquals(1, target.calls.get());
+    }
+
+    @Test
+    void testNullResultNotCachedByDefault() {
+        UserServiceImpl target = new UserServiceImpl();
+        UserService service = proxy(target);
+        assertNull(service.findPhone("unknown"));
+        assertNull(service.findPhone("unknown"));
+        assertEquals(2, target.calls.get());
+    }
+}
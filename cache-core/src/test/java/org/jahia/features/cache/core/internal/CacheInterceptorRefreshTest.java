@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.CacheAlreadyExistsException;
+import org.jahia.features.cache.api.CacheConfig;
+import org.jahia.features.cache.api.CacheResult;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Jerome Blanchard
+ */
+public class CacheInterceptorRefreshTest {
+
+    public interface QuoteService {
+        @CacheResult(cacheName = "quotes", refreshAfterWrite = 1)
+        String quote(String symbol);
+    }
+
+    public static class QuoteServiceImpl implements QuoteService {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public String quote(String symbol) {
+            return symbol + "-" + calls.incrementAndGet();
+        }
+    }
+
+    public interface PriceService {
+        @CacheResult(cacheName = "prices")
+        String price(String symbol);
+    }
+
+    public static class PriceServiceImpl implements PriceService {
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile boolean failing;
+
+        @Override
+        public String price(String symbol) {
+            int call = calls.incrementAndGet();
+            if (failing) {
+                throw new IllegalStateException("Price feed unavailable");
+            }
+            return symbol + "-" + call;
+        }
+    }
+
+    private static PriceService priceProxy(PriceServiceImpl target, Executor refreshExecutor)
+            throws CacheAlreadyExistsException {
+        CacheManagerImpl manager = new CacheManagerImpl();
+        manager.addProvider(new DefaultCacheProvider());
+        manager.createCache("prices", CacheConfig.create().timeToLive(1).gracePeriod(60).build(), Object.class);
+        return (PriceService) Proxy.newProxyInstance(PriceService.class.getClassLoader(),
+                new Class[]{ PriceService.class }, new CacheInterceptor(target, manager, null, refreshExecutor));
+    }
+
+    private static QuoteService proxy(QuoteServiceImpl target, Executor refreshExecutor) {
+        CacheManagerImpl manager = new CacheManagerImpl();
+        manager.addProvider(new DefaultCacheProvider());
+        return (QuoteService) Proxy.newProxyInstance(QuoteService.class.getClassLoader(),
+                new Class[]{ QuoteService.class }, new CacheInterceptor(target, manager, null, refreshExecutor));
+    }
+
+    @Test
+    void testStaleValueServedWhileRefreshing() throws InterruptedException {
+        QuoteServiceImpl target = new QuoteServiceImpl();
+        // Refreshes run on the calling thread, after the stale value was read
+        QuoteService service = proxy(target, Runnable::run);
+        assertEquals("ACME-1", service.quote("ACME"));
+        assertEquals("ACME-1", service.quote("ACME"));
+        assertEquals(1, target.calls.get());
+
+        Thread.sleep(1100);
+        assertEquals("ACME-1", service.quote("ACME"));
+        assertEquals(2, target.calls.get());
+        assertEquals("ACME-2", service.quote("ACME"));
+        assertEquals(2, target.calls.get());
+    }
+
+    @Test
+    void testRefreshPostponedWhenExecutorSaturated() throws InterruptedException {
+        QuoteServiceImpl target = new QuoteServiceImpl();
+        AtomicInteger rejections = new AtomicInteger();
+        QuoteService service = proxy(target, command -> {
+            if (rejections.getAndIncrement() == 0) {
+                throw new RejectedExecutionException("saturated");
+            }
+            command.run();
+        });
+        assertEquals("ACME-1", service.quote("ACME"));
+        Thread.sleep(1100);
+        assertEquals("ACME-1", service.quote("ACME"));
+        assertEquals(1, target.calls.get());
+        // The rejected refresh is attempted again on the next hit
+        assertEquals("ACME-1", service.quote("ACME"));
+        assertEquals("ACME-2", service.quote("ACME"));
+    }
+
+    @Test
+    void testNoRefreshWithoutExecutor() throws InterruptedException {
+        QuoteServiceImpl target = new QuoteServiceImpl();
+        QuoteService service = proxy(target, null);
+        assertEquals("ACME-1", service.quote("ACME"));
+        Thread.sleep(1100);
+        assertEquals("ACME-1", service.quote("ACME"));
+        assertEquals(1, target.calls.get());
+    }
+
+    @Test
+    void testStaleValueServedWhileRevalidating() throws Exception {
+        PriceServiceImpl target = new PriceServiceImpl();
+        PriceService service = priceProxy(target, Runnable::run);
+        assertEquals("ACME-1", service.price("ACME"));
+        Thread.sleep(1100);
+        // Expired but within its grace period, the value is served and reloaded in the background
+        assertEquals("ACME-1", service.price("ACME"));
+        assertEquals(2, target.calls.get());
+        assertEquals("ACME-2", service.price("ACME"));
+    }
+
+    @Test
+    void testStaleValueServedOnError() throws Exception {
+        PriceServiceImpl target = new PriceServiceImpl();
+        PriceService service = priceProxy(target, null);
+        assertEquals("ACME-1", service.price("ACME"));
+        Thread.sleep(1100);
+        target.failing = true;
+        assertEquals("ACME-1", service.price("ACME"));
+        target.failing = false;
+        // Without refresh executor the stale value is reloaded before being served
+        assertEquals("ACME-3", service.price("ACME"));
+    }
+}
@@ -23,8 +23,11 @@ import org.mockito.MockitoAnnotations;
 
 import java.lang.reflect.Proxy;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -43,6 +46,12 @@ public class CacheInterceptorTest {
     @Mock
     private Cache<Object> cacheBean;
 
+    @Mock
+    private Cache<Object> cacheCluster;
+
+    @Mock
+    private CacheLoadLock loadLock;
+
     private TestServiceAnnotatedInterface testServiceAnnotatedInterface;
     private TestServiceAnnotatedInterface proxyTestServiceAnnotatedInterface;
 
@@ -57,6 +66,9 @@ public class CacheInterceptorTest {
 
         when(cacheManager.getCache(eq("test-cache-interface"), eq(Object.class))).thenReturn(cacheInterface);
         when(cacheManager.getCache(eq("test-cache-bean"), eq(Object.class))).thenReturn(cacheBean);
+        when(cacheManager.getCache(eq("test-cache-cluster"), eq(Object.class))).thenReturn(cacheCluster);
+        when(cacheCluster.getName()).thenReturn("test-cache-cluster");
+        when(cacheCluster.getLoadLock()).thenReturn(loadLock);
 
         proxyTestServiceAnnotatedInterface = (TestServiceAnnotatedInterface) Proxy.newProxyInstance(
             TestServiceAnnotatedInterface.class.getClassLoader(),
@@ -109,8 +121,8 @@ public class CacheInterceptorTest {
 
     @Test
     void testCacheResult() throws Exception {
-        when(cacheInterface.get(any(String.class))).thenReturn(null);
-        when(cacheBean.get(any(String.class))).thenReturn(null);
+        when(cacheInterface.getEntry(any(String.class))).thenReturn(null);
+        when(cacheBean.getEntry(any(String.class))).thenReturn(null);
 
         String resultInterface = proxyTestServiceAnnotatedInterface.getValue("test-key");
         String expectedGeneratedKeyInterface = CacheKeyGenerator.generate(
@@ -119,7 +131,7 @@ public class CacheInterceptorTest {
         );
 
         verify(cacheManager).getCache("test-cache-interface", Object.class);
-        verify(cacheInterface).get(eq(expectedGeneratedKeyInterface));
+        verify(cacheInterface).getEntry(eq(expectedGeneratedKeyInterface));
         verify(cacheInterface).put(eq(expectedGeneratedKeyInterface), eq(resultInterface));
 
         String resultBean = proxyTestServiceAnnotatedBean.getValue("test-key");
@@ -129,14 +141,46 @@ public class CacheInterceptorTest {
         );
 
         verify(cacheManager).getCache("test-cache-bean", Object.class);
-        verify(cacheBean).get(eq(expectedGeneratedKeyBean));
+        verify(cacheBean).getEntry(eq(expectedGeneratedKeyBean));
         verify(cacheBean).put(eq(expectedGeneratedKeyBean), eq(resultBean));
     }
 
+    @Test
+    void testCacheResultLoadedByAnotherNode() throws Exception {
+        String key = CacheKeyGenerator.generate(
+            TestServiceAnnotatedInterface.class.getMethod("getClusteredValue", String.class),
+            new Object[]{"test-key"}, testServiceAnnotatedInterface
+        );
+        // Missing on the first lookup, then cached by the node that held the lock meanwhile
+        when(cacheCluster.getEntry(key)).thenReturn(null, new CacheEntry<>("value-from-other-node"));
+        when(loadLock.tryLock(eq(key), anyLong(), anyLong())).thenReturn(true);
+
+        assertEquals("value-from-other-node", proxyTestServiceAnnotatedInterface.getClusteredValue("test-key"));
+        verify(loadLock).unlock(key);
+        verify(cacheCluster, never()).put(any(String.class), any());
+    }
+
+    @Test
+    void testCacheResultLoadedLocallyWithoutLoadLock() throws Exception {
+        String key = CacheKeyGenerator.generate(
+            TestServiceAnnotatedInterface.class.getMethod("getClusteredValue", String.class),
+            new Object[]{"test-key"}, testServiceAnnotatedInterface
+        );
+        when(cacheCluster.getEntry(key)).thenReturn(null);
+        when(loadLock.tryLock(eq(key), anyLong(), anyLong())).thenReturn(false);
+
+        assertEquals("value-for-test-key", proxyTestServiceAnnotatedInterface.getClusteredValue("test-key"));
+        verify(cacheCluster).put(key, "value-for-test-key");
+        verify(loadLock, never()).unlock(any(String.class));
+    }
+
     public interface TestServiceAnnotatedInterface {
         @CacheResult(cacheName = "test-cache-interface")
         String getValue(String key);
 
+        @CacheResult(cacheName = "test-cache-cluster", distributedLoad = true, loadTimeout = 100)
+        String getClusteredValue(String key);
+
         @CacheInvalidate(cacheName = "test-cache-interface")
         void invalidateValue(String key);
 
@@ -150,6 +194,11 @@ public class CacheInterceptorTest {
             return "value-for-" + key;
         }
 
+        @Override
+        public String getClusteredValue(String key) {
+            return "value-for-" + key;
+        }
+
         @Override
         public void invalidateValue(String key) {
         }
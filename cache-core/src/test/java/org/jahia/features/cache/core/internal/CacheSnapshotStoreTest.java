@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.Cache;
+import org.jahia.features.cache.api.CacheConfig;
+import org.jahia.features.cache.api.CacheEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Jerome Blanchard
+ */
+public class CacheSnapshotStoreTest {
+
+    private Path directory;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("cache-snapshot");
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        executor.shutdownNow();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    void testWriteAndRestore() throws Exception {
+        CacheSnapshotStore store = new CacheSnapshotStore(directory, new JavaCacheSerializer());
+        CacheConfig config = CacheConfig.create().timeToLive(60).maxEntries(10000).build();
+        InMemoryCache<String> cache = new InMemoryCache<>("test/cache", config);
+        for (int i = 0; i < 5000; i++) {
+            cache.put("key" + i, "value" + i);
+        }
+        long created = cache.getEntry("key0").created();
+        assertEquals(5000, store.write(cache));
+        assertTrue(store.exists("test/cache"));
+
+        ConcurrentInMemoryCache<String> restored = new ConcurrentInMemoryCache<>("test/cache", config);
+        restored.put("key1", "fresh");
+        assertEquals(4999, store.restore(restored, String.class, executor));
+        assertEquals(5000, restored.size());
+        assertEquals("value4999", restored.get("key4999"));
+        assertEquals("fresh", restored.get("key1"));
+        assertEquals(created, restored.getEntry("key0").created());
+        assertFalse(store.exists("test/cache"));
+    }
+
+    @Test
+    void testExpiredEntriesAreDropped() throws Exception {
+        CacheSnapshotStore store = new CacheSnapshotStore(directory, new JavaCacheSerializer());
+        CacheConfig config = CacheConfig.create().timeToLive(1).maxEntries(10).build();
+        InMemoryCache<String> cache = new InMemoryCache<>("testCache", config);
+        cache.put("key1", "value1");
+        store.write(cache);
+        Thread.sleep(1100);
+        InMemoryCache<String> restored = new InMemoryCache<>("testCache", config);
+        assertEquals(0, store.restore(restored, String.class, executor));
+        assertEquals(0, restored.size());
+    }
+
+    @Test
+    void testOffHeapCacheSnapshot() throws Exception {
+        CacheSnapshotStore store = new CacheSnapshotStore(directory, new JavaCacheSerializer());
+        CacheConfig config = CacheConfig.create().timeToLive(60).maxEntries(100).build();
+        OffHeapStore memory = new OffHeapStore(OffHeapStore.SLAB_SIZE);
+        OffHeapCache<String> cache = new OffHeapCache<>("testCache", config, String.class, memory, new JavaCacheSerializer());
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, "value" + i);
+        }
+        assertEquals(100, store.write(cache));
+        cache.clear();
+        assertEquals(100, store.restore(cache, String.class, executor));
+        assertEquals("value42", cache.get("key42"));
+    }
+
+    @Test
+    void testWarmRestartOfCacheManager() throws Exception {
+        Map<String, Object> properties = Map.of(CacheManagerImpl.SNAPSHOT_PROPERTY, "true",
+                CacheManagerImpl.SNAPSHOT_DIRECTORY_PROPERTY, directory.toString());
+        CacheManagerImpl manager = new CacheManagerImpl();
+        manager.addProvider(new DefaultCacheProvider());
+        manager.activate(properties);
+        Cache<String> cache = manager.createCache("testCache", CacheConfig.create().build(), String.class);
+        cache.put("key1", "value1");
+        manager.deactivate();
+
+        CacheManagerImpl restarted = new CacheManagerImpl();
+        restarted.addProvider(new DefaultCacheProvider());
+        restarted.activate(properties);
+        Cache<String> restored = restarted.createCache("testCache", CacheConfig.create().build(), String.class);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (restored.get("key1") == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("value1", restored.get("key1"));
+        restarted.deactivate();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.Cache;
+import org.jahia.features.cache.api.CacheKeys;
+import org.jahia.features.cache.api.CacheOperations;
+import org.jahia.features.cache.api.CacheResult;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Jerome Blanchard
+ */
+public class CacheWhiteboardTest {
+
+    public interface GreetingService {
+        @CacheResult(cacheName = "greetings")
+        String greet(String name, int times);
+    }
+
+    public static class GreetingServiceImpl implements GreetingService {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public String greet(String name, int times) {
+            calls.incrementAndGet();
+            return ("Hello " + name + " ").repeat(times).trim();
+        }
+    }
+
+    /**
+     * Decorator as generated by the cache-processor module.
+     */
+    public static final class GreetingServiceDecorator implements GreetingService {
+        private static final Method METHOD_0 = CacheOperations.method(GreetingService.class, "greet", String.class,
+                int.class);
+
+        private final GreetingServiceImpl target;
+        private final CacheOperations operations;
+
+        public GreetingServiceDecorator(GreetingServiceImpl target, CacheOperations operations) {
+            this.target = target;
+            this.operations = operations;
+        }
+
+        @Override
+        public String greet(final String arg0, final int arg1) {
+            String key = CacheKeys.digest(new StringBuilder().append(GreetingService.class.getName() + "|")
+                    .append(arg0).append('|').append(arg1).append('|').toString());
+            try {
+                return operations.getResult(METHOD_0, key, new CacheOperations.Invocation<String>() {
+                    @Override
+                    public String proceed() {
+                        return target.greet(arg0, arg1);
+                    }
+
+                    @Override
+                    public Object[] arguments() {
+                        return new Object[]{ arg0, arg1 };
+                    }
+                });
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new java.lang.reflect.UndeclaredThrowableException(t);
+            }
+        }
+    }
+
+    @Test
+    void testGeneratedDecoratorUsesInterceptorOperations() throws Exception {
+        CacheManagerImpl manager = new CacheManagerImpl();
+        manager.addProvider(new DefaultCacheProvider());
+        GreetingServiceImpl target = new GreetingServiceImpl();
+        Object decorator = CacheWhiteboard.createDecorator(target, new CacheInterceptor(target, manager));
+        GreetingService service = assertInstanceOf(GreetingServiceDecorator.class, decorator);
+
+        assertEquals("Hello Ada Hello Ada", service.greet("Ada", 2));
+        assertEquals("Hello Ada Hello Ada", service.greet("Ada", 2));
+        assertEquals(1, target.calls.get());
+        // The decorator key is the one of the runtime proxy
+        Cache<Object> cache = manager.getCache("greetings", Object.class);
+        String key = CacheKeyGenerator.generate(GreetingService.class.getMethod("greet", String.class, int.class),
+                new Object[]{ "Ada", 2 }, target);
+        assertEquals("Hello Ada Hello Ada", cache.get(key));
+    }
+
+    @Test
+    void testNoDecorator() {
+        Runnable service = () -> { };
+        assertNull(CacheWhiteboard.createDecorator(service, new CacheInterceptor(service, new CacheManagerImpl())));
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.Cache;
+import org.jahia.features.cache.api.CacheConfig;
+import org.jahia.features.cache.api.LongKeyCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Jerome Blanchard
+ */
+public class ConcurrentInMemoryCacheTest {
+
+    @Test
+    void testPutAndGet() {
+        CacheConfig config = CacheConfig.create().timeToLive(1).maxEntries(2).build();
+        ConcurrentInMemoryCache<String> cache = new ConcurrentInMemoryCache<>("testCache", config);
+        assertNull(cache.put("key1", "value1"));
+        assertEquals("value1", cache.get("key1"));
+        assertEquals("value1", cache.put("key1", "value2").value());
+        assertEquals("value2", cache.get("key1"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testDeleteAndClear() {
+        CacheConfig config = CacheConfig.create().timeToLive(10).maxEntries(10).build();
+        ConcurrentInMemoryCache<String> cache = new ConcurrentInMemoryCache<>("testCache", config);
+        cache.put("key1", "value1");
+        cache.put("key2", "value2");
+        assertEquals("value1", cache.delete("key1").value());
+        assertNull(cache.get("key1"));
+        assertNull(cache.delete("key1"));
+        cache.clear();
+        assertEquals(0, cache.size());
+        cache.put("key3", "value3");
+        assertEquals("value3", cache.get("key3"));
+    }
+
+    @Test
+    void testObjectKeys() {
+        record ProductKey(String id, int version) {
+        }
+        CacheConfig config = CacheConfig.create().timeToLive(10).maxEntries(10).build();
+        ConcurrentInMemoryCache<String> cache = new ConcurrentInMemoryCache<>("testCache", config);
+        assertNull(cache.put(new ProductKey("p1", 1), "value1"));
+        cache.put("key2", "value2");
+        assertEquals("value1", cache.getEntry(new ProductKey("p1", 1)).value());
+        assertNull(cache.getEntry(new ProductKey("p1", 2)));
+        // Only String keys are handed to the snapshots
+        List<String> keys = new ArrayList<>();
+        cache.forEach((key, entry) -> keys.add(key));
+        assertEquals(List.of("key2"), keys);
+        assertEquals("value1", cache.delete(new ProductKey("p1", 1)).value());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testMaxEntriesEviction() {
+        CacheConfig config = CacheConfig.create().timeToLive(100).maxEntries(2).build();
+        ConcurrentInMemoryCache<String> cache = new ConcurrentInMemoryCache<>("testCache", config);
+        cache.put("key1", "value1");
+        cache.put("key2", "value2");
+        cache.get("key1"); // key2 becomes the least recently used
+        cache.put("key3", "value3");
+        assertNotNull(cache.get("key1"));
+        assertNull(cache.get("key2"));
+        assertNotNull(cache.get("key3"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void testBufferedReadsAreReplayedBeforeEviction() {
+        CacheConfig config = CacheConfig.create().timeToLive(100).maxEntries(4).build();
+        ConcurrentInMemoryCache<String> cache = new ConcurrentInMemoryCache<>("testCache", config);
+        for (int i = 0; i < 4; i++) {
+            cache.put("key" + i, "value" + i);
+        }
+        // More hits than the read buffer can hold: some are dropped, the recency of key0 must still be recorded
+        for (int i = 0; i < ConcurrentInMemoryCache.READ_BUFFER_SIZE * 4; i++) {
+            cache.get("key0");
+        }
+        cache.put("key4", "value4");
+        assertNotNull(cache.get("key0"));
+        assertNull(cache.get("key1"));
+        assertEquals(4, cache.size());
+    }
+
+    @Test
+    void testTinyLfuResistsScan() {
+        CacheConfig lruConfig = CacheConfig.create().timeToLive(100).maxEntries(100).build();
+        CacheConfig tinyLfuConfig = CacheConfig.create().timeToLive(100).maxEntries(100)
+                .evictionPolicy(CacheConfig.EvictionPolicy.TINY_LFU).build();
+        assertEquals(0, hotKeysSurvivingScan(new ConcurrentInMemoryCache<>("lruCache", lruConfig)));
+        assertTrue(hotKeysSurvivingScan(new ConcurrentInMemoryCache<>("tinyLfuCache", tinyLfuConfig)) >= 45,
+                "Most of the frequently used keys should survive a scan");
+    }
+
+    private int hotKeysSurvivingScan(ConcurrentInMemoryCache<String> cache) {
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 50; i++) {
+                if (cache.get("hot" + i) == null) {
+                    cache.put("hot" + i, "value" + i);
+                }
+            }
+        }
+        for (int i = 0; i < 10000; i++) {
+            cache.put("scan" + i, "value" + i);
+        }
+        int survivors = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.get("hot" + i) != null) {
+                survivors++;
+            }
+        }
+        assertTrue(cache.size() <= 100);
+        return survivors;
+    }
+
+    @Test
+    void testFrequencySketch() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        assertEquals(0, sketch.frequency("key".hashCode()));
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("key".hashCode());
+        }
+        assertEquals(5, sketch.frequency("key".hashCode()));
+        for (int i = 0; i < 20; i++) {
+            sketch.increment("key".hashCode());
+        }
+        assertEquals(15, sketch.frequency("key".hashCode()), "Counters saturate at 15");
+        // Aging: once the sample size is reached every counter is halved
+        for (int i = 0; i < 640; i++) {
+            sketch.increment(("other" + i).hashCode());
+        }
+        assertTrue(sketch.frequency("key".hashCode()) <= 8);
+    }
+
+    @Test
+    void testTTLExpiration() throws InterruptedException {
+        CacheConfig config = CacheConfig.create().timeToLive(1).maxEntries(50).build();
+        ConcurrentInMemoryCache<String> cache = new ConcurrentInMemoryCache<>("testCache", config);
+        cache.put("key1", "value1");
+        Thread.sleep(1100);
+        assertNull(cache.get("key1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testStaleEntryKeptForGracePeriod() throws InterruptedException {
+        CacheConfig config = CacheConfig.create().timeToLive(1).gracePeriod(1).maxEntries(50).build();
+        ConcurrentInMemoryCache<String> cache = new ConcurrentInMemoryCache<>("testCache", config);
+        cache.put("key1", "value1");
+        assertNull(cache.getStaleEntry("key1"));
+        Thread.sleep(1100);
+        assertNull(cache.get("key1"));
+        assertEquals("value1", cache.getStaleEntry("key1").value());
+        Thread.sleep(1000);
+        assertNull(cache.getStaleEntry("key1"));
+        cache.cleanUp();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testMaxWeightEviction() {
+        CacheConfig config = CacheConfig.create().timeToLive(100).maxWeight(1000).maxEntryWeight(100)
+                .weigher((key, value) -> ((String) value).length()).build();
+        ConcurrentInMemoryCache<String> cache = new ConcurrentInMemoryCache<>("testCache", config);
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, "x".repeat(50));
+        }
+        assertTrue(cache.weightedSize() <= 1000, "Total weight should not exceed maxWeight");
+        assertTrue(cache.size() <= 20);
+        assertNotNull(cache.get("key99"));
+        cache.put("key99", "x".repeat(101));
+        assertNull(cache.get("key99"), "Entries above maxEntryWeight should not be cached");
+    }
+
+    @Test
+    void testProactiveExpiration() throws InterruptedException {
+        CacheConfig config = CacheConfig.create().timeToLive(1).maxEntries(500).build();
+        ConcurrentInMemoryCache<String> cache = new ConcurrentInMemoryCache<>("testCache", config);
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, "value" + i);
+        }
+        assertEquals(100, cache.size());
+        Thread.sleep(2100);
+        cache.cleanUp();
+        assertEquals(0, cache.size(), "Expired entries should be removed without being read");
+    }
+
+    @Test
+    void testScheduledMaintenance() throws InterruptedException {
+        CacheConfig config = CacheConfig.create().timeToLive(1).maxEntries(500).build();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            ConcurrentInMemoryCache<String> cache = new ConcurrentInMemoryCache<>("testCache", config, scheduler);
+            for (int i = 0; i < 100; i++) {
+                cache.put("key" + i, "value" + i);
+            }
+            Thread.sleep(3500);
+            assertEquals(0, cache.size(), "Idle cache should be cleaned by the maintenance scheduler");
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    void testTimerWheel() {
+        List<ConcurrentInMemoryCache.Node<String>> expired = new ArrayList<>();
+        TimerWheel<ConcurrentInMemoryCache.Node<String>> wheel = new TimerWheel<>(0L);
+        long[] expirations = { 500L, 3_000L, 120_000L, 7_200_000L, 1_000_000_000L };
+        List<ConcurrentInMemoryCache.Node<String>> nodes = new ArrayList<>();
+        for (long expiresAt : expirations) {
+            ConcurrentInMemoryCache.Node<String> node = new ConcurrentInMemoryCache.Node<>(null, null);
+            node.expiresAt = expiresAt;
+            wheel.schedule(node);
+            nodes.add(node);
+        }
+        wheel.advance(2_000L, expired::add);
+        assertEquals(List.of(nodes.get(0)), expired);
+        wheel.advance(130_000L, expired::add);
+        assertEquals(nodes.subList(0, 3), expired);
+        wheel.deschedule(nodes.get(3));
+        wheel.advance(10_000_000L, expired::add);
+        assertEquals(nodes.subList(0, 3), expired);
+        wheel.advance(1_100_000_000L, expired::add);
+        assertEquals(4, expired.size());
+        assertSame(nodes.get(4), expired.get(3));
+    }
+
+    @Test
+    void testBoundedUnderConcurrentWrites() throws InterruptedException {
+        CacheConfig config = CacheConfig.create().timeToLive(100).maxEntries(1000).build();
+        ConcurrentInMemoryCache<String> cache = new ConcurrentInMemoryCache<>("testCache", config);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 8; i++) {
+            int thread = i;
+            executor.submit(() -> {
+                for (int j = 0; j < 5000; j++) {
+                    String key = "key" + ((thread * 5000 + j) % 3000);
+                    cache.put(key, "value" + j);
+                    cache.get(key);
+                    if (j % 7 == 0) {
+                        cache.delete(key);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        assertTrue(cache.size() <= 1000, "Cache size should never exceed maxEntries");
+    }
+
+    @Test
+    void testTimeToLiveZeroNeverExpiresInEveryEngine() throws InterruptedException {
+        CacheConfig config = CacheConfig.create().timeToLive(0).maxEntries(50).build();
+        DefaultCacheProvider provider = new DefaultCacheProvider();
+        List<Cache<String>> caches = new ArrayList<>();
+        caches.add(provider.createCache("synchronized", config, String.class));
+        provider.activate(Map.of(DefaultCacheProvider.ENGINE_PROPERTY, DefaultCacheProvider.CONCURRENT_ENGINE));
+        caches.add(provider.createCache("concurrent", config, String.class));
+        provider.activate(Map.of(DefaultCacheProvider.STORAGE_PROPERTY, DefaultCacheProvider.OFF_HEAP_STORAGE,
+                DefaultCacheProvider.OFF_HEAP_MAX_MEMORY_PROPERTY, "1"));
+        caches.add(provider.createCache("offheap", config, String.class));
+        LongKeyCache<String> longKeyCache = new LongKeyInMemoryCache<>("longKey", config);
+        try {
+            for (Cache<String> cache : caches) {
+                cache.put("key1", "value1");
+            }
+            longKeyCache.put(1L, "value1");
+            Thread.sleep(50);
+            for (Cache<String> cache : caches) {
+                assertEquals("value1", cache.get("key1"), cache.getName());
+                assertNull(cache.getStaleEntry("key1"), cache.getName());
+            }
+            assertEquals("value1", longKeyCache.get(1L));
+        } finally {
+            provider.deactivate();
+        }
+    }
+
+    @Test
+    void testEngineSelection() {
+        CacheConfig config = CacheConfig.create().build();
+        DefaultCacheProvider provider = new DefaultCacheProvider();
+        assertInstanceOf(InMemoryCache.class, provider.createCache("c1", config, String.class));
+        provider.activate(Map.of(DefaultCacheProvider.ENGINE_PROPERTY, DefaultCacheProvider.CONCURRENT_ENGINE));
+        assertInstanceOf(ConcurrentInMemoryCache.class, provider.createCache("c2", config, String.class));
+        provider.activate(Map.of(DefaultCacheProvider.ENGINE_PROPERTY, "unknown"));
+        assertInstanceOf(InMemoryCache.class, provider.createCache("c3", config, String.class));
+        CacheConfig tinyLfuConfig = CacheConfig.create().evictionPolicy(CacheConfig.EvictionPolicy.TINY_LFU).build();
+        assertInstanceOf(ConcurrentInMemoryCache.class, provider.createCache("c4", tinyLfuConfig, String.class));
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.Cache;
+import org.jahia.features.cache.api.CacheConfig;
+import org.jahia.features.cache.api.CacheEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Jerome Blanchard
+ */
+public class DiskOverflowStoreTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("cache-overflow");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private DiskOverflowStore<String> newStore(long maxSize, long timeToLiveMillis) {
+        return new DiskOverflowStore<>("testCache", directory, maxSize, SEGMENT_SIZE, timeToLiveMillis,
+                new JavaCacheSerializer(), String.class, null, null);
+    }
+
+    @Test
+    void testEvictedEntriesArePromotedBack() {
+        CacheConfig config = CacheConfig.create().timeToLive(10).maxEntries(2).build();
+        InMemoryCache<String> cache = new InMemoryCache<>("testCache", config, newStore(1024 * 1024, 10000));
+        cache.put("key1", "value1");
+        cache.put("key2", "value2");
+        cache.put("key3", "value3");
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.overflowSize());
+        CacheEntry<String> entry = cache.getEntry("key1");
+        assertEquals("value1", entry.value());
+        assertEquals(2, cache.size());
+        // key2 was the least recently used entry, evicted to disk to make room for key1
+        assertEquals(1, cache.overflowSize());
+        assertEquals("value2", cache.get("key2"));
+        assertEquals("value3", cache.get("key3"));
+    }
+
+    @Test
+    void testOverwriteAndDeleteDiscardDiskCopy() {
+        CacheConfig config = CacheConfig.create().timeToLive(10).maxEntries(1).build();
+        InMemoryCache<String> cache = new InMemoryCache<>("testCache", config, newStore(1024 * 1024, 10000));
+        cache.put("key1", "value1");
+        cache.put("key2", "value2");
+        cache.put("key1", "updated");
+        assertEquals("updated", cache.get("key1"));
+        cache.delete("key2");
+        assertEquals(0, cache.overflowSize());
+        assertNull(cache.get("key2"));
+        cache.clear();
+        assertNull(cache.get("key1"));
+        assertEquals(0, cache.overflowSize());
+    }
+
+    @Test
+    void testExpiredEntriesAreNotPromoted() throws InterruptedException {
+        CacheConfig config = CacheConfig.create().timeToLive(1).maxEntries(1).build();
+        InMemoryCache<String> cache = new InMemoryCache<>("testCache", config, newStore(1024 * 1024, 1000));
+        cache.put("key1", "value1");
+        cache.put("key2", "value2");
+        Thread.sleep(1100);
+        assertNull(cache.get("key1"));
+        assertEquals(0, cache.overflowSize());
+    }
+
+    @Test
+    void testAsynchronousSpill() throws Exception {
+        CacheConfig config = CacheConfig.create().timeToLive(10).maxEntries(1).build();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            CountDownLatch blocked = new CountDownLatch(1);
+            scheduler.execute(() -> {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            InMemoryCache<String> cache = new InMemoryCache<>("testCache", config,
+                    newStore(1024 * 1024, 10000), scheduler);
+            cache.put("key1", "value1");
+            cache.put("key2", "value2");
+            cache.put("key3", "value3");
+            // The spills wait for the scheduler, the evicted entries are still served from memory
+            assertEquals(0, cache.overflowSize());
+            assertEquals("value1", cache.get("key1"));
+            cache.delete("key2");
+            blocked.countDown();
+            scheduler.submit(() -> { }).get(5, TimeUnit.SECONDS);
+            // key3 was evicted when key1 came back, key2 was deleted before being written
+            assertEquals(1, cache.overflowSize());
+            assertNull(cache.get("key2"));
+            assertEquals("value3", cache.get("key3"));
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    void testOldestSegmentDroppedWhenFull() {
+        DiskOverflowStore<String> store = newStore(2 * SEGMENT_SIZE, 10000);
+        String value = "x".repeat(1000);
+        for (int i = 0; i < 20; i++) {
+            store.put("key" + i, new CacheEntry<>(value));
+        }
+        assertEquals(2, store.segmentCount());
+        assertTrue(store.size() < 20);
+        assertNull(store.take("key0"));
+        assertEquals(value, store.take("key19").value());
+    }
+
+    @Test
+    void testCompaction() throws IOException {
+        DiskOverflowStore<String> store = newStore(10 * SEGMENT_SIZE, 10000);
+        String value = "x".repeat(1000);
+        for (int i = 0; i < 12; i++) {
+            store.put("key" + i, new CacheEntry<>(value));
+        }
+        int segments = store.segmentCount();
+        for (int i = 0; i < 10; i++) {
+            if (i != 5) {
+                store.remove("key" + i);
+            }
+        }
+        store.compact();
+        assertTrue(store.segmentCount() < segments);
+        assertEquals(3, store.size());
+        assertEquals(value, store.take("key5").value());
+        assertEquals(value, store.take("key11").value());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(store.segmentCount(), files.count());
+        }
+    }
+
+    @Test
+    void testCompactionWithoutTimeToLive() {
+        DiskOverflowStore<String> store = newStore(10 * SEGMENT_SIZE, 0);
+        String value = "x".repeat(1000);
+        for (int i = 0; i < 12; i++) {
+            store.put("key" + i, new CacheEntry<>(value, 0));
+        }
+        int segments = store.segmentCount();
+        for (int i = 0; i < 8; i++) {
+            if (i != 1) {
+                store.remove("key" + i);
+            }
+        }
+        store.compact();
+        // Entries never expire without time to live, however old they are
+        assertTrue(store.segmentCount() < segments);
+        assertEquals(5, store.size());
+        assertEquals(value, store.take("key1").value());
+    }
+
+    @Test
+    void testSegmentSize() {
+        assertEquals(DiskOverflowStore.DEFAULT_SEGMENT_SIZE, DiskOverflowStore.segmentSize(1024L * 1024 * 1024));
+        assertEquals(16 * 1024 * 1024, DiskOverflowStore.segmentSize(64L * 1024 * 1024));
+    }
+
+    @Test
+    void testDiskOverflowSelection() throws InterruptedException {
+        DefaultCacheProvider provider = new DefaultCacheProvider();
+        provider.activate(Map.of(DefaultCacheProvider.DISK_OVERFLOW_PROPERTY, "true",
+                DefaultCacheProvider.DISK_OVERFLOW_DIRECTORY_PROPERTY, directory.toString()));
+        Cache<String> cache = provider.createCache("test/cache", CacheConfig.create().maxEntries(1).build(), String.class);
+        cache.put("key1", "value1");
+        cache.put("key2", "value2");
+        // The evicted entry is spilled by the maintenance thread of the provider
+        long deadline = System.currentTimeMillis() + 5000;
+        while (((InMemoryCache<String>) cache).overflowSize() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, ((InMemoryCache<String>) cache).overflowSize());
+        assertTrue(Files.isDirectory(directory.resolve("test_cache")));
+        assertEquals("value1", cache.get("key1"));
+        provider.deactivate();
+    }
+}
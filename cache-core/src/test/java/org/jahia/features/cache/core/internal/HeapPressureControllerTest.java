@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.CacheConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Jerome Blanchard
+ */
+public class HeapPressureControllerTest {
+
+    private final AtomicReference<Double> usage = new AtomicReference<>(0.5);
+    private final AtomicLong collections = new AtomicLong();
+    private ScheduledExecutorService scheduler;
+    private HeapPressureController controller;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        controller = new HeapPressureController(null, usage::get, collections::get);
+    }
+
+    @AfterEach
+    void tearDown() {
+        controller.stop();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void testShrinkBiggestCacheFirst() {
+        InMemoryCache<String> small = fill(new InMemoryCache<>("small", CacheConfig.create().timeToLive(60).maxEntries(100).build()), 10);
+        InMemoryCache<String> big = fill(new InMemoryCache<>("big", CacheConfig.create().timeToLive(60).maxEntries(100).build()), 100);
+        controller.register(small);
+        controller.register(big);
+        controller.start(scheduler, 0.8, 0.6);
+
+        usage.set(0.9);
+        collect();
+        assertEquals(0.5, big.getCapacityRatio());
+        assertEquals(50, big.size());
+        assertEquals(1.0, small.getCapacityRatio());
+
+        collect();
+        assertEquals(0.25, big.getCapacityRatio());
+        assertEquals(25, big.size());
+        collect();
+        collect();
+        assertEquals(6, big.size());
+        // The big cache now holds fewer entries than the small one
+        collect();
+        assertEquals(0.5, small.getCapacityRatio());
+        assertEquals(10, small.size());
+    }
+
+    @Test
+    void testGrowBackMostShrunkCacheFirst() {
+        InMemoryCache<String> first = fill(new InMemoryCache<>("first", CacheConfig.create().timeToLive(60).maxEntries(100).build()), 100);
+        InMemoryCache<String> second = fill(new InMemoryCache<>("second", CacheConfig.create().timeToLive(60).maxEntries(100).build()), 100);
+        controller.register(first);
+        controller.register(second);
+        controller.start(scheduler, 0.8, 0.6);
+        first.setCapacityRatio(0.25);
+        second.setCapacityRatio(0.5);
+
+        usage.set(0.7);
+        collect();
+        assertEquals(0.25, first.getCapacityRatio());
+        assertEquals(0.5, second.getCapacityRatio());
+
+        usage.set(0.5);
+        collect();
+        assertEquals(0.5, first.getCapacityRatio());
+        collect();
+        collect();
+        collect();
+        assertEquals(1.0, first.getCapacityRatio());
+        assertEquals(1.0, second.getCapacityRatio());
+        assertEquals(25, first.size());
+        fill(first, 100);
+        assertEquals(100, first.size());
+    }
+
+    @Test
+    void testStopRestoresCapacity() {
+        ConcurrentInMemoryCache<String> cache = new ConcurrentInMemoryCache<>("cache", CacheConfig.create().timeToLive(60).maxEntries(100).build());
+        controller.register(cache);
+        controller.start(scheduler, 0.8, 0.6);
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, "value" + i);
+        }
+        usage.set(0.95);
+        collect();
+        assertEquals(0.5, cache.getCapacityRatio());
+        assertTrue(cache.weightedSize() <= 50);
+        controller.stop();
+        assertEquals(1.0, cache.getCapacityRatio());
+    }
+
+    @Test
+    void testOneResizePerCollection() {
+        InMemoryCache<String> cache = fill(new InMemoryCache<>("cache", CacheConfig.create().timeToLive(60).maxEntries(100).build()), 100);
+        controller.register(cache);
+        controller.start(scheduler, 0.8, 0.6);
+
+        usage.set(0.9);
+        collect();
+        assertEquals(0.5, cache.getCapacityRatio());
+        // The usage is not sampled again until the next collection
+        controller.check();
+        controller.check();
+        assertEquals(0.5, cache.getCapacityRatio());
+
+        usage.set(0.5);
+        controller.check();
+        assertEquals(0.5, cache.getCapacityRatio());
+        collect();
+        assertEquals(1.0, cache.getCapacityRatio());
+    }
+
+    @Test
+    void testShrinkCacheWithFewestHitsPerEntry() {
+        InMemoryCache<String> busy = fill(new InMemoryCache<>("busy", CacheConfig.create().timeToLive(60).maxEntries(100).build()), 100);
+        InMemoryCache<String> idle = fill(new InMemoryCache<>("idle", CacheConfig.create().timeToLive(60).maxEntries(100).build()), 60);
+        controller.register(busy);
+        controller.register(idle);
+        controller.start(scheduler, 0.8, 0.6);
+
+        usage.set(0.9);
+        for (int i = 0; i < 100; i++) {
+            busy.get("key" + i);
+        }
+        collect();
+        assertEquals(1.0, busy.getCapacityRatio());
+        assertEquals(0.5, idle.getCapacityRatio());
+        // Without new hits, the biggest cache is shrunk
+        collect();
+        assertEquals(0.5, busy.getCapacityRatio());
+        assertEquals(0.5, idle.getCapacityRatio());
+    }
+
+    private void collect() {
+        collections.incrementAndGet();
+        controller.check();
+    }
+
+    private static InMemoryCache<String> fill(InMemoryCache<String> cache, int count) {
+        for (int i = 0; i < count; i++) {
+            cache.put("key" + i, "value" + i);
+        }
+        return cache;
+    }
+}
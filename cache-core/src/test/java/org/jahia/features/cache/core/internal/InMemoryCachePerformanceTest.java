@@ -1,5 +1,6 @@
 package org.jahia.features.cache.core.internal;
 
+import org.jahia.features.cache.api.Cache;
 import org.jahia.features.cache.api.CacheConfig;
 import org.junit.jupiter.api.Test;
 import java.util.concurrent.*;
@@ -18,7 +19,44 @@ public class InMemoryCachePerformanceTest {
 
     @Test
     void testConcurrentPerformance() throws InterruptedException {
-        InMemoryCache<String> cache = new InMemoryCache<>("perfCache", config);
+        runConcurrent(new InMemoryCache<>("perfCache", config), "Concurrent");
+    }
+
+    @Test
+    void testConcurrentEnginePerformance() throws InterruptedException {
+        runConcurrent(new ConcurrentInMemoryCache<>("perfCache", config), "Concurrent engine");
+    }
+
+    @Test
+    void testReadHeavyPerformance() throws InterruptedException {
+        runReadHeavy(new InMemoryCache<>("perfCache", config), "Read heavy");
+        runReadHeavy(new ConcurrentInMemoryCache<>("perfCache", config), "Read heavy concurrent engine");
+    }
+
+    private void runReadHeavy(Cache<String> cache, String label) throws InterruptedException {
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key" + i, "value" + i);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        AtomicInteger ops = new AtomicInteger();
+        long start = System.nanoTime();
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            executor.submit(() -> {
+                for (int j = 0; j < OPERATIONS_PER_THREAD; j++) {
+                    cache.get("key" + (j % 1000));
+                }
+                ops.addAndGet(OPERATIONS_PER_THREAD);
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(2, TimeUnit.MINUTES);
+        long end = System.nanoTime();
+        double durationSec = (end - start) / 1_000_000_000.0;
+        double opsPerSec = ops.get() / durationSec;
+        LOGGER.info("[" + label + "] Total operations: " + ops.get() + ", Duration: " + durationSec + "s, Ops/sec: " + opsPerSec);
+    }
+
+    private void runConcurrent(Cache<String> cache, String label) throws InterruptedException {
         ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
         AtomicInteger ops = new AtomicInteger();
         long start = System.nanoTime();
@@ -38,7 +76,7 @@ public class InMemoryCachePerformanceTest {
         long end = System.nanoTime();
         double durationSec = (end - start) / 1_000_000_000.0;
         double opsPerSec = ops.get() / durationSec;
-        LOGGER.info("[Concurrent] Total operations: " + ops.get() + ", Duration: " + durationSec + "s, Ops/sec: " + opsPerSec);
+        LOGGER.info("[" + label + "] Total operations: " + ops.get() + ", Duration: " + durationSec + "s, Ops/sec: " + opsPerSec);
     }
 
     @Test
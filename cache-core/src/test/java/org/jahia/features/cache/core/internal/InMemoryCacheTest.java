@@ -15,9 +15,21 @@
  */
 package org.jahia.features.cache.core.internal;
 
+import org.jahia.features.cache.api.CacheClock;
 import org.jahia.features.cache.api.CacheConfig;
+import org.jahia.features.cache.api.CacheEntry;
+import org.jahia.features.cache.api.CacheStats;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -44,6 +56,38 @@ public class InMemoryCacheTest {
         assertNull(cache.get("key1"));
     }
 
+    @Test
+    void testObjectKeys() {
+        record ProductKey(String id, int version) {
+        }
+        CacheConfig config = CacheConfig.create().timeToLive(10).maxEntries(10).build();
+        InMemoryCache<String> cache = new InMemoryCache<>("testCache", config);
+        cache.put(new ProductKey("p1", 1), "value1");
+        cache.put("key2", "value2");
+        assertEquals("value1", cache.getEntry(new ProductKey("p1", 1)).value());
+        assertNull(cache.getEntry(new ProductKey("p1", 2)));
+        // Only String keys are handed to the snapshots
+        List<String> keys = new ArrayList<>();
+        cache.forEach((key, entry) -> keys.add(key));
+        assertEquals(List.of("key2"), keys);
+        assertEquals("value1", cache.delete(new ProductKey("p1", 1)).value());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testStaleEntryKeptForGracePeriod() throws InterruptedException {
+        CacheConfig config = CacheConfig.create().timeToLive(1).gracePeriod(1).maxEntries(50).build();
+        InMemoryCache<String> cache = new InMemoryCache<>("testCache", config);
+        cache.put("key1", "value1");
+        assertNull(cache.getStaleEntry("key1"));
+        Thread.sleep(1100);
+        assertNull(cache.get("key1"));
+        assertEquals("value1", cache.getStaleEntry("key1").value());
+        Thread.sleep(1000);
+        assertNull(cache.getStaleEntry("key1"));
+        assertEquals(0, cache.size());
+    }
+
     @Test
     void testClear() {
         CacheConfig config = CacheConfig.create().timeToLive(1).maxEntries(2).build();
@@ -66,6 +110,24 @@ public class InMemoryCacheTest {
         assertNotNull(cache.get("key3"));
     }
 
+    @Test
+    void testMaxWeightEviction() {
+        CacheConfig config = CacheConfig.create().timeToLive(100).maxWeight(10).maxEntryWeight(6)
+                .weigher((key, value) -> ((String) value).length()).build();
+        InMemoryCache<String> cache = new InMemoryCache<>("testCache", config);
+        cache.put("key1", "aaaa");
+        cache.put("key2", "bbbb");
+        assertEquals(8, cache.weightedSize());
+        cache.put("key3", "cccc"); // Should evict key1
+        assertNull(cache.get("key1"));
+        assertNotNull(cache.get("key2"));
+        assertNotNull(cache.get("key3"));
+        assertEquals(8, cache.weightedSize());
+        cache.put("key2", "too heavy"); // Above maxEntryWeight, not cached
+        assertNull(cache.get("key2"));
+        assertEquals(4, cache.weightedSize());
+    }
+
     @Test
     void testTTLExpiration() throws InterruptedException {
         CacheConfig config = CacheConfig.create().timeToLive(1).maxEntries(50).build();
@@ -74,4 +136,99 @@ public class InMemoryCacheTest {
         Thread.sleep(1100); // Wait for TTL to expire
         assertNull(cache.get("key1"));
     }
+
+    @Test
+    void testProactiveExpiration() throws InterruptedException {
+        CacheConfig config = CacheConfig.create().timeToLive(1).gracePeriod(1).maxEntries(500).build();
+        InMemoryCache<String> cache = new InMemoryCache<>("testCache", config);
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, "value" + i);
+        }
+        Thread.sleep(1100);
+        cache.cleanUp();
+        assertEquals(100, cache.size(), "Entries should be kept during their grace period");
+        Thread.sleep(2000);
+        cache.cleanUp();
+        assertEquals(0, cache.size(), "Expired entries should be removed without being read");
+    }
+
+    @Test
+    void testScheduledMaintenance() throws InterruptedException {
+        CacheConfig config = CacheConfig.create().timeToLive(1).maxEntries(500).build();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            InMemoryCache<String> cache = new InMemoryCache<>("testCache", config, scheduler);
+            for (int i = 0; i < 100; i++) {
+                cache.put("key" + i, "value" + i);
+            }
+            Thread.sleep(3500);
+            assertEquals(0, cache.size(), "Idle cache should be cleaned by the maintenance scheduler");
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    void testEntryTimestampsWithTickingClock() throws Exception {
+        CacheClock.start();
+        try {
+            CacheConfig config = CacheConfig.create().timeToLive(10).maxEntries(2).build();
+            InMemoryCache<String> cache = new InMemoryCache<>("testCache", config);
+            cache.put("key1", "value1");
+            Thread.sleep(50);
+            CacheEntry<String> entry = cache.getEntry("key1");
+            assertTrue(entry.accessed() - entry.created() >= 50 - 2 * CacheClock.RESOLUTION);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(entry);
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                CacheEntry<?> copy = (CacheEntry<?>) in.readObject();
+                assertEquals("value1", copy.value());
+                assertEquals(entry.created(), copy.created());
+                assertEquals(entry.accessed(), copy.accessed());
+            }
+        } finally {
+            CacheClock.stop();
+        }
+    }
+
+    @Test
+    void testWeakValues() throws InterruptedException {
+        CacheConfig config = CacheConfig.create().timeToLive(60).maxEntries(10).valueReference(CacheConfig.ValueReference.WEAK).build();
+        InMemoryCache<Object> cache = new InMemoryCache<>("testCache", config);
+        Object held = new Object();
+        cache.put("held", held);
+        cache.put("released", new Object());
+        for (int i = 0; i < 50 && cache.get("released") != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull(cache.get("released"));
+        assertSame(held, cache.get("held"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testStatsWithMissRatioCurve() {
+        CacheConfig config = CacheConfig.create().timeToLive(60).maxEntries(100).missRatioCurve(true).build();
+        InMemoryCache<String> cache = new InMemoryCache<>("testCache", config);
+        assertTrue(cache.getStats().getEstimatedHitRatios().isEmpty());
+        // A loop over 150 keys never hits with 100 entries, but would always hit with 200
+        for (int i = 0; i < 3000; i++) {
+            String key = "key" + (i % 150);
+            if (cache.get(key) == null) {
+                cache.put(key, "value");
+            }
+        }
+        CacheStats stats = cache.getStats();
+        assertEquals(0, stats.getHitCount());
+        assertEquals(3000, stats.getMissCount());
+        assertEquals(2900, stats.getEvictionCount());
+        assertEquals(0.0, stats.getEstimatedHitRatio(0.5), 0.01);
+        assertEquals(0.0, stats.getEstimatedHitRatio(1.0), 0.01);
+        assertEquals(0.95, stats.getEstimatedHitRatio(2.0), 0.01);
+        assertEquals(0.95, stats.getEstimatedHitRatio(4.0), 0.01);
+    }
 }
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.BinaryKey;
+import org.jahia.features.cache.api.Cache;
+import org.jahia.features.cache.api.CacheInvalidate;
+import org.jahia.features.cache.api.CacheKey;
+import org.jahia.features.cache.api.CacheResult;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Jerome Blanchard
+ */
+public class InvocationPlanTest {
+
+    public interface ProductService {
+        @CacheResult(cacheName = "products")
+        String find(@CacheKey String id, String locale);
+
+        @CacheInvalidate(cacheName = "products")
+        void update(@CacheKey String id, String locale);
+
+        String describe(String id);
+
+        int stock(int warehouse);
+
+        String load() throws IOException;
+
+        @CacheResult(cacheName = "labels", key = "#0.nmae")
+        String label(String id);
+    }
+
+    public static class ProductServiceImpl implements ProductService {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public String find(String id, String locale) {
+            return id + "-" + calls.incrementAndGet();
+        }
+
+        @Override
+        public void update(String id, String locale) {
+        }
+
+        @Override
+        @CacheResult(cacheName = "descriptions")
+        public String describe(String id) {
+            return id;
+        }
+
+        @Override
+        public int stock(int warehouse) {
+            return warehouse * 10;
+        }
+
+        @Override
+        public String load() throws IOException {
+            throw new IOException("Unavailable");
+        }
+
+        @Override
+        public String label(String id) {
+            return id + "-" + calls.incrementAndGet();
+        }
+    }
+
+    @Test
+    void testCompile() throws Exception {
+        Method find = ProductService.class.getMethod("find", String.class, String.class);
+        InvocationPlan plan = InvocationPlan.compile(find, new ProductServiceImpl());
+        assertEquals(InvocationPlan.Operation.RESULT, plan.getOperation());
+        assertEquals("products", plan.getCacheName());
+        assertEquals(CacheKeyGenerator.generate(find, new Object[]{ "p1", "en" }, new ProductServiceImpl()),
+                plan.key(new Object[]{ "p1", "en" }));
+        assertEquals(plan.key(new Object[]{ "p1", "en" }), plan.key(new Object[]{ "p1", "fr" }));
+
+        InvocationPlan update = InvocationPlan.compile(ProductService.class.getMethod("update", String.class, String.class),
+                new ProductServiceImpl());
+        assertEquals(InvocationPlan.Operation.INVALIDATE, update.getOperation());
+        assertNull(update.getResult());
+
+        // Annotations of the implementation are also resolved
+        InvocationPlan describe = InvocationPlan.compile(ProductService.class.getMethod("describe", String.class),
+                new ProductServiceImpl());
+        assertEquals(InvocationPlan.Operation.RESULT, describe.getOperation());
+        assertEquals("descriptions", describe.getCacheName());
+
+        InvocationPlan hashCode = InvocationPlan.compile(Object.class.getMethod("hashCode"), new ProductServiceImpl());
+        assertEquals(InvocationPlan.Operation.NONE, hashCode.getOperation());
+    }
+
+    @Test
+    void testInvoke() throws Throwable {
+        ProductServiceImpl target = new ProductServiceImpl();
+        InvocationPlan stock = InvocationPlan.compile(ProductService.class.getMethod("stock", int.class), target);
+        assertEquals(30, stock.invoke(new Object[]{ 3 }));
+        InvocationPlan update = InvocationPlan.compile(ProductService.class.getMethod("update", String.class, String.class),
+                target);
+        assertNull(update.invoke(new Object[]{ "p1", "en" }));
+
+        // Proxies pass null arguments to methods without parameters, and get the exception of the method itself
+        ProductService service = (ProductService) Proxy.newProxyInstance(ProductService.class.getClassLoader(),
+                new Class[]{ ProductService.class }, new CacheInterceptor(target, new CacheManagerImpl()));
+        IOException e = assertThrows(IOException.class, service::load);
+        assertEquals("Unavailable", e.getMessage());
+        assertEquals(target.hashCode(), service.hashCode());
+    }
+
+    @Test
+    void testInvalidKeyExpressionNotCached() throws Exception {
+        ProductServiceImpl target = new ProductServiceImpl();
+        InvocationPlan label = InvocationPlan.compile(ProductService.class.getMethod("label", String.class), target);
+        assertEquals(InvocationPlan.Operation.NONE, label.getOperation());
+
+        CacheManagerImpl manager = new CacheManagerImpl();
+        manager.addProvider(new DefaultCacheProvider());
+        CacheInterceptor interceptor = new CacheInterceptor(target, manager);
+        interceptor.compilePlans(ProductService.class);
+        ProductService service = (ProductService) Proxy.newProxyInstance(ProductService.class.getClassLoader(),
+                new Class[]{ ProductService.class }, interceptor);
+        assertEquals("p1-1", service.label("p1"));
+        assertEquals("p1-2", service.label("p1"));
+        assertFalse(manager.listCacheNames().contains("labels"));
+    }
+
+    @Test
+    void testCacheResolvedAgainAfterProviderChange() throws Exception {
+        CacheManagerImpl manager = new CacheManagerImpl();
+        manager.addProvider(new DefaultCacheProvider());
+        ProductServiceImpl target = new ProductServiceImpl();
+        ProductService service = (ProductService) Proxy.newProxyInstance(ProductService.class.getClassLoader(),
+                new Class[]{ ProductService.class }, new CacheInterceptor(target, manager));
+        assertEquals("p1-1", service.find("p1", "en"));
+        assertEquals("p1-1", service.find("p1", "en"));
+        Cache<Object> before = manager.getCache("products", Object.class);
+
+        // Recreates the caches, the plan must not keep using the cleared instance
+        manager.addProvider(new DefaultCacheProvider());
+        assertNotSame(before, manager.getCache("products", Object.class));
+        assertEquals("p1-2", service.find("p1", "en"));
+        assertEquals("p1-2", service.find("p1", "en"));
+        assertEquals(1, manager.getCache("products", Object.class).size());
+        assertEquals(0, before.size());
+    }
+
+    @Test
+    void testStructuredKeys() throws Exception {
+        Method find = ProductService.class.getMethod("find", String.class, String.class);
+        InvocationPlan plan = InvocationPlan.compile(find, new ProductServiceImpl(), InvocationPlan.KeyMode.STRUCTURED);
+        assertInstanceOf(StructuredKey.class, plan.key(new Object[]{ "p1", "en" }));
+        assertEquals(plan.key(new Object[]{ "p1", "en" }), plan.key(new Object[]{ "p1", "fr" }));
+
+        CacheManagerImpl manager = new CacheManagerImpl();
+        manager.addProvider(new DefaultCacheProvider());
+        ProductService service = (ProductService) Proxy.newProxyInstance(ProductService.class.getClassLoader(),
+                new Class[]{ ProductService.class }, new CacheInterceptor(new ProductServiceImpl(), manager, null, null,
+                        InvocationPlan.KeyMode.STRUCTURED));
+        assertEquals("p1-1", service.find("p1", "en"));
+        assertEquals("p1-1", service.find("p1", "fr"));
+        assertEquals("p2-2", service.find("p2", "en"));
+
+        // Invalidation builds an equal key from another method of the interface
+        service.update("p1", "en");
+        assertEquals("p1-3", service.find("p1", "en"));
+        assertEquals("p2-2", service.find("p2", "en"));
+    }
+
+    @Test
+    void testBinaryKeys() throws Exception {
+        Method find = ProductService.class.getMethod("find", String.class, String.class);
+        InvocationPlan plan = InvocationPlan.compile(find, new ProductServiceImpl(), InvocationPlan.KeyMode.BINARY);
+        assertInstanceOf(BinaryKey.class, plan.key(new Object[]{ "p1", "en" }));
+        assertEquals(plan.key(new Object[]{ "p1", "en" }), plan.key(new Object[]{ "p1", "fr" }));
+        assertNotEquals(plan.key(new Object[]{ "p1", "en" }), plan.key(new Object[]{ "p2", "en" }));
+
+        CacheManagerImpl manager = new CacheManagerImpl();
+        manager.addProvider(new DefaultCacheProvider());
+        ProductService service = (ProductService) Proxy.newProxyInstance(ProductService.class.getClassLoader(),
+                new Class[]{ ProductService.class }, new CacheInterceptor(new ProductServiceImpl(), manager, null, null,
+                        InvocationPlan.KeyMode.BINARY));
+        assertEquals("p1-1", service.find("p1", "en"));
+        assertEquals("p1-1", service.find("p1", "fr"));
+        service.update("p1", "en");
+        assertEquals("p1-2", service.find("p1", "en"));
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.CacheInvalidate;
+import org.jahia.features.cache.api.CacheKey;
+import org.jahia.features.cache.api.CacheResult;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Jerome Blanchard
+ */
+public class KeyExpressionTest {
+
+    public record Address(String city) {
+    }
+
+    public static class User {
+        public final int version;
+        private final String id;
+        private final Address address;
+
+        public User(String id, Address address, int version) {
+            this.id = id;
+            this.address = address;
+            this.version = version;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Address getAddress() {
+            return address;
+        }
+
+        public boolean isActive() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            throw new AssertionError("Users must not be written in keys");
+        }
+    }
+
+    public interface ProfileService {
+        @CacheResult(cacheName = "profiles")
+        String profile(@CacheKey("id") User user, Locale locale);
+
+        @CacheResult(cacheName = "profiles", key = { "#0.id", "#1.language" })
+        String localizedProfile(User user, Locale locale);
+
+        @CacheInvalidate(cacheName = "profiles")
+        void update(@CacheKey("id") User user);
+
+        String city(User user);
+    }
+
+    public static class ProfileServiceImpl implements ProfileService {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public String profile(User user, Locale locale) {
+            return user.getId() + "-" + calls.incrementAndGet();
+        }
+
+        @Override
+        public String localizedProfile(User user, Locale locale) {
+            return user.getId() + "-" + locale + "-" + calls.incrementAndGet();
+        }
+
+        @Override
+        public void update(User user) {
+        }
+
+        @Override
+        public String city(User user) {
+            return user.getAddress().city();
+        }
+    }
+
+    @Test
+    void testProperties() throws Exception {
+        Method city = ProfileService.class.getMethod("city", User.class);
+        User user = new User("u1", new Address("Geneva"), 3);
+        Object[] args = { user };
+        assertEquals("u1", KeyExpression.of(city, 0, "id").evaluate(args));
+        assertEquals("Geneva", KeyExpression.of(city, 0, "address.city").evaluate(args));
+        assertEquals(true, KeyExpression.of(city, 0, "active").evaluate(args));
+        assertEquals(3, KeyExpression.of(city, 0, "version").evaluate(args));
+        assertSame(user, KeyExpression.of(city, 0, "").evaluate(args));
+        assertEquals("Geneva", KeyExpression.parse(city, "#0.address.city").evaluate(args));
+
+        // Null properties end the path
+        assertNull(KeyExpression.of(city, 0, "address.city").evaluate(new Object[]{ new User("u2", null, 1) }));
+        assertNull(KeyExpression.of(city, 0, "address.city").evaluate(new Object[]{ null }));
+    }
+
+    @Test
+    void testInvalidExpressions() throws Exception {
+        Method city = ProfileService.class.getMethod("city", User.class);
+        assertThrows(IllegalArgumentException.class, () -> KeyExpression.of(city, 0, "name"));
+        assertThrows(IllegalArgumentException.class, () -> KeyExpression.of(city, 0, "address..city"));
+        assertThrows(IllegalArgumentException.class, () -> KeyExpression.of(city, 0, "version.value"));
+        assertThrows(IllegalArgumentException.class, () -> KeyExpression.parse(city, "#1.id"));
+        assertThrows(IllegalArgumentException.class, () -> KeyExpression.parse(city, "#x"));
+        assertThrows(IllegalArgumentException.class, () -> KeyExpression.parse(city, "unknown.id"));
+    }
+
+    @Test
+    void testKeys() throws Exception {
+        Method profile = ProfileService.class.getMethod("profile", User.class, Locale.class);
+        Method update = ProfileService.class.getMethod("update", User.class);
+        String key = CacheKeyGenerator.generate(profile, new Object[]{ new User("u1", null, 1), Locale.FRENCH });
+        assertEquals(key, CacheKeyGenerator.generate(profile, new Object[]{ new User("u1", new Address("Paris"), 2),
+                Locale.GERMAN }));
+        assertEquals(key, CacheKeyGenerator.generate(update, new Object[]{ new User("u1", null, 1) }));
+        assertNotEquals(key, CacheKeyGenerator.generate(profile, new Object[]{ new User("u2", null, 1),
+                Locale.FRENCH }));
+    }
+
+    @Test
+    void testCachedThroughExpressions() {
+        CacheManagerImpl manager = new CacheManagerImpl();
+        manager.addProvider(new DefaultCacheProvider());
+        for (InvocationPlan.KeyMode keyMode : InvocationPlan.KeyMode.values()) {
+            ProfileService service = (ProfileService) Proxy.newProxyInstance(ProfileService.class.getClassLoader(),
+                    new Class[]{ ProfileService.class }, new CacheInterceptor(new ProfileServiceImpl(), manager, null,
+                            null, keyMode));
+            service.update(new User("u1", null, 0));
+            assertEquals("u1-1", service.profile(new User("u1", null, 1), Locale.FRENCH), keyMode.name());
+            assertEquals("u1-1", service.profile(new User("u1", null, 2), Locale.GERMAN), keyMode.name());
+            assertEquals("u1-en-2", service.localizedProfile(new User("u1", null, 1), Locale.ENGLISH), keyMode.name());
+            assertEquals("u1-en-2", service.localizedProfile(new User("u1", null, 1), Locale.US), keyMode.name());
+
+            service.update(new User("u1", null, 3));
+            assertEquals("u1-3", service.profile(new User("u1", null, 1), Locale.FRENCH), keyMode.name());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.CacheConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Jerome Blanchard
+ */
+public class LongKeyInMemoryCacheTest {
+
+    @Test
+    void testPutAndGet() {
+        CacheConfig config = CacheConfig.create().timeToLive(10).maxEntries(10).build();
+        LongKeyInMemoryCache<String> cache = new LongKeyInMemoryCache<>("testCache", config);
+        assertNull(cache.put(1L, "value1"));
+        assertEquals("value1", cache.get(1L));
+        assertEquals("value1", cache.put(1L, "value2"));
+        assertEquals("value2", cache.get(1L));
+        assertEquals("value2", cache.delete(1L));
+        assertNull(cache.get(1L));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testZeroAndNegativeKeys() {
+        CacheConfig config = CacheConfig.create().timeToLive(10).maxEntries(10).build();
+        LongKeyInMemoryCache<String> cache = new LongKeyInMemoryCache<>("testCache", config);
+        cache.put(0L, "zero");
+        cache.put(-1L, "minus");
+        cache.put(Long.MIN_VALUE, "min");
+        assertEquals("zero", cache.get(0L));
+        assertEquals("minus", cache.get(-1L));
+        assertEquals("min", cache.get(Long.MIN_VALUE));
+        assertNull(cache.get(1L));
+    }
+
+    @Test
+    void testMaxEntriesEviction() {
+        CacheConfig config = CacheConfig.create().timeToLive(10).maxEntries(2).build();
+        LongKeyInMemoryCache<String> cache = new LongKeyInMemoryCache<>("testCache", config);
+        cache.put(1L, "value1");
+        cache.put(2L, "value2");
+        cache.get(1L);
+        cache.put(3L, "value3");
+        assertEquals(2, cache.size());
+        assertEquals("value1", cache.get(1L));
+        assertNull(cache.get(2L));
+        assertEquals("value3", cache.get(3L));
+    }
+
+    @Test
+    void testWeightEviction() {
+        CacheConfig config = CacheConfig.create().timeToLive(10).maxWeight(10).weigher((key, value) -> ((String) value).length()).build();
+        LongKeyInMemoryCache<String> cache = new LongKeyInMemoryCache<>("testCache", config);
+        cache.put(1L, "aaaa");
+        cache.put(2L, "bbbb");
+        cache.put(3L, "cccc");
+        assertEquals(2, cache.size());
+        assertEquals(8, cache.weightedSize());
+        assertEquals("cccc", cache.get(3L));
+    }
+
+    @Test
+    void testExpiration() throws InterruptedException {
+        CacheConfig config = CacheConfig.create().timeToLive(1).maxEntries(10).build();
+        LongKeyInMemoryCache<String> cache = new LongKeyInMemoryCache<>("testCache", config);
+        cache.put(1L, "value1");
+        Thread.sleep(1100);
+        assertNull(cache.get(1L));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testRandomOperationsMatchHashMap() {
+        CacheConfig config = CacheConfig.create().timeToLive(60).maxEntries(0).build();
+        LongKeyInMemoryCache<Long> cache = new LongKeyInMemoryCache<>("testCache", config);
+        Map<Long, Long> reference = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200000; i++) {
+            long key = random.nextInt(5000) * 1024L;
+            if (random.nextInt(3) == 0) {
+                assertEquals(reference.remove(key), cache.delete(key));
+            } else {
+                assertEquals(reference.put(key, (long) i), cache.put(key, (long) i));
+            }
+        }
+        assertEquals(reference.size(), cache.size());
+        reference.forEach((key, value) -> assertEquals(value, cache.get(key)));
+    }
+}
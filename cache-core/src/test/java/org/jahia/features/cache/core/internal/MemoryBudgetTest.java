@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.CacheConfig;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Jerome Blanchard
+ */
+public class MemoryBudgetTest {
+
+    @Test
+    void testAllocationsScaledToBudget() {
+        MemoryBudget budget = new MemoryBudget(100, false);
+        InMemoryCache<String> first = new InMemoryCache<>("first", CacheConfig.create().timeToLive(60).maxEntries(100).build());
+        InMemoryCache<String> second = new InMemoryCache<>("second", CacheConfig.create().timeToLive(60).maxEntries(100).build());
+        budget.register(first);
+        assertEquals(100, budget.getAllocation(first));
+        assertEquals(1.0, first.getBudgetRatio());
+
+        budget.register(second);
+        assertEquals(50, budget.getAllocation(first));
+        assertEquals(50, budget.getAllocation(second));
+        assertEquals(0.5, first.getBudgetRatio());
+
+        budget.unregister(second);
+        assertEquals(1.0, second.getBudgetRatio());
+        assertEquals(0, second.getStatistics().getGhostCapacity());
+    }
+
+    @Test
+    void testCapacityMovesToCacheWithMostGhostHits() {
+        MemoryBudget budget = new MemoryBudget(200, false);
+        InMemoryCache<String> hot = new InMemoryCache<>("hot", CacheConfig.create().timeToLive(60).maxEntries(100).build());
+        InMemoryCache<String> cold = new InMemoryCache<>("cold", CacheConfig.create().timeToLive(60).maxEntries(100).build());
+        budget.register(hot);
+        budget.register(cold);
+        assertEquals(10, hot.getStatistics().getGhostCapacity());
+
+        // A working set slightly larger than the cache: every key is requested again shortly after being evicted
+        for (int i = 0; i < 1050; i++) {
+            String key = "key" + (i % 105);
+            if (hot.get(key) == null) {
+                hot.put(key, "value");
+            }
+        }
+        for (int i = 0; i < 1000; i++) {
+            String key = "key" + (i % 50);
+            if (cold.get(key) == null) {
+                cold.put(key, "value");
+            }
+        }
+        assertTrue(hot.getStats().getEvictionCount() > 0);
+        assertEquals(950, cold.getStats().getHitCount());
+
+        budget.reallocate();
+        assertEquals(110, budget.getAllocation(hot));
+        assertEquals(90, budget.getAllocation(cold));
+        assertEquals(1.1, hot.getBudgetRatio(), 0.001);
+        hot.put("extra", "value");
+        assertEquals(101, hot.size());
+
+        // Once the hot cache holds its working set, there are no more ghost hits and the allocations are stable
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 1050; i++) {
+                String key = "key" + (i % 105);
+                if (hot.get(key) == null) {
+                    hot.put(key, "value");
+                }
+            }
+            budget.reallocate();
+        }
+        long settled = budget.getAllocation(hot);
+        long hits = hot.getStats().getHitCount();
+        for (int i = 0; i < 1050; i++) {
+            assertNotNull(hot.get("key" + (i % 105)));
+        }
+        assertEquals(hits + 1050, hot.getStats().getHitCount());
+        budget.reallocate();
+        assertEquals(settled, budget.getAllocation(hot));
+        assertEquals(200 - settled, budget.getAllocation(cold));
+    }
+
+    @Test
+    void testCachesOfAnotherUnitLeftOut() {
+        MemoryBudget budget = new MemoryBudget(1000, true);
+        InMemoryCache<String> counted = new InMemoryCache<>("counted", CacheConfig.create().timeToLive(60).maxEntries(100).build());
+        InMemoryCache<String> weighted = new InMemoryCache<>("weighted", CacheConfig.create().timeToLive(60)
+                .maxWeight(400).weigher((key, value) -> 4).build());
+        budget.register(counted);
+        budget.register(weighted);
+        assertEquals(0, budget.getAllocation(counted));
+        assertEquals(1.0, counted.getBudgetRatio());
+        assertEquals(0, counted.getStatistics().getGhostCapacity());
+        assertEquals(400, budget.getAllocation(weighted));
+    }
+
+    @Test
+    void testFreeBudgetGrantedFirst() {
+        MemoryBudget budget = new MemoryBudget(1000, false);
+        InMemoryCache<String> cache = new InMemoryCache<>("cache", CacheConfig.create().timeToLive(60).maxEntries(100).build());
+        budget.register(cache);
+        assertEquals(50, cache.getStatistics().getGhostCapacity());
+        for (int i = 0; i < 1200; i++) {
+            String key = "key" + (i % 120);
+            if (cache.get(key) == null) {
+                cache.put(key, "value");
+            }
+        }
+        budget.reallocate();
+        assertEquals(150, budget.getAllocation(cache));
+        budget.reallocate();
+        assertEquals(150, budget.getAllocation(cache));
+        assertTrue(cache.getStats().getHitRatio() < 0.5);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Jerome Blanchard
+ */
+public class MissRatioCurveTest {
+
+    @Test
+    void testBuckets() {
+        for (long distance = 0; distance < 1_000_000; distance += (distance < 1000) ? 1 : 997) {
+            int bucket = MissRatioCurve.bucket(distance);
+            assertTrue(MissRatioCurve.lowerBound(bucket) <= distance);
+            assertTrue(distance < MissRatioCurve.lowerBound(bucket + 1));
+        }
+    }
+
+    @Test
+    void testCyclicStream() {
+        MissRatioCurve curve = new MissRatioCurve();
+        assertTrue(Double.isNaN(curve.hitRatio(100)));
+        assertTrue(curve.hitRatios(100, 0.5, 2.0).isEmpty());
+        // Every key is referenced again after the 999 others: LRU only hits with 1000 entries or more
+        for (int pass = 0; pass < 20; pass++) {
+            for (int key = 0; key < 1000; key++) {
+                curve.record(CacheStatistics.hash("key" + key));
+            }
+        }
+        assertEquals(1.0, curve.samplingRate());
+        assertEquals(0.0, curve.hitRatio(500), 0.001);
+        // The histogram resolution is an eighth of a power of two, the distances of 999 are counted within [960, 1024)
+        assertEquals(0.95, curve.hitRatio(1024), 0.001);
+        assertEquals(0.95, curve.hitRatio(4000), 0.001);
+    }
+
+    @Test
+    void testSampledCyclicStream() {
+        MissRatioCurve curve = new MissRatioCurve(1024);
+        for (int pass = 0; pass < 10; pass++) {
+            for (int key = 0; key < 100_000; key++) {
+                curve.record(CacheStatistics.hash("key" + key));
+            }
+        }
+        assertTrue(curve.samplingRate() < 0.02);
+        Map<Double, Double> ratios = curve.hitRatios(100_000, 0.5, 2.0, 4.0);
+        assertEquals(0.0, ratios.get(0.5), 0.05);
+        assertEquals(0.9, ratios.get(2.0), 0.05);
+        assertEquals(0.9, ratios.get(4.0), 0.05);
+    }
+
+    @Test
+    void testUniformStream() {
+        MissRatioCurve curve = new MissRatioCurve(512);
+        Random random = new Random(42);
+        for (int i = 0; i < 500_000; i++) {
+            curve.record(CacheStatistics.hash("key" + random.nextInt(4000)));
+        }
+        // With uniform references, an LRU cache holding a fraction of the keys hits with that fraction
+        assertEquals(0.25, curve.hitRatio(1000), 0.05);
+        assertEquals(0.5, curve.hitRatio(2000), 0.05);
+        assertEquals(1.0, curve.hitRatio(8000), 0.05);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.BinaryKey;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Jerome Blanchard
+ */
+public class Murmur3HasherTest {
+
+    private static final String PREFIX = "org.example.ProductService";
+
+    @Test
+    void testReferenceVectors() {
+        assertEquals(new BinaryKey(0, 0), hashBytes(""));
+        assertEquals(new BinaryKey(0xcbd8a7b341bd9b02L, 0x5b1e906a48ae1d19L), hashBytes("hello"));
+        assertEquals(new BinaryKey(0xe34bbc7bbc071b6cL, 0x7a433ca9c49a9347L),
+                hashBytes("The quick brown fox jumps over the lazy dog"));
+    }
+
+    @Test
+    void testLongsWrittenAtAnyOffset() {
+        long value = 0x0123456789abcdefL;
+        for (int offset = 0; offset < 16; offset++) {
+            Murmur3Hasher bytes = new Murmur3Hasher();
+            Murmur3Hasher longs = new Murmur3Hasher();
+            for (int i = 0; i < offset; i++) {
+                bytes.putByte(i);
+                longs.putByte(i);
+            }
+            for (int j = 0; j < 3; j++) {
+                for (int i = 0; i < 8; i++) {
+                    bytes.putByte((int) (value >>> (8 * i)));
+                }
+                longs.putLong(value);
+            }
+            assertEquals(bytes.hash(), longs.hash(), "Offset " + offset);
+        }
+    }
+
+    @Test
+    void testKeys() {
+        Murmur3Hasher prefix = new Murmur3Hasher().putString(PREFIX);
+        BinaryKey key = Murmur3Hasher.key(prefix, new int[]{ 0, 1 }, new Object[]{ "p1", 42 });
+        assertEquals(key, Murmur3Hasher.key(prefix, new int[]{ 0, 1 }, new Object[]{ "p1", 42 }));
+        assertEquals(key, Murmur3Hasher.key(prefix, new int[]{ 0, 1 }, new Object[]{ "p1", 42, "ignored" }));
+        assertEquals(key, Murmur3Hasher.key(new Murmur3Hasher().putString(PREFIX), new int[]{ 0, 1 },
+                new Object[]{ "p1", 42 }));
+
+        // Types and boundaries of the arguments are part of the key
+        Set<BinaryKey> keys = new HashSet<>();
+        keys.add(key);
+        assertTrue(keys.add(Murmur3Hasher.key(prefix, new int[]{ 0, 1 }, new Object[]{ "p1", 42L })));
+        assertTrue(keys.add(Murmur3Hasher.key(prefix, new int[]{ 0, 1 }, new Object[]{ "p1", "42" })));
+        assertTrue(keys.add(Murmur3Hasher.key(prefix, new int[]{ 0, 1 }, new Object[]{ "p14", "2" })));
+        assertTrue(keys.add(Murmur3Hasher.key(prefix, new int[]{ 0, 1 }, new Object[]{ "p1", null })));
+        assertTrue(keys.add(Murmur3Hasher.key(prefix, new int[]{ 0, 1 }, new Object[]{ "p1", TimeUnit.SECONDS })));
+        assertTrue(keys.add(Murmur3Hasher.key(new Murmur3Hasher().putString("org.example.OrderService"),
+                new int[]{ 0, 1 }, new Object[]{ "p1", 42 })));
+
+        // Arrays are hashed by content
+        assertEquals(Murmur3Hasher.key(prefix, new int[]{ 0 }, new Object[]{ new int[]{ 1, 2 } }),
+                Murmur3Hasher.key(prefix, new int[]{ 0 }, new Object[]{ new int[]{ 1, 2 } }));
+    }
+
+    @Test
+    void testBinaryKey() throws Exception {
+        BinaryKey key = new BinaryKey(0x029bbd41b3a7d8cbL, 0x191dae486a901e5bL);
+        assertEquals("029bbd41b3a7d8cb191dae486a901e5b", key.toString());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(key);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals(key, in.readObject());
+        }
+    }
+
+    private static BinaryKey hashBytes(String value) {
+        Murmur3Hasher hasher = new Murmur3Hasher();
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hasher.putByte(b);
+        }
+        return hasher.hash();
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.Cache;
+import org.jahia.features.cache.api.CacheConfig;
+import org.jahia.features.cache.api.CacheSerializer;
+import org.junit.jupiter.api.Test;
+
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Jerome Blanchard
+ */
+public class OffHeapCacheTest {
+
+    private static final long STORE_SIZE = 8L * 1024 * 1024;
+
+    @Test
+    void testPutAndGet() {
+        CacheConfig config = CacheConfig.create().timeToLive(10).maxEntries(10).build();
+        OffHeapCache<String> cache = new OffHeapCache<>("testCache", config, String.class, new OffHeapStore(STORE_SIZE), new JavaCacheSerializer());
+        assertNull(cache.put("key1", "value1"));
+        assertEquals("value1", cache.get("key1"));
+        assertEquals("value1", cache.put("key1", "value2").value());
+        assertEquals("value2", cache.get("key1"));
+        assertEquals("value2", cache.delete("key1").value());
+        assertNull(cache.get("key1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testLargeValues() {
+        CacheConfig config = CacheConfig.create().timeToLive(10).maxEntries(10).build();
+        OffHeapCache<int[]> cache = new OffHeapCache<>("testCache", config, int[].class, new OffHeapStore(STORE_SIZE), new JavaCacheSerializer());
+        int[] value = new int[100000];
+        Arrays.setAll(value, i -> i * 31);
+        cache.put("key1", value);
+        assertArrayEquals(value, cache.get("key1"));
+    }
+
+    @Test
+    void testMaxEntriesEviction() {
+        CacheConfig config = CacheConfig.create().timeToLive(10).maxEntries(2).build();
+        OffHeapCache<String> cache = new OffHeapCache<>("testCache", config, String.class, new OffHeapStore(STORE_SIZE), new JavaCacheSerializer());
+        cache.put("key1", "value1");
+        cache.put("key2", "value2");
+        cache.get("key1");
+        cache.put("key3", "value3");
+        assertEquals(2, cache.size());
+        assertEquals("value1", cache.get("key1"));
+        assertNull(cache.get("key2"));
+        assertEquals("value3", cache.get("key3"));
+    }
+
+    @Test
+    void testTimeToLive() throws InterruptedException {
+        CacheConfig config = CacheConfig.create().timeToLive(1).maxEntries(10).build();
+        OffHeapCache<String> cache = new OffHeapCache<>("testCache", config, String.class, new OffHeapStore(STORE_SIZE), new JavaCacheSerializer());
+        cache.put("key1", "value1");
+        Thread.sleep(1100);
+        assertNull(cache.get("key1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testFullStoreEvictsAndReusesMemory() {
+        OffHeapStore store = new OffHeapStore(OffHeapStore.SLAB_SIZE);
+        CacheConfig config = CacheConfig.create().timeToLive(10).maxEntries(0).build();
+        OffHeapCache<byte[]> cache = new OffHeapCache<>("testCache", config, byte[].class, store, new JavaCacheSerializer());
+        byte[] value = new byte[64 * 1024];
+        for (int i = 0; i < 200; i++) {
+            cache.put("key" + i, value);
+        }
+        assertTrue(cache.size() < 200);
+        assertNotNull(cache.get("key199"));
+        assertNull(cache.get("key0"));
+        assertEquals(OffHeapStore.SLAB_SIZE, store.getReservedMemory());
+        cache.clear();
+        assertEquals(0, store.getUsedMemory());
+        assertNull(cache.put("huge", new byte[2 * OffHeapStore.SLAB_SIZE]));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testStoreSharedBetweenCaches() {
+        OffHeapStore store = new OffHeapStore(STORE_SIZE);
+        CacheConfig config = CacheConfig.create().timeToLive(10).maxEntries(100).build();
+        OffHeapCache<String> cache1 = new OffHeapCache<>("cache1", config, String.class, store, new JavaCacheSerializer());
+        OffHeapCache<String> cache2 = new OffHeapCache<>("cache2", config, String.class, store, new JavaCacheSerializer());
+        for (int i = 0; i < 100; i++) {
+            cache1.put("key" + i, "value1-" + i);
+            cache2.put("key" + i, "value2-" + i);
+        }
+        cache1.clear();
+        for (int i = 0; i < 100; i++) {
+            cache1.put("key" + i, "value3-" + i);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals("value2-" + i, cache2.get("key" + i));
+            assertEquals("value3-" + i, cache1.get("key" + i));
+        }
+    }
+
+    @Test
+    void testWeightIsSerializedSize() {
+        CacheConfig config = CacheConfig.create().timeToLive(10).maxWeight(10 * 1024).build();
+        OffHeapCache<byte[]> cache = new OffHeapCache<>("testCache", config, byte[].class, new OffHeapStore(STORE_SIZE), new JavaCacheSerializer());
+        for (int i = 0; i < 20; i++) {
+            cache.put("key" + i, new byte[1000]);
+        }
+        assertTrue(cache.weightedSize() <= 10 * 1024);
+        assertEquals(9, cache.size());
+    }
+
+    @Test
+    void testCustomSerializer() {
+        CacheSerializer serializer = new CacheSerializer() {
+            @Override
+            public byte[] serialize(Object value) throws IOException {
+                if ("unsupported".equals(value)) {
+                    throw new IOException("Unsupported value");
+                }
+                return ((String) value).getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public <T> T deserialize(byte[] data, Class<T> type) {
+                return type.cast(new String(data, StandardCharsets.UTF_8));
+            }
+        };
+        CacheConfig config = CacheConfig.create().timeToLive(10).maxEntries(10).serializer(serializer).build();
+        OffHeapCache<String> cache = new OffHeapCache<>("testCache", config, String.class, new OffHeapStore(STORE_SIZE), new JavaCacheSerializer());
+        cache.put("key1", "value1");
+        assertEquals("value1", cache.get("key1"));
+        cache.put("key1", "unsupported");
+        assertNull(cache.get("key1"));
+    }
+
+    @Test
+    void testValuesOfChildClassLoader() throws Exception {
+        Path directory = Files.createTempDirectory("cache-values");
+        try {
+            Path source = Files.writeString(directory.resolve("Payload.java"),
+                    "public class Payload implements java.io.Serializable { public String name = \"payload\"; }");
+            assertEquals(0, ToolProvider.getSystemJavaCompiler().run(null, null, null, "-d", directory.toString(),
+                    source.toString()));
+            try (URLClassLoader loader = new URLClassLoader(new URL[]{ directory.toUri().toURL() },
+                    getClass().getClassLoader())) {
+                Object payload = loader.loadClass("Payload").getConstructor().newInstance();
+                // Caches created by the interceptor hold Object values, whose type can not resolve the service classes
+                OffHeapCache<Object> cache = new OffHeapCache<>("testCache",
+                        CacheConfig.create().maxEntries(10).classLoader(loader).build(), Object.class,
+                        new OffHeapStore(STORE_SIZE), new JavaCacheSerializer());
+                cache.put("key1", payload);
+                assertSame(payload.getClass(), cache.get("key1").getClass());
+
+                OffHeapCache<Object> unresolved = new OffHeapCache<>("otherCache",
+                        CacheConfig.create().maxEntries(10).build(), Object.class, new OffHeapStore(STORE_SIZE),
+                        new JavaCacheSerializer());
+                unresolved.put("key1", payload);
+                assertNull(unresolved.get("key1"));
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    @Test
+    void testOffHeapStorageSelection() {
+        DefaultCacheProvider provider = new DefaultCacheProvider();
+        provider.activate(Map.of(DefaultCacheProvider.STORAGE_PROPERTY, "offheap", DefaultCacheProvider.OFF_HEAP_MAX_MEMORY_PROPERTY, "16"));
+        assertEquals(DefaultCacheProvider.OFF_HEAP_STORAGE, provider.getStorage());
+        assertInstanceOf(OffHeapCache.class, provider.createCache("testCache", CacheConfig.create().build(), String.class));
+        provider.activate(Map.of(DefaultCacheProvider.STORAGE_PROPERTY, "unknown"));
+        assertEquals(DefaultCacheProvider.HEAP_STORAGE, provider.getStorage());
+        assertInstanceOf(InMemoryCache.class, provider.createCache("testCache", CacheConfig.create().build(), String.class));
+        provider.deactivate();
+    }
+
+    @Test
+    void testMaxMemoryChange() {
+        DefaultCacheProvider provider = new DefaultCacheProvider();
+        provider.activate(Map.of(DefaultCacheProvider.STORAGE_PROPERTY, "offheap", DefaultCacheProvider.OFF_HEAP_MAX_MEMORY_PROPERTY, "16"));
+        Cache<String> cache = provider.createCache("testCache", CacheConfig.create().build(), String.class);
+        cache.put("key1", "value1");
+        OffHeapStore store = provider.getOffHeapStore();
+        assertTrue(store.getUsedMemory() > 0);
+
+        // The caches move to a single store bounded by the new limit
+        provider.activate(Map.of(DefaultCacheProvider.STORAGE_PROPERTY, "offheap", DefaultCacheProvider.OFF_HEAP_MAX_MEMORY_PROPERTY, "8"));
+        assertNotSame(store, provider.getOffHeapStore());
+        assertEquals(8L * 1024 * 1024, provider.getOffHeapStore().getMaxMemory());
+        assertNull(cache.get("key1"));
+        cache.put("key1", "value2");
+        provider.createCache("otherCache", CacheConfig.create().build(), String.class).put("key1", "value3");
+        assertEquals("value2", cache.get("key1"));
+        assertTrue(provider.getOffHeapStore().getUsedMemory() > 0);
+
+        // Deactivation releases the store, the caches that are still used no longer cache values
+        provider.deactivate();
+        assertEquals(0, cache.size());
+        assertNull(cache.put("key1", "value4"));
+        assertNull(cache.get("key1"));
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Jerome Blanchard
+ */
+public class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    private final SingleFlight singleFlight = new SingleFlight();
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(CALLERS, runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testConcurrentLoadsCoalesced() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<Object>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(() -> load("key", () -> {
+                loads.incrementAndGet();
+                release.await();
+                return "value";
+            })));
+        }
+        waitForWaiters();
+        release.countDown();
+        for (Future<Object> result : results) {
+            assertEquals("value", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(0, singleFlight.inFlight());
+
+        // Once completed, a load of the same key runs again
+        assertEquals("again", load("key", () -> "again"));
+    }
+
+    @Test
+    void testExceptionSharedWithWaiters() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<Object>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(() -> load("key", () -> {
+                release.await();
+                throw new IOException("backend down");
+            })));
+        }
+        waitForWaiters();
+        release.countDown();
+        for (Future<Object> result : results) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IOException.class, e.getCause());
+            assertEquals("backend down", e.getCause().getMessage());
+        }
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void testWaiterLoadsAfterTimeout() throws Throwable {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        Future<Object> slow = executor.submit(() -> load("key", () -> {
+            started.countDown();
+            release.await();
+            return "slow";
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals("fast", singleFlight.load("key", () -> "fast", 50));
+        release.countDown();
+        assertEquals("slow", slow.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testInterruptedWaiterDoesNotLoad() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        Future<Object> slow = executor.submit(() -> load("key", () -> {
+            started.countDown();
+            release.await();
+            return "slow";
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedException.class, () -> singleFlight.load("key", loads::incrementAndGet, 5000));
+        assertTrue(Thread.interrupted());
+        assertEquals(0, loads.get());
+        release.countDown();
+        assertEquals("slow", slow.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testDistinctKeysNotCoalesced() throws Throwable {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        Future<Object> first = executor.submit(() -> load("first", () -> {
+            started.countDown();
+            release.await();
+            return "first";
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals("second", singleFlight.load("second", () -> "second", 5000));
+        release.countDown();
+        assertEquals("first", first.get(5, TimeUnit.SECONDS));
+    }
+
+    private Object load(String key, SingleFlight.Loader loader) throws Exception {
+        try {
+            return singleFlight.load(key, loader, 5000);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private void waitForWaiters() throws InterruptedException {
+        // Let every caller reach the single flight, a caller arriving once the load completed would load again
+        for (int i = 0; i < 100 && singleFlight.inFlight() == 0; i++) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+    }
+}
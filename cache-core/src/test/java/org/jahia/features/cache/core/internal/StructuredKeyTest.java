@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Jerome Blanchard
+ */
+public class StructuredKeyTest {
+
+    private static final String PREFIX = "org.example.ProductService";
+
+    @Test
+    void testEquality() {
+        StructuredKey key = StructuredKey.of(PREFIX, new int[]{ 0, 1 }, new Object[]{ "p1", 42 });
+        StructuredKey same = StructuredKey.of(PREFIX, new int[]{ 0, 1 }, new Object[]{ "p1", 42 });
+        assertEquals(key, same);
+        assertEquals(key.hashCode(), same.hashCode());
+        assertNotEquals(key, StructuredKey.of(PREFIX, new int[]{ 0, 1 }, new Object[]{ "p1", 43 }));
+        assertNotEquals(key, StructuredKey.of("org.example.OrderService", new int[]{ 0, 1 }, new Object[]{ "p1", 42 }));
+        assertNotEquals(key, StructuredKey.of(PREFIX, new int[]{ 0, 1 }, new Object[]{ "p1", null }));
+        assertEquals(StructuredKey.of(PREFIX, new int[]{ 0 }, new Object[]{ null }),
+                StructuredKey.of(PREFIX, new int[]{ 0 }, new Object[]{ null }));
+    }
+
+    @Test
+    void testKeyParameters() {
+        // Only the key parameters are compared
+        assertEquals(StructuredKey.of(PREFIX, new int[]{ 1 }, new Object[]{ "en", "p1" }),
+                StructuredKey.of(PREFIX, new int[]{ 1 }, new Object[]{ "fr", "p1" }));
+        assertEquals(StructuredKey.of(PREFIX, new int[0], null), StructuredKey.of(PREFIX, new int[0], new Object[0]));
+    }
+
+    @Test
+    void testArraysComparedByContent() {
+        StructuredKey key = StructuredKey.of(PREFIX, new int[]{ 0 }, new Object[]{ new String[]{ "a", "b" } });
+        assertEquals(key, StructuredKey.of(PREFIX, new int[]{ 0 }, new Object[]{ new String[]{ "a", "b" } }));
+        assertEquals(key.hashCode(), StructuredKey.of(PREFIX, new int[]{ 0 }, new Object[]{ new String[]{ "a", "b" } }).hashCode());
+    }
+
+    @Test
+    void testStringFormIsTheDigest() {
+        Object[] args = { "p1", "en" };
+        assertEquals(CacheKeyGenerator.generate(PREFIX, new int[]{ 0 }, args),
+                StructuredKey.of(PREFIX, new int[]{ 0 }, args).toString());
+        assertEquals(CacheKeyGenerator.generate(PREFIX, new int[]{ 0, 1 }, args),
+                StructuredKey.of(PREFIX, new int[]{ 0, 1 }, args).toString());
+    }
+}
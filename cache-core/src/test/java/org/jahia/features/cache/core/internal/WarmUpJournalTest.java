@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.core.internal;
+
+import org.jahia.features.cache.api.CacheResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Jerome Blanchard
+ */
+public class WarmUpJournalTest {
+
+    public interface GreetingService {
+        @CacheResult(cacheName = "greetings")
+        String greet(String name, int times);
+    }
+
+    public static class GreetingServiceImpl implements GreetingService {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public String greet(String name, int times) {
+            calls.incrementAndGet();
+            return ("Hello " + name + " ").repeat(times);
+        }
+    }
+
+    private Path directory;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("cache-journal");
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        executor.shutdownNow();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private static GreetingService proxy(GreetingServiceImpl target, CacheManagerImpl manager, WarmUpJournal journal) {
+        return (GreetingService) Proxy.newProxyInstance(GreetingService.class.getClassLoader(),
+                new Class[]{ GreetingService.class }, new CacheInterceptor(target, manager, journal, null));
+    }
+
+    private static CacheManagerImpl newManager() {
+        CacheManagerImpl manager = new CacheManagerImpl();
+        manager.addProvider(new DefaultCacheProvider());
+        return manager;
+    }
+
+    @Test
+    void testHottestKeysAreKept() throws NoSuchMethodException {
+        WarmUpJournal journal = new WarmUpJournal(directory.resolve("warmup.journal"), 2);
+        Method method = GreetingService.class.getMethod("greet", String.class, int.class);
+        for (int i = 0; i < 10; i++) {
+            journal.record("greetings", "hot", method, new Object[]{ "hot", 1 });
+        }
+        for (int i = 0; i < 5; i++) {
+            journal.record("greetings", "warm", method, new Object[]{ "warm", 1 });
+        }
+        for (int i = 0; i < 100; i++) {
+            journal.record("greetings", "cold" + i, method, new Object[]{ "cold" + i, 1 });
+        }
+        List<WarmUpJournal.Invocation> hottest = journal.hottest("greetings");
+        assertEquals(2, hottest.size());
+        assertEquals(10, hottest.get(0).getHits());
+        assertEquals(5, hottest.get(1).getHits());
+    }
+
+    @Test
+    void testNonSerializableArgumentsAreNotRecorded() throws NoSuchMethodException {
+        WarmUpJournal journal = new WarmUpJournal(directory.resolve("warmup.journal"), 2);
+        Method method = GreetingService.class.getMethod("greet", String.class, int.class);
+        journal.record("greetings", "object", method, new Object[]{ new Object(), 1 });
+        journal.record("greetings", "null", method, new Object[]{ null, 1 });
+        List<WarmUpJournal.Invocation> hottest = journal.hottest("greetings");
+        assertEquals(1, hottest.size());
+        assertEquals(1, hottest.get(0).getHits());
+    }
+
+    @Test
+    void testReplayThroughProxy() throws Exception {
+        Path file = directory.resolve("warmup.journal");
+        WarmUpJournal journal = new WarmUpJournal(file, 10);
+        GreetingService service = proxy(new GreetingServiceImpl(), newManager(), journal);
+        service.greet("alice", 1);
+        service.greet("alice", 1);
+        service.greet("bob", 2);
+        assertEquals(2, journal.write());
+
+        WarmUpJournal restarted = new WarmUpJournal(file, 10);
+        assertEquals(2, restarted.load());
+        GreetingServiceImpl target = new GreetingServiceImpl();
+        GreetingService warmed = proxy(target, newManager(), restarted);
+        List<Future<?>> replays = restarted.replay(warmed, GreetingServiceImpl.class.getClassLoader(), executor);
+        for (Future<?> replay : replays) {
+            replay.get();
+        }
+        assertEquals(2, replays.size());
+        assertEquals(0, restarted.pendingSize());
+        assertEquals(2, target.calls.get());
+        assertEquals("Hello alice ", warmed.greet("alice", 1));
+        assertEquals("Hello bob Hello bob ", warmed.greet("bob", 2));
+        assertEquals(2, target.calls.get());
+    }
+
+    @Test
+    void testReplayOnlyMatchingServices() throws Exception {
+        Path file = directory.resolve("warmup.journal");
+        WarmUpJournal journal = new WarmUpJournal(file, 10);
+        proxy(new GreetingServiceImpl(), newManager(), journal).greet("alice", 1);
+        journal.write();
+
+        WarmUpJournal restarted = new WarmUpJournal(file, 10);
+        restarted.load();
+        Runnable other = (Runnable) Proxy.newProxyInstance(Runnable.class.getClassLoader(), new Class[]{ Runnable.class },
+                (proxy, method, args) -> null);
+        assertTrue(restarted.replay(other, Runnable.class.getClassLoader(), executor).isEmpty());
+        assertEquals(1, restarted.pendingSize());
+    }
+}
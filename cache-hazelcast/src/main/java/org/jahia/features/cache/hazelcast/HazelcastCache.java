@@ -17,14 +17,18 @@ package org.jahia.features.cache.hazelcast;
 
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.replicatedmap.ReplicatedMap;
+import org.jahia.features.cache.api.BinaryKey;
 import org.jahia.features.cache.api.Cache;
 import org.jahia.features.cache.api.CacheConfig;
 import org.jahia.features.cache.api.CacheEntry;
+import org.jahia.features.cache.api.CacheLoadLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Hazelcast-based clustered cache implementation
+ * <p>
+ * {@link BinaryKey} keys are stored as is, keys of other types than String as their string form.
  *
  * @author Jerome Blanchard
  */
@@ -34,12 +38,14 @@ public class HazelcastCache<T> implements Cache<T> {
 
     private final String cacheName;
     private final CacheConfig cacheConfig;
-    private final ReplicatedMap<String, CacheEntry<T>> hazelcastMap;
+    private final ReplicatedMap<Object, CacheEntry<T>> hazelcastMap;
+    private final HazelcastLoadLock loadLock;
 
     public HazelcastCache(HazelcastInstance hazelcastInstance, String cacheName, CacheConfig cacheConfig) {
         this.cacheName = cacheName;
         this.cacheConfig = cacheConfig;
         this.hazelcastMap = hazelcastInstance.getReplicatedMap(cacheName);
+        this.loadLock = new HazelcastLoadLock(hazelcastInstance, cacheName);
         LOGGER.info("Created hazelcast cache: {}", cacheName);
     }
 
@@ -55,10 +61,16 @@ public class HazelcastCache<T> implements Cache<T> {
 
     @Override
     public CacheEntry<T> getEntry(String key) {
-        CacheEntry<T> entry = hazelcastMap.get(key);
+        return getEntry((Object) key);
+    }
+
+    @Override
+    public CacheEntry<T> getEntry(Object key) {
+        Object storedKey = storedKey(key);
+        CacheEntry<T> entry = hazelcastMap.get(storedKey);
         if (entry != null) {
             entry.touch();
-            hazelcastMap.put(key, entry); // Update accessed timestamp
+            hazelcastMap.put(storedKey, entry); // Update accessed timestamp
             return entry;
         }
         return null;
@@ -72,13 +84,23 @@ public class HazelcastCache<T> implements Cache<T> {
 
     @Override
     public CacheEntry<T> put(String key, T value) {
-        CacheEntry<T> entry = new CacheEntry<>(key, value);
-        return hazelcastMap.put(key, entry);
+        return put((Object) key, value);
+    }
+
+    @Override
+    public CacheEntry<T> put(Object key, T value) {
+        CacheEntry<T> entry = new CacheEntry<>(value);
+        return hazelcastMap.put(storedKey(key), entry);
     }
 
     @Override
     public CacheEntry<T> delete(String key) {
-        return hazelcastMap.remove(key);
+        return delete((Object) key);
+    }
+
+    @Override
+    public CacheEntry<T> delete(Object key) {
+        return hazelcastMap.remove(storedKey(key));
     }
 
     @Override
@@ -90,4 +112,16 @@ public class HazelcastCache<T> implements Cache<T> {
     public void clear() {
         hazelcastMap.clear();
     }
+
+    @Override
+    public CacheLoadLock getLoadLock() {
+        return loadLock;
+    }
+
+    /**
+     * @return the key as stored in the cluster, only String and binary keys are known to be serializable
+     */
+    private static Object storedKey(Object key) {
+        return (key instanceof String || key instanceof BinaryKey) ? key : key.toString();
+    }
 }
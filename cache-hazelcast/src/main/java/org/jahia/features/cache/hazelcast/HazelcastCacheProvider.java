@@ -21,6 +21,7 @@ import com.hazelcast.core.HazelcastInstance;
 import org.jahia.features.cache.api.Cache;
 import org.jahia.features.cache.api.CacheConfig;
 import org.jahia.features.cache.api.CacheProvider;
+import org.jahia.features.cache.api.LongKeyCache;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
@@ -70,6 +71,13 @@ public class HazelcastCacheProvider implements CacheProvider {
         return new HazelcastCache<>(hazelcastInstance, name, config);
     }
 
+    @Override public <T> LongKeyCache<T> createLongKeyCache(String name, CacheConfig config, Class<T> type) {
+        if (hazelcastInstance == null) {
+            throw new IllegalStateException("Hazelcast instance is not available");
+        }
+        return new HazelcastLongKeyCache<>(hazelcastInstance, name, config);
+    }
+
     @Override public boolean isAvailable() {
         return hazelcastInstance != null && hazelcastInstance.getLifecycleService().isRunning();
     }
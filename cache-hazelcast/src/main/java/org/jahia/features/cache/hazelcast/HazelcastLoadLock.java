@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.hazelcast;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import org.jahia.features.cache.api.CacheLoadLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cluster wide load lock backed by the key locks of a Hazelcast map dedicated to the cache. The map never holds any
+ * entry, only its locks are used: they are owned by the locking thread and leased.
+ *
+ * @author Jerome Blanchard
+ */
+public class HazelcastLoadLock implements CacheLoadLock {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HazelcastLoadLock.class);
+    private static final String LOCKS_SUFFIX = "-load-locks";
+
+    private final IMap<String, Boolean> locks;
+
+    public HazelcastLoadLock(HazelcastInstance hazelcastInstance, String cacheName) {
+        this.locks = hazelcastInstance.getMap(cacheName + LOCKS_SUFFIX);
+    }
+
+    @Override
+    public boolean tryLock(String key, long waitMillis, long leaseMillis) throws InterruptedException {
+        return locks.tryLock(key, waitMillis, TimeUnit.MILLISECONDS, leaseMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void unlock(String key) {
+        try {
+            locks.unlock(key);
+        } catch (IllegalMonitorStateException e) {
+            LOGGER.debug("Load lock of key: {} already released after its lease", key);
+        }
+    }
+}
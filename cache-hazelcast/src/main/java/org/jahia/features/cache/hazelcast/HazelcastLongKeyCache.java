@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.hazelcast;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.replicatedmap.ReplicatedMap;
+import org.jahia.features.cache.api.CacheConfig;
+import org.jahia.features.cache.api.LongKeyCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hazelcast-based clustered long keyed cache implementation, storing the values under native Long keys and relying on
+ * the replicated map expiration for the time to live.
+ *
+ * @author Jerome Blanchard
+ */
+public class HazelcastLongKeyCache<T> implements LongKeyCache<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HazelcastLongKeyCache.class);
+
+    private final String cacheName;
+    private final CacheConfig cacheConfig;
+    private final ReplicatedMap<Long, T> hazelcastMap;
+
+    public HazelcastLongKeyCache(HazelcastInstance hazelcastInstance, String cacheName, CacheConfig cacheConfig) {
+        this.cacheName = cacheName;
+        this.cacheConfig = cacheConfig;
+        this.hazelcastMap = hazelcastInstance.getReplicatedMap(cacheName);
+        LOGGER.info("Created hazelcast long keyed cache: {}", cacheName);
+    }
+
+    @Override
+    public String getName() {
+        return cacheName;
+    }
+
+    @Override
+    public CacheConfig getConfig() {
+        return cacheConfig;
+    }
+
+    @Override
+    public T get(long key) {
+        return hazelcastMap.get(key);
+    }
+
+    @Override
+    public T put(long key, T value) {
+        if (value == null) {
+            return delete(key);
+        }
+        if (cacheConfig.getTimeToLive() > 0) {
+            return hazelcastMap.put(key, value, cacheConfig.getTimeToLive(), TimeUnit.SECONDS);
+        }
+        return hazelcastMap.put(key, value);
+    }
+
+    @Override
+    public T delete(long key) {
+        return hazelcastMap.remove(key);
+    }
+
+    @Override
+    public int size() {
+        return hazelcastMap.size();
+    }
+
+    @Override
+    public void clear() {
+        hazelcastMap.clear();
+    }
+}
@@ -80,7 +80,6 @@ public class HazelcastCacheTest {
 
         CacheEntry<String> entry = cache.getEntry("key1");
         assertNotNull(entry, "Cache entry should not be null");
-        assertEquals("key1", entry.key(), "Entry should have correct key");
         assertEquals("value1", entry.value(), "Entry should have correct value");
         assertTrue(entry.created() > 0, "Entry should have creation timestamp");
         assertTrue(entry.accessed() > 0, "Entry should have access timestamp");
@@ -15,13 +15,16 @@
  */
 package org.jahia.features.cache.infinispan;
 
+import org.infinispan.commons.dataconversion.MediaType;
 import org.infinispan.configuration.cache.CacheMode;
 import org.infinispan.configuration.cache.ConfigurationBuilder;
 import org.infinispan.eviction.EvictionStrategy;
 import org.infinispan.manager.EmbeddedCacheManager;
+import org.jahia.features.cache.api.BinaryKey;
 import org.jahia.features.cache.api.Cache;
 import org.jahia.features.cache.api.CacheConfig;
 import org.jahia.features.cache.api.CacheEntry;
+import org.jahia.features.cache.api.CacheLoadLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,6 +32,12 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * Infinispan-based clustered cache implementation
+ * <p>
+ * A weighted configuration maps to Infinispan memory based eviction: the maximum weight is used as the maximum
+ * memory size in bytes of the cache, as computed by Infinispan. The weigher is only used to reject entries heavier
+ * than the maximum entry weight.
+ * <p>
+ * {@link BinaryKey} keys are stored as is, keys of other types than String as their string form.
  *
  * @author Jerome Blanchard
  */
@@ -38,23 +47,16 @@ public class InfinispanCache<T> implements Cache<T> {
 
     private final String cacheName;
     private final CacheConfig cacheConfig;
-    private final org.infinispan.Cache<String, CacheEntry<T>> infinispanCache;
+    private final org.infinispan.Cache<Object, CacheEntry<T>> infinispanCache;
+    private final EmbeddedCacheManager cacheManager;
+    private volatile InfinispanLoadLock loadLock;
 
     public InfinispanCache(EmbeddedCacheManager cacheManager, String cacheName, CacheConfig cacheConfig) {
         this.cacheName = cacheName;
         this.cacheConfig = cacheConfig;
-        if (!cacheManager.cacheExists(cacheName)) {
-            ConfigurationBuilder builder = new ConfigurationBuilder();
-            builder.clustering().cacheMode(CacheMode.DIST_SYNC);
-            if (cacheConfig.getMaxEntries() > 0) {
-                builder.memory().maxCount(cacheConfig.getMaxEntries()).whenFull(EvictionStrategy.REMOVE);
-            }
-            if (cacheConfig.getTimeToLive() > 0) {
-                builder.expiration().maxIdle(-1, TimeUnit.SECONDS).lifespan(cacheConfig.getTimeToLive(), TimeUnit.SECONDS);
-            }
-            cacheManager.defineConfiguration(cacheName, builder.build());
-        }
+        defineConfiguration(cacheManager, cacheName, cacheConfig);
         this.infinispanCache = cacheManager.getCache(cacheName);
+        this.cacheManager = cacheManager;
         LOGGER.info("Created infinispan cache: {}", cacheName);
     }
 
@@ -70,15 +72,32 @@ public class InfinispanCache<T> implements Cache<T> {
 
     @Override
     public CacheEntry<T> getEntry(String key) {
-        CacheEntry<T> entry = infinispanCache.get(key);
-        if (entry != null) {
+        return getEntry((Object) key);
+    }
+
+    @Override
+    public CacheEntry<T> getEntry(Object key) {
+        Object storedKey = storedKey(key);
+        CacheEntry<T> entry = infinispanCache.get(storedKey);
+        if (entry != null && !isStale(entry)) {
             entry.touch();
-            infinispanCache.put(key, entry); // Update accessed timestamp
+            infinispanCache.put(storedKey, entry); // Update accessed timestamp
             return entry;
         }
         return null;
     }
 
+    @Override
+    public CacheEntry<T> getStaleEntry(String key) {
+        return getStaleEntry((Object) key);
+    }
+
+    @Override
+    public CacheEntry<T> getStaleEntry(Object key) {
+        CacheEntry<T> entry = infinispanCache.get(storedKey(key));
+        return (entry != null && isStale(entry)) ? entry : null;
+    }
+
     @Override
     public T get(String key) {
         CacheEntry<T> entry = getEntry(key);
@@ -87,13 +106,28 @@ public class InfinispanCache<T> implements Cache<T> {
 
     @Override
     public CacheEntry<T> put(String key, T value) {
-        CacheEntry<T> entry = new CacheEntry<>(key, value);
-        return infinispanCache.put(key, entry);
+        return put((Object) key, value);
+    }
+
+    @Override
+    public CacheEntry<T> put(Object key, T value) {
+        Object storedKey = storedKey(key);
+        if (isOverweight(storedKey, value)) {
+            LOGGER.debug("Entry {} exceeds the maximum entry weight of cache {}, not cached", key, cacheName);
+            return infinispanCache.remove(storedKey);
+        }
+        CacheEntry<T> entry = new CacheEntry<>(value);
+        return infinispanCache.put(storedKey, entry);
     }
 
     @Override
     public CacheEntry<T> delete(String key) {
-        return infinispanCache.remove(key);
+        return delete((Object) key);
+    }
+
+    @Override
+    public CacheEntry<T> delete(Object key) {
+        return infinispanCache.remove(storedKey(key));
     }
 
     @Override
@@ -105,4 +139,65 @@ public class InfinispanCache<T> implements Cache<T> {
     public void clear() {
         infinispanCache.clear();
     }
+
+    /**
+     * @return the load lock, whose leases cache is only defined on first use
+     */
+    @Override
+    public CacheLoadLock getLoadLock() {
+        InfinispanLoadLock lock = loadLock;
+        if (lock == null) {
+            synchronized (this) {
+                lock = loadLock;
+                if (lock == null) {
+                    lock = new InfinispanLoadLock(cacheManager, cacheName);
+                    loadLock = lock;
+                }
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * Defines the configuration of the Infinispan cache matching the cache config, unless the cache already exists.
+     */
+    static void defineConfiguration(EmbeddedCacheManager cacheManager, String cacheName, CacheConfig cacheConfig) {
+        if (!cacheManager.cacheExists(cacheName)) {
+            ConfigurationBuilder builder = new ConfigurationBuilder();
+            builder.clustering().cacheMode(CacheMode.DIST_SYNC);
+            if (cacheConfig.isWeighted()) {
+                // Memory based eviction bounds the size in bytes of the stored entries, which requires a binary encoding
+                builder.encoding().mediaType(MediaType.APPLICATION_SERIALIZED_OBJECT_TYPE);
+                builder.memory().maxSize(String.valueOf(cacheConfig.getMaxWeight())).whenFull(EvictionStrategy.REMOVE);
+            } else if (cacheConfig.getMaxEntries() > 0) {
+                builder.memory().maxCount(cacheConfig.getMaxEntries()).whenFull(EvictionStrategy.REMOVE);
+            }
+            if (cacheConfig.getTimeToLive() > 0) {
+                // Expired entries are kept for the grace period, getEntry then ignores them
+                long lifespan = (long) cacheConfig.getTimeToLive() + cacheConfig.getGracePeriod();
+                builder.expiration().maxIdle(-1, TimeUnit.SECONDS).lifespan(lifespan, TimeUnit.SECONDS);
+            }
+            cacheManager.defineConfiguration(cacheName, builder.build());
+        }
+    }
+
+    /**
+     * @return true when the time to live of the entry elapsed, the entry being only kept for its grace period
+     */
+    private boolean isStale(CacheEntry<T> entry) {
+        return cacheConfig.getGracePeriod() > 0 && cacheConfig.getTimeToLive() > 0
+                && System.currentTimeMillis() - entry.created() >= cacheConfig.getTimeToLive() * 1000L;
+    }
+
+    private boolean isOverweight(Object key, T value) {
+        return cacheConfig.getMaxEntryWeight() > 0 && cacheConfig.getWeigher() != null
+                && cacheConfig.getWeigher().weigh(key.toString(), value) > cacheConfig.getMaxEntryWeight();
+    }
+
+    /**
+     * @return the key as stored in the cluster, only String and binary keys are known to be serializable
+     */
+    private static Object storedKey(Object key) {
+        return (key instanceof String || key instanceof BinaryKey) ? key : key.toString();
+    }
 }
@@ -24,6 +24,7 @@ import org.infinispan.manager.EmbeddedCacheManager;
 import org.jahia.features.cache.api.Cache;
 import org.jahia.features.cache.api.CacheConfig;
 import org.jahia.features.cache.api.CacheProvider;
+import org.jahia.features.cache.api.LongKeyCache;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
@@ -84,6 +85,11 @@ public class InfinispanCacheProvider implements CacheProvider {
         return new InfinispanCache<>(cacheManager, name, config);
     }
 
+    @Override
+    public <T> LongKeyCache<T> createLongKeyCache(String name, CacheConfig config, Class<T> type) {
+        return new InfinispanLongKeyCache<>(cacheManager, name, config);
+    }
+
     @Override
     public boolean isAvailable() {
         return cacheManager != null && cacheManager.getStatus().allowInvocations();
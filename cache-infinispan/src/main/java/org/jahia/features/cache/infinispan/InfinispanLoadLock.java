@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.infinispan;
+
+import org.infinispan.configuration.cache.CacheMode;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.jahia.features.cache.api.CacheLoadLock;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cluster wide load lock backed by leases stored in a distributed Infinispan cache dedicated to the cache: a lock is
+ * acquired by storing a unique token for the key if absent, with the lease as lifespan, and released by removing the
+ * token if it is still the stored one. The tokens held by the node are kept per key and thread, so that a thread only
+ * releases its own lease. Waiting nodes retry with an exponential backoff, from 5 to 100 milliseconds.
+ *
+ * @author Jerome Blanchard
+ */
+public class InfinispanLoadLock implements CacheLoadLock {
+
+    private static final String LEASES_SUFFIX = "-load-leases";
+    private static final long MIN_BACKOFF = 5;
+    private static final long MAX_BACKOFF = 100;
+
+    private final org.infinispan.Cache<String, String> leases;
+    private final ConcurrentHashMap<Holder, String> tokens = new ConcurrentHashMap<>();
+
+    public InfinispanLoadLock(EmbeddedCacheManager cacheManager, String cacheName) {
+        String leasesName = cacheName + LEASES_SUFFIX;
+        if (!cacheManager.cacheExists(leasesName)) {
+            ConfigurationBuilder builder = new ConfigurationBuilder();
+            builder.clustering().cacheMode(CacheMode.DIST_SYNC);
+            cacheManager.defineConfiguration(leasesName, builder.build());
+        }
+        this.leases = cacheManager.getCache(leasesName);
+    }
+
+    @Override
+    public boolean tryLock(String key, long waitMillis, long leaseMillis) throws InterruptedException {
+        String token = UUID.randomUUID().toString();
+        long deadline = System.currentTimeMillis() + waitMillis;
+        long backoff = MIN_BACKOFF;
+        while (leases.putIfAbsent(key, token, leaseMillis, TimeUnit.MILLISECONDS) != null) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            Thread.sleep(Math.min(backoff, remaining));
+            backoff = Math.min(backoff * 2, MAX_BACKOFF);
+        }
+        tokens.put(new Holder(key, Thread.currentThread()), token);
+        return true;
+    }
+
+    @Override
+    public void unlock(String key) {
+        String token = tokens.remove(new Holder(key, Thread.currentThread()));
+        if (token != null) {
+            // The lease may have elapsed and been acquired by another node, which keeps it
+            leases.remove(key, token);
+        }
+    }
+
+    private record Holder(String key, Thread thread) {
+    }
+}
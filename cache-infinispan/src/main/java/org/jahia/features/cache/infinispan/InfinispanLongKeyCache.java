@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.infinispan;
+
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.jahia.features.cache.api.CacheConfig;
+import org.jahia.features.cache.api.LongKeyCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Infinispan-based clustered long keyed cache implementation, storing the values under native Long keys. The cache is
+ * configured like {@link InfinispanCache}, Infinispan handling eviction and expiration.
+ *
+ * @author Jerome Blanchard
+ */
+public class InfinispanLongKeyCache<T> implements LongKeyCache<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InfinispanLongKeyCache.class);
+
+    private final String cacheName;
+    private final CacheConfig cacheConfig;
+    private final org.infinispan.Cache<Long, T> infinispanCache;
+
+    public InfinispanLongKeyCache(EmbeddedCacheManager cacheManager, String cacheName, CacheConfig cacheConfig) {
+        this.cacheName = cacheName;
+        this.cacheConfig = cacheConfig;
+        InfinispanCache.defineConfiguration(cacheManager, cacheName, cacheConfig);
+        this.infinispanCache = cacheManager.getCache(cacheName);
+        LOGGER.info("Created infinispan long keyed cache: {}", cacheName);
+    }
+
+    @Override
+    public String getName() {
+        return cacheName;
+    }
+
+    @Override
+    public CacheConfig getConfig() {
+        return cacheConfig;
+    }
+
+    @Override
+    public T get(long key) {
+        return infinispanCache.get(key);
+    }
+
+    @Override
+    public T put(long key, T value) {
+        if (value == null || isOverweight(key, value)) {
+            return infinispanCache.remove(key);
+        }
+        return infinispanCache.put(key, value);
+    }
+
+    @Override
+    public T delete(long key) {
+        return infinispanCache.remove(key);
+    }
+
+    @Override
+    public int size() {
+        return infinispanCache.size();
+    }
+
+    @Override
+    public void clear() {
+        infinispanCache.clear();
+    }
+
+    private boolean isOverweight(long key, T value) {
+        return cacheConfig.getMaxEntryWeight() > 0 && cacheConfig.getWeigher() != null
+                && cacheConfig.getWeigher().weigh(Long.toString(key), value) > cacheConfig.getMaxEntryWeight();
+    }
+}
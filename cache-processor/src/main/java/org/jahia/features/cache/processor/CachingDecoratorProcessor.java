@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.processor;
+
+import org.jahia.features.cache.api.CacheOperations;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Generates a caching decorator for every service class implementing interfaces whose methods are annotated with
+ * <code>@CacheResult</code>, <code>@CacheInvalidate</code> or <code>@CacheInvalidateAll</code>, on the interface or on
+ * the class. The decorators build the cache keys in plain code and call the service directly, the cache logic being
+ * provided at runtime by {@link CacheOperations}.
+ * <p>
+ * The generated decorators are listed in the {@link CacheOperations#DECORATORS_RESOURCE} resource of the compiled
+ * bundle, where the cache whiteboard looks them up to register them in place of its runtime proxies.
+ *
+ * @author Jerome Blanchard
+ */
+public class CachingDecoratorProcessor extends AbstractProcessor {
+
+    private final Map<String, String> decorators = new TreeMap<>();
+    private final Set<String> generated = new HashSet<>();
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        // Annotations may only be present on interfaces compiled separately, every class has to be inspected
+        return Set.of("*");
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+            inspect(type);
+        }
+        if (roundEnv.processingOver() && !decorators.isEmpty()) {
+            writeDecoratorsResource();
+        }
+        return false;
+    }
+
+    private void inspect(TypeElement type) {
+        for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+            inspect(nested);
+        }
+        if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT)
+                || generated.contains(type.getQualifiedName().toString())) {
+            return;
+        }
+        DecoratorWriter writer = new DecoratorWriter(processingEnv, type);
+        if (!writer.isDecorated()) {
+            return;
+        }
+        String problem = writer.getProblem();
+        if (problem != null) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "No caching decorator generated for " + type.getQualifiedName() + ": " + problem, type);
+            return;
+        }
+        String name = writer.getQualifiedName();
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(name, type);
+            try (Writer out = file.openWriter()) {
+                out.write(writer.write());
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Unable to write the caching decorator " + name + ": " + e.getMessage(), type);
+            return;
+        }
+        generated.add(name);
+        decorators.put(processingEnv.getElementUtils().getBinaryName(type).toString(), name);
+    }
+
+    private void writeDecoratorsResource() {
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                    CacheOperations.DECORATORS_RESOURCE);
+            StringBuilder content = new StringBuilder("# Generated by ").append(getClass().getName()).append('\n');
+            decorators.forEach((service, decorator) -> content.append(service).append('=').append(decorator).append('\n'));
+            try (Writer out = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.ISO_8859_1)) {
+                out.write(content.toString());
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Unable to write " + CacheOperations.DECORATORS_RESOURCE + ": " + e.getMessage());
+        }
+    }
+}
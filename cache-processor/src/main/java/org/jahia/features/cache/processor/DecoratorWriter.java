@@ -0,0 +1,422 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.processor;
+
+import org.jahia.features.cache.api.CacheInvalidate;
+import org.jahia.features.cache.api.CacheInvalidateAll;
+import org.jahia.features.cache.api.CacheKey;
+import org.jahia.features.cache.api.CacheResult;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Writes the source of the caching decorator of a service class. The decorator implements the interfaces of the
+ * service and overrides all their methods: annotated methods build their cache key and call {@link
+ * org.jahia.features.cache.api.CacheOperations}, the others, as well as <code>equals</code>, <code>hashCode</code>
+ * and <code>toString</code>, call the service directly.
+ * <p>
+ * Keys are written the way the runtime proxy builds them: the binary name of the interface declaring the method
+ * followed by the key arguments, each terminated by a <code>|</code> character, digested by
+ * {@link org.jahia.features.cache.api.CacheKeys}. A method is resolved with the annotations of the interface first,
+ * then of the implementation, invalidations taking precedence over cached results. Services using key expressions
+ * are left to the runtime proxy.
+ *
+ * @author Jerome Blanchard
+ */
+class DecoratorWriter {
+
+    static final String SUFFIX = "CachingDecorator";
+
+    private static final String OPERATIONS = "org.jahia.features.cache.api.CacheOperations";
+    private static final Set<String> OBJECT_METHODS = Set.of("equals(java.lang.Object)", "hashCode()", "toString()");
+
+    private enum Operation {
+        NONE, INVALIDATE, INVALIDATE_ALL, RESULT
+    }
+
+    /**
+     * Interface method overridden by the decorator, as seen from the service class.
+     */
+    private record DecoratedMethod(ExecutableElement element, ExecutableType type, TypeElement declaringType,
+            Operation operation, List<Integer> keyParameters) {
+    }
+
+    private final Types types;
+    private final Elements elements;
+    private final TypeElement service;
+    private final String packageName;
+    private final String simpleName;
+    private final List<DecoratedMethod> methods = new ArrayList<>();
+    private String problem;
+
+    DecoratorWriter(ProcessingEnvironment env, TypeElement service) {
+        this.types = env.getTypeUtils();
+        this.elements = env.getElementUtils();
+        this.service = service;
+        PackageElement pkg = elements.getPackageOf(service);
+        this.packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String binaryName = elements.getBinaryName(service).toString();
+        this.simpleName = binaryName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1).replace('$', '_')
+                + SUFFIX;
+        collectMethods();
+    }
+
+    /**
+     * @return true when at least one method of the service interfaces has a cache annotation
+     */
+    boolean isDecorated() {
+        return methods.stream().anyMatch(method -> method.operation() != Operation.NONE);
+    }
+
+    /**
+     * @return the reason why the decorator can not be generated, null when it can
+     */
+    String getProblem() {
+        return problem;
+    }
+
+    /**
+     * @return the name of the decorator, a top level class of the package of the service
+     */
+    String getQualifiedName() {
+        return packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+    }
+
+    private void collectMethods() {
+        if (service.getNestingKind() == NestingKind.MEMBER && !service.getModifiers().contains(Modifier.STATIC)) {
+            problem = "inner classes are not supported";
+        } else if (!isAccessible(service)) {
+            problem = "the class is not accessible from its package";
+        }
+        Set<String> signatures = new HashSet<>(OBJECT_METHODS);
+        DeclaredType serviceType = (DeclaredType) service.asType();
+        for (TypeMirror iface : service.getInterfaces()) {
+            TypeElement ifaceElement = (TypeElement) ((DeclaredType) iface).asElement();
+            if (problem == null && !isAccessible(ifaceElement)) {
+                problem = "interface " + ifaceElement.getQualifiedName() + " is not accessible";
+            }
+            for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(ifaceElement))) {
+                TypeElement declaringType = (TypeElement) method.getEnclosingElement();
+                if (method.getModifiers().contains(Modifier.STATIC) || method.getModifiers().contains(Modifier.PRIVATE)
+                        || declaringType.getKind() != ElementKind.INTERFACE) {
+                    continue;
+                }
+                ExecutableType type = (ExecutableType) types.asMemberOf(serviceType, method);
+                if (!signatures.add(signature(method, type))) {
+                    continue;
+                }
+                ExecutableElement implMethod = findImplementation(method);
+                methods.add(new DecoratedMethod(method, type, declaringType, operation(method, implMethod),
+                        keyParameters(method, implMethod)));
+                if (problem == null && !isAccessible(declaringType)) {
+                    problem = "interface " + declaringType.getQualifiedName() + " is not accessible";
+                }
+                if (problem == null && hasKeyExpressions(method, implMethod)) {
+                    problem = "key expressions of " + method.getSimpleName() + " are only supported by the proxy";
+                }
+            }
+        }
+    }
+
+    private String signature(ExecutableElement method, ExecutableType type) {
+        return method.getSimpleName() + type.getParameterTypes().stream()
+                .map(parameter -> types.erasure(parameter).toString())
+                .collect(Collectors.joining(",", "(", ")"));
+    }
+
+    private boolean isAccessible(TypeElement type) {
+        boolean samePackage = elements.getPackageOf(type).getQualifiedName().contentEquals(packageName);
+        for (Element element = type; element instanceof TypeElement; element = element.getEnclosingElement()) {
+            Set<Modifier> modifiers = element.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE) || (!samePackage && !modifiers.contains(Modifier.PUBLIC))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ExecutableElement findImplementation(ExecutableElement method) {
+        for (ExecutableElement candidate : ElementFilter.methodsIn(elements.getAllMembers(service))) {
+            if (candidate.getEnclosingElement().getKind() == ElementKind.CLASS
+                    && elements.overrides(candidate, method, service)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static Operation operation(ExecutableElement method, ExecutableElement implMethod) {
+        if (isAnnotated(method, implMethod, CacheInvalidate.class)) {
+            return Operation.INVALIDATE;
+        }
+        if (isAnnotated(method, implMethod, CacheInvalidateAll.class)) {
+            return Operation.INVALIDATE_ALL;
+        }
+        if (isAnnotated(method, implMethod, CacheResult.class)) {
+            return Operation.RESULT;
+        }
+        return Operation.NONE;
+    }
+
+    private static boolean isAnnotated(Element element, Element implElement, Class<? extends Annotation> annotation) {
+        return element.getAnnotation(annotation) != null
+                || (implElement != null && implElement.getAnnotation(annotation) != null);
+    }
+
+    /**
+     * @return true when the key of the method is made of property expressions, which the decorator does not write
+     */
+    private static boolean hasKeyExpressions(ExecutableElement method, ExecutableElement implMethod) {
+        for (ExecutableElement element : new ExecutableElement[]{ method, implMethod }) {
+            if (element == null) {
+                continue;
+            }
+            CacheResult result = element.getAnnotation(CacheResult.class);
+            CacheInvalidate invalidate = element.getAnnotation(CacheInvalidate.class);
+            if ((result != null && result.key().length > 0) || (invalidate != null && invalidate.key().length > 0)) {
+                return true;
+            }
+            for (Element parameter : element.getParameters()) {
+                CacheKey cacheKey = parameter.getAnnotation(CacheKey.class);
+                if (cacheKey != null && !cacheKey.value().isEmpty()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the indexes of the parameters annotated with @CacheKey, or of all the parameters when none is annotated
+     */
+    private static List<Integer> keyParameters(ExecutableElement method, ExecutableElement implMethod) {
+        List<Integer> annotated = new ArrayList<>();
+        List<Integer> all = new ArrayList<>();
+        for (int i = 0; i < method.getParameters().size(); i++) {
+            all.add(i);
+            Element implParameter = (implMethod != null) ? implMethod.getParameters().get(i) : null;
+            if (isAnnotated(method.getParameters().get(i), implParameter, CacheKey.class)) {
+                annotated.add(i);
+            }
+        }
+        return annotated.isEmpty() ? all : annotated;
+    }
+
+    String write() {
+        StringBuilder src = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            src.append("package ").append(packageName).append(";\n\n");
+        }
+        String typeParameters = typeParameters(service.getTypeParameters());
+        String serviceType = service.getQualifiedName() + typeArguments(service.getTypeParameters());
+        src.append("@javax.annotation.processing.Generated(\"")
+                .append(CachingDecoratorProcessor.class.getName()).append("\")\n");
+        src.append("public final class ").append(simpleName).append(typeParameters).append(" implements ")
+                .append(service.getInterfaces().stream().map(TypeMirror::toString).collect(Collectors.joining(", ")))
+                .append(" {\n\n");
+        for (int i = 0; i < methods.size(); i++) {
+            DecoratedMethod method = methods.get(i);
+            if (method.operation() != Operation.NONE) {
+                writeMethodField(src, i, method);
+            }
+        }
+        src.append("\n    private final ").append(serviceType).append(" target;\n");
+        src.append("    private final ").append(OPERATIONS).append(" operations;\n\n");
+        src.append("    public ").append(simpleName).append('(').append(serviceType).append(" target, ")
+                .append(OPERATIONS).append(" operations) {\n");
+        src.append("        this.target = target;\n");
+        src.append("        this.operations = operations;\n");
+        src.append("    }\n");
+        for (int i = 0; i < methods.size(); i++) {
+            writeMethod(src, i, methods.get(i));
+        }
+        src.append("\n    @Override\n    public boolean equals(java.lang.Object other) {\n");
+        src.append("        return target.equals(other);\n    }\n");
+        src.append("\n    @Override\n    public int hashCode() {\n        return target.hashCode();\n    }\n");
+        src.append("\n    @Override\n    public java.lang.String toString() {\n        return target.toString();\n    }\n");
+        src.append("}\n");
+        return src.toString();
+    }
+
+    private void writeMethodField(StringBuilder src, int index, DecoratedMethod method) {
+        src.append("    private static final java.lang.reflect.Method METHOD_").append(index).append(" = ")
+                .append(OPERATIONS).append(".method(").append(method.declaringType().getQualifiedName())
+                .append(".class, \"").append(method.element().getSimpleName()).append('"');
+        for (var parameter : method.element().getParameters()) {
+            src.append(", ").append(types.erasure(parameter.asType())).append(".class");
+        }
+        src.append(");\n");
+    }
+
+    private void writeMethod(StringBuilder src, int index, DecoratedMethod method) {
+        ExecutableElement element = method.element();
+        ExecutableType type = method.type();
+        TypeMirror returnType = type.getReturnType();
+        boolean isVoid = returnType.getKind() == TypeKind.VOID;
+        List<? extends TypeMirror> parameterTypes = type.getParameterTypes();
+        List<String> arguments = new ArrayList<>();
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            arguments.add("arg" + i);
+        }
+        String call = "target." + element.getSimpleName() + "(" + String.join(", ", arguments) + ")";
+
+        src.append("\n    @Override\n    public ");
+        String typeParameters = typeParameters(element.getTypeParameters());
+        if (!typeParameters.isEmpty()) {
+            src.append(typeParameters).append(' ');
+        }
+        src.append(returnType).append(' ').append(element.getSimpleName()).append('(');
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            String parameterType = parameterTypes.get(i).toString();
+            if (element.isVarArgs() && i == parameterTypes.size() - 1) {
+                parameterType = parameterType.substring(0, parameterType.length() - 2) + "...";
+            }
+            src.append(i > 0 ? ", " : "").append("final ").append(parameterType).append(' ').append(arguments.get(i));
+        }
+        src.append(')');
+        if (!type.getThrownTypes().isEmpty()) {
+            src.append(" throws ").append(type.getThrownTypes().stream().map(TypeMirror::toString)
+                    .collect(Collectors.joining(", ")));
+        }
+        src.append(" {\n");
+        String ret = isVoid ? "" : "return ";
+        switch (method.operation()) {
+            case INVALIDATE:
+                src.append("        operations.invalidate(METHOD_").append(index).append(", ")
+                        .append(key(method, parameterTypes)).append(");\n");
+                break;
+            case INVALIDATE_ALL:
+                src.append("        operations.invalidateAll(METHOD_").append(index).append(");\n");
+                break;
+            case RESULT:
+                writeResult(src, index, method, call, arguments);
+                src.append("    }\n");
+                return;
+            default:
+                break;
+        }
+        src.append("        ").append(ret).append(call).append(";\n    }\n");
+    }
+
+    private void writeResult(StringBuilder src, int index, DecoratedMethod method, String call, List<String> arguments) {
+        TypeMirror returnType = method.type().getReturnType();
+        boolean isVoid = returnType.getKind() == TypeKind.VOID;
+        String valueType;
+        if (isVoid) {
+            valueType = "java.lang.Void";
+        } else if (returnType.getKind().isPrimitive()) {
+            valueType = types.boxedClass((PrimitiveType) returnType).getQualifiedName().toString();
+        } else {
+            valueType = returnType.toString();
+        }
+        src.append("        java.lang.String key = ").append(key(method, method.type().getParameterTypes())).append(";\n");
+        src.append("        try {\n");
+        src.append("            ").append(isVoid ? "" : "return ").append("operations.getResult(METHOD_").append(index)
+                .append(", key, new ").append(OPERATIONS).append(".Invocation<").append(valueType).append(">() {\n");
+        src.append("                @Override\n");
+        src.append("                public ").append(valueType).append(" proceed() throws java.lang.Throwable {\n");
+        if (isVoid) {
+            src.append("                    ").append(call).append(";\n");
+            src.append("                    return null;\n");
+        } else {
+            src.append("                    return ").append(call).append(";\n");
+        }
+        src.append("                }\n\n");
+        src.append("                @Override\n");
+        src.append("                public java.lang.Object[] arguments() {\n");
+        src.append("                    return new java.lang.Object[]{ ").append(String.join(", ", arguments))
+                .append(" };\n");
+        src.append("                }\n");
+        src.append("            });\n");
+        src.append("        } catch (java.lang.RuntimeException | java.lang.Error e) {\n");
+        src.append("            throw e;\n");
+        src.append("        } catch (java.lang.Throwable t) {\n");
+        for (TypeMirror thrown : method.type().getThrownTypes()) {
+            if (thrown.getKind() == TypeKind.DECLARED) {
+                src.append("            if (t instanceof ").append(types.erasure(thrown)).append(") {\n");
+                src.append("                throw (").append(thrown).append(") t;\n");
+                src.append("            }\n");
+            }
+        }
+        src.append("            throw new java.lang.reflect.UndeclaredThrowableException(t);\n");
+        src.append("        }\n");
+    }
+
+    /**
+     * @return the expression building the cache key of the invocation, without boxing the primitive arguments
+     */
+    private String key(DecoratedMethod method, List<? extends TypeMirror> parameterTypes) {
+        StringBuilder key = new StringBuilder("org.jahia.features.cache.api.CacheKeys.digest(new java.lang.StringBuilder()");
+        String prefix = elements.getBinaryName(method.declaringType()) + "|";
+        key.append(".append(\"").append(escape(prefix)).append("\")");
+        for (int index : method.keyParameters()) {
+            TypeMirror parameterType = parameterTypes.get(index);
+            // StringBuilder.append(char[]) appends the characters where the key uses String.valueOf(Object)
+            boolean charArray = parameterType.getKind() == TypeKind.ARRAY
+                    && ((ArrayType) parameterType).getComponentType().getKind() == TypeKind.CHAR;
+            key.append(".append(").append(charArray ? "(java.lang.Object) " : "").append("arg").append(index)
+                    .append(").append('|')");
+        }
+        return key.append(".toString())").toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static String typeParameters(List<? extends TypeParameterElement> parameters) {
+        if (parameters.isEmpty()) {
+            return "";
+        }
+        return parameters.stream().map(parameter -> {
+            List<String> bounds = parameter.getBounds().stream().map(TypeMirror::toString)
+                    .filter(bound -> !bound.equals("java.lang.Object")).collect(Collectors.toList());
+            return bounds.isEmpty() ? parameter.getSimpleName().toString()
+                    : parameter.getSimpleName() + " extends " + String.join(" & ", bounds);
+        }).collect(Collectors.joining(", ", "<", ">"));
+    }
+
+    private static String typeArguments(List<? extends TypeParameterElement> parameters) {
+        if (parameters.isEmpty()) {
+            return "";
+        }
+        return parameters.stream().map(parameter -> parameter.getSimpleName().toString())
+                .collect(Collectors.joining(", ", "<", ">"));
+    }
+}
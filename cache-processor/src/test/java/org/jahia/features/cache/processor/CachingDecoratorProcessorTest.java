@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2002-2025 Jahia Solutions Group SA. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jahia.features.cache.processor;
+
+import org.jahia.features.cache.api.CacheKeys;
+import org.jahia.features.cache.api.CacheOperations;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Jerome Blanchard
+ */
+public class CachingDecoratorProcessorTest {
+
+    private static final String SERVICE = """
+            package sample;
+
+            import org.jahia.features.cache.api.CacheInvalidate;
+            import org.jahia.features.cache.api.CacheKey;
+            import org.jahia.features.cache.api.CacheResult;
+
+            public interface PriceService {
+                @CacheResult(cacheName = "prices")
+                long price(@CacheKey String sku, int quantity) throws java.io.IOException;
+
+                @CacheInvalidate(cacheName = "prices")
+                void update(@CacheKey String sku, int quantity);
+
+                String currency();
+            }
+            """;
+
+    private static final String SERVICE_IMPL = """
+            package sample;
+
+            import java.util.List;
+            import org.jahia.features.cache.api.CacheResult;
+
+            public class PriceServiceImpl implements PriceService, Catalog<String> {
+                public int calls;
+
+                @Override
+                public long price(String sku, int quantity) throws java.io.IOException {
+                    calls++;
+                    if (sku.isEmpty()) {
+                        throw new java.io.IOException("Unknown sku");
+                    }
+                    return 100L * quantity;
+                }
+
+                @Override
+                public void update(String sku, int quantity) {
+                }
+
+                @Override
+                public String currency() {
+                    return "EUR";
+                }
+
+                @Override
+                @CacheResult(cacheName = "catalog")
+                public List<String> list(String... categories) {
+                    calls++;
+                    return List.of(categories);
+                }
+
+                public static class Uncached implements Runnable {
+                    @Override
+                    public void run() {
+                    }
+                }
+            }
+            """;
+
+    private static final String CATALOG = """
+            package sample;
+
+            public interface Catalog<T> {
+                java.util.List<T> list(String... categories);
+            }
+            """;
+
+    private static final String PROFILE_SERVICE = """
+            package sample;
+
+            import org.jahia.features.cache.api.CacheKey;
+            import org.jahia.features.cache.api.CacheResult;
+
+            public class ProfileService implements java.util.function.Function<java.util.Locale, String> {
+                @Override
+                @CacheResult(cacheName = "profiles")
+                public String apply(@CacheKey("language") java.util.Locale locale) {
+                    return locale.getDisplayName();
+                }
+            }
+            """;
+
+    private static ClassLoader loader;
+
+    @BeforeAll
+    static void compile() throws IOException {
+        Path output = Files.createTempDirectory("cache-processor");
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        StringWriter diagnostics = new StringWriter();
+        JavaCompiler.CompilationTask task = compiler.getTask(diagnostics, null, null,
+                List.of("-d", output.toString(), "-classpath", System.getProperty("java.class.path")), null,
+                List.of(source("sample.PriceService", SERVICE), source("sample.PriceServiceImpl", SERVICE_IMPL),
+                        source("sample.Catalog", CATALOG), source("sample.ProfileService", PROFILE_SERVICE)));
+        task.setProcessors(List.of(new CachingDecoratorProcessor()));
+        assertTrue(task.call(), diagnostics.toString());
+        loader = new URLClassLoader(new java.net.URL[]{ output.toUri().toURL() },
+                CachingDecoratorProcessorTest.class.getClassLoader());
+    }
+
+    private static JavaFileObject source(String name, String code) {
+        return new SimpleJavaFileObject(URI.create("string:///" + name.replace('.', '/') + ".java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+
+    /**
+     * Caches the results in a map, recording the invalidations.
+     */
+    public static class MapOperations implements CacheOperations {
+        final Map<String, Object> values = new HashMap<>();
+        final List<String> invalidations = new ArrayList<>();
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getResult(Method method, String key, Invocation<T> invocation) throws Throwable {
+            if (!values.containsKey(key)) {
+                values.put(key, invocation.proceed());
+            }
+            return (T) values.get(key);
+        }
+
+        @Override
+        public void invalidate(Method method, String key) {
+            invalidations.add(method.getName() + ":" + key);
+            values.remove(key);
+        }
+
+        @Override
+        public void invalidateAll(Method method) {
+            values.clear();
+        }
+    }
+
+    @Test
+    void testDecoratorsResource() throws IOException {
+        Properties decorators = new Properties();
+        try (InputStream in = loader.getResourceAsStream(CacheOperations.DECORATORS_RESOURCE)) {
+            assertNotNull(in);
+            decorators.load(in);
+        }
+        // Key expressions are left to the runtime proxy
+        assertEquals(Map.of("sample.PriceServiceImpl", "sample.PriceServiceImplCachingDecorator"), decorators);
+    }
+
+    @Test
+    void testDecorator() throws Throwable {
+        Class<?> serviceClass = loader.loadClass("sample.PriceServiceImpl");
+        Object service = serviceClass.getConstructor().newInstance();
+        MapOperations operations = new MapOperations();
+        Object decorator = loader.loadClass("sample.PriceServiceImplCachingDecorator")
+                .getConstructor(serviceClass, CacheOperations.class).newInstance(service, operations);
+        Class<?> priceService = loader.loadClass("sample.PriceService");
+        assertTrue(priceService.isInstance(decorator));
+        Method price = priceService.getMethod("price", String.class, int.class);
+
+        assertEquals(200L, price.invoke(decorator, "sku-1", 2));
+        // Only the @CacheKey parameter makes the key
+        assertEquals(200L, price.invoke(decorator, "sku-1", 3));
+        assertEquals(1, serviceClass.getField("calls").getInt(service));
+        assertEquals(Map.of(CacheKeys.digest("sample.PriceService|sku-1|"), 200L), operations.values);
+
+        priceService.getMethod("update", String.class, int.class).invoke(decorator, "sku-1", 1);
+        assertEquals(List.of("update:" + CacheKeys.digest("sample.PriceService|sku-1|")), operations.invalidations);
+        assertEquals("EUR", priceService.getMethod("currency").invoke(decorator));
+        assertEquals(service.hashCode(), decorator.hashCode());
+
+        // Exceptions of the service are thrown as is
+        Exception e = assertThrows(Exception.class, () -> price.invoke(decorator, "", 1));
+        assertInstanceOf(IOException.class, e.getCause());
+
+        // Annotation on the implementation of a generic interface, with varargs
+        Method list = loader.loadClass("sample.Catalog").getMethod("list", String[].class);
+        String[] categories = { "a", "b" };
+        assertEquals(List.of("a", "b"), list.invoke(decorator, (Object) categories));
+        assertEquals(List.of("a", "b"), list.invoke(decorator, (Object) categories));
+        assertEquals(3, serviceClass.getField("calls").getInt(service));
+    }
+}